@@ -90,6 +90,36 @@ public @interface Action {
      * @see Task
      */
     BlockingScope block() default BlockingScope.NONE;
+
+    /**
+     * The parameter names a superseding key for the background task. Executing the task
+     * cancels the previous task with the same key, e.g. the search started by the previous keystroke.
+     * @see TaskService#execute(Task, Object)
+     */
+    String supersede() default "";
+
+    /**
+     * The parameter specifies how many milliseconds the background task waits before it starts.
+     * Together with {@link #supersede} this debounces rapidly repeated actions.  It must not be negative.
+     * @see TaskService#execute(Task, Object, long, java.util.concurrent.TimeUnit)
+     */
+    long debounce() default 0L;
+
+    /**
+     * The parameter specifies how many milliseconds the background task may take before
+     * it's cancelled, unless the task sets its own timeout.  0 means the task service's default.
+     * It must not be negative.
+     * @see Task#setTimeout
+     */
+    long timeout() default 0L;
+
+    /**
+     * The parameter names the scarce resources the background task uses, unless the task
+     * names its own.  The task waits for a permit of each of them before it starts.
+     * @see Task#setRequiredResources
+     * @see ResourcePermits
+     */
+    String[] resources() default {};
     
     /**
      * This annotation is not used yet
@@ -18,6 +18,7 @@ import java.util.EventListener;
 import java.util.EventObject;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JPanel;
@@ -153,6 +154,7 @@ public abstract class Application extends AbstractBean {
     private static Application application = null;
     private final List<ExitListener> exitListeners;
     private final ApplicationContext context;
+    private long shutdownTimeout = 0L;   // milliseconds, guarded by this
     protected boolean ready;
 
     /**
@@ -391,7 +393,73 @@ public abstract class Application extends AbstractBean {
      * @see #addExitListener
      */
     protected void shutdown() {
-        // TBD should call TaskService#shutdownNow() on each TaskService
+        // The TaskServices are drained by exit(), see setShutdownTimeout()
+    }
+
+    /**
+     * Returns how long {@link #exit exit} waits for the Tasks of the
+     * application's TaskServices to finish, before it cancels them.  Zero
+     * means that {@code exit} doesn't wait for Tasks.
+     *
+     * @param unit the time unit of the return value
+     * @return the timeout of the drain phase of {@code exit}
+     * @see #setShutdownTimeout
+     */
+    public synchronized long getShutdownTimeout(TimeUnit unit) {
+        return unit.convert(shutdownTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets how long {@link #exit exit} waits for the Tasks of the
+     * application's TaskServices to finish.
+     * <p>
+     * If the timeout is greater than zero, {@code exit} drains the
+     * TaskServices after the {@code ExitListener.willExit()} methods have
+     * run and before {@link #shutdown shutdown}: it stops all of the
+     * {@link ApplicationContext#getTaskServices TaskServices} from
+     * accepting new Tasks, waits for all of them in parallel until they've
+     * finished the Tasks they had already accepted or the timeout has
+     * elapsed, and then cancels the Tasks that are still running.  If
+     * draining takes longer than half a second, a modal dialog that shows
+     * the number of remaining Tasks is displayed, its resources are
+     * {@code ShutdownDialog.title}, {@code ShutdownDialog.message} and
+     * {@code ShutdownDialog.exitNowButton.text}.
+     * <p>
+     * The default is zero, i.e. Tasks are left running when the application
+     * exits.
+     * <p>
+     * This is a bound property, its values are in milliseconds.
+     *
+     * @param timeout the longest time {@code exit} waits for Tasks, or zero
+     * @param unit the time unit of {@code timeout}
+     * @see #getShutdownTimeout
+     * @see #exit(EventObject)
+     */
+    public void setShutdownTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0L) {
+            throw new IllegalArgumentException("timeout < 0");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("null unit");
+        }
+        long oldValue, newValue;
+        synchronized (this) {
+            oldValue = shutdownTimeout;
+            shutdownTimeout = unit.toMillis(timeout);
+            newValue = shutdownTimeout;
+        }
+        firePropertyChange("shutdownTimeout", oldValue, newValue);
+    }
+
+    /* The drain phase of exit(), returns the number of Tasks that had to
+     * be cancelled.
+     */
+    int drainTaskServices() {
+        long timeout = getShutdownTimeout(TimeUnit.MILLISECONDS);
+        if (timeout == 0L) {
+            return 0;
+        }
+        return new TaskServiceDrain(getContext(), timeout, TimeUnit.MILLISECONDS).drain();
     }
 
     /* An event that sets a flag when it's dispatched and another
@@ -497,8 +565,9 @@ public abstract class Application extends AbstractBean {
      * Gracefully shutdowns the application.
      * <p>
      * If none of the {@code ExitListener.canExit()} methods return false,
-     * calls the {@code ExitListener.willExit()} methods, then 
-     * {@code shutdown()}, and then exits the Application with
+     * calls the {@code ExitListener.willExit()} methods, then drains the
+     * TaskServices if a {@link #setShutdownTimeout shutdownTimeout} was set,
+     * then {@code shutdown()}, and then exits the Application with
      * {@link #end end}.  Exceptions thrown while running willExit() or shutdown() 
      * are logged but otherwise ignored. 
      * <p>
@@ -527,6 +596,7 @@ public abstract class Application extends AbstractBean {
      * @see #addExitListener
      * @see #removeExitListener
      * @see #shutdown
+     * @see #setShutdownTimeout
      * @see #end
      */
     public void exit(final EventObject event) {
@@ -547,6 +617,11 @@ public abstract class Application extends AbstractBean {
                             logger.log(Level.WARNING, "ExitListener.willExit() failed", e);
                         }
                     }
+                    try {
+                        drainTaskServices();
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "draining the TaskServices failed", e);
+                    }
                     shutdown();
                 } catch (Exception e) {
                     logger.log(Level.WARNING, "unexpected error in Application.shutdown()", e);
@@ -4,11 +4,13 @@
  */
 package org.jdesktop.application;
 
+import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
@@ -115,6 +117,10 @@ public class ApplicationAction extends AbstractAction {
     private final Method setSelectedMethod; // Method object for setSelectedProperty
     private String taskService;
     private final Task.BlockingScope block;
+    private final String supersede;         // see Action.supersede(), or null
+    private final long debounce;            // see Action.debounce()
+    private final long timeout;             // see Action.timeout()
+    private final String[] resources;       // see Action.resources()
     private javax.swing.Action proxy = null;
     private Object proxySource = null;
     private PropertyChangeListener proxyPCL = null;
@@ -217,6 +223,28 @@ public class ApplicationAction extends AbstractAction {
         this.taskService = taskService;
         this.block = block;
 
+        /* The Task execution parameters that aren't constructor
+         * parameters are read from the @Action annotation directly.
+         */
+        Action annotation = (actionMethod != null) ? actionMethod.getAnnotation(Action.class) : null;
+        if (annotation != null) {
+            this.supersede = (annotation.supersede().length() > 0) ? annotation.supersede() : null;
+            this.debounce = annotation.debounce();
+            this.timeout = annotation.timeout();
+            this.resources = annotation.resources();
+            if (debounce < 0L) {
+                throw newNegativeParameterException("debounce", debounce);
+            }
+            if (timeout < 0L) {
+                throw newNegativeParameterException("timeout", timeout);
+            }
+        } else {
+            this.supersede = null;
+            this.debounce = 0L;
+            this.timeout = 0L;
+            this.resources = new String[0];
+        }
+
         /* If enabledProperty is specified, lookup up the is/set methods and
          * verify that the former exists.
          */
@@ -258,6 +286,11 @@ public class ApplicationAction extends AbstractAction {
         this(appAM, resourceMap, actionName, null, null, false, null, TaskService.DEFAULT_NAME, Task.BlockingScope.NONE);
     }
 
+    private IllegalArgumentException newNegativeParameterException(String parameterName, long value) {
+        String msg = String.format("negative %s %d for action %s", parameterName, value, actionName);
+        return new IllegalArgumentException(msg);
+    }
+
     private IllegalArgumentException newNoSuchPropertyException(String propertyName) {
         String actionsClassName = appAM.getActionsClass().getName();
         String msg = String.format("no property named %s in %s", propertyName, actionsClassName);
@@ -642,25 +675,55 @@ public class ApplicationAction extends AbstractAction {
         /* Call target.actionMethod(arguments).  If the return value
          * is a Task, then execute it.
          */
+        EDTWatchdog watchdog = appAM.getContext().getEDTWatchdog();
+        String previousActivity = (watchdog != null) ? watchdog.enter("action " + actionName) : null;
+        // Tasks executed from here on are attributed to this action, see Task#getActionName
+        String previousActionName = TaskContext.enterAction(actionName);
         try {
-            Object target = appAM.getActionsObject();
-            taskObject = actionMethod.invoke(target, arguments);
-        } catch (Exception e) {
-            actionFailed(e);
+            try {
+                Object target = appAM.getActionsObject();
+                taskObject = actionMethod.invoke(target, arguments);
+            } catch (Exception e) {
+                actionFailed(e);
+            } finally {
+                if (watchdog != null) {
+                    watchdog.exit(previousActivity);
+                }
+            }
+            if (taskObject instanceof Task) {
+                executeTask((Task) taskObject, actionEvent);
+            }
+        } finally {
+            TaskContext.exitAction(previousActionName);
         }
+    }
 
-        if (taskObject instanceof Task) {
-            Task task = (Task) taskObject;
-            if (task.getInputBlocker() == null) {
-                task.setInputBlocker(createInputBlocker(task, actionEvent));
-            }
-            final ApplicationContext ctx = appAM.getContext();
-            final TaskService ts = ctx.getTaskService(taskService);
-            if (ts != null) {
-                ts.execute(task);
-            } else {
-                actionFailed(new IllegalArgumentException("Task Service ["+taskService+"] does not exist."));
+    /* Executes the Task returned by the @Action method on this action's
+     * TaskService.
+     */
+    private void executeTask(Task task, ActionEvent actionEvent) {
+        if (task.getInputBlocker() == null) {
+            task.setInputBlocker(createInputBlocker(task, actionEvent));
+        }
+        final ApplicationContext ctx = appAM.getContext();
+        final TaskService ts = ctx.getTaskService(taskService);
+        if ((timeout > 0L) && (task.getTimeout(TimeUnit.MILLISECONDS) == 0L)) {
+            task.setTimeout(timeout, TimeUnit.MILLISECONDS);
+        }
+        if ((resources.length > 0) && task.getRequiredResources().isEmpty()) {
+            task.setRequiredResources(resources);
+        }
+        if (ts != null) {
+            ts.execute(task, supersede, debounce, TimeUnit.MILLISECONDS);
+            // Only Tasks that were handed to the TaskService join the group
+            if ((task.getTaskGroup() == null) && (actionEvent.getSource() instanceof Component)) {
+                TaskGroup group = ctx.getTaskGroup((Component) actionEvent.getSource());
+                if (group != null) {
+                    group.add(task);
+                }
             }
+        } else {
+            actionFailed(new IllegalArgumentException("Task Service ["+taskService+"] does not exist."));
         }
     }
 
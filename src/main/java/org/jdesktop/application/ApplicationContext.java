@@ -5,14 +5,22 @@
  */
 package org.jdesktop.application;
 
+import java.awt.Component;
+import java.awt.Container;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javax.swing.JComponent;
+import javax.swing.JPopupMenu;
+import javax.swing.JRootPane;
 
 /**
  * A singleton that manages shared objects, like actions, resources, and tasks, 
@@ -57,6 +65,10 @@ public class ApplicationContext extends AbstractBean {
     private JComponent focusOwner = null;
     private Clipboard clipboard = null;
     private TaskMonitor taskMonitor = null;
+    private ExecutorService sharedExecutor = null;
+    private final ResourcePermits resourcePermits = new ResourcePermits();
+    private volatile TaskTracer taskTracer = null;
+    private volatile EDTWatchdog edtWatchdog = null;
 
     protected ApplicationContext() {
         resourceManager = new ResourceManager(this);
@@ -64,7 +76,7 @@ public class ApplicationContext extends AbstractBean {
         localStorage = new LocalStorage(this);
         sessionStorage = new SessionStorage(this);
         taskServices = new CopyOnWriteArrayList<TaskService>();
-        taskServices.add(new TaskService(TaskService.DEFAULT_NAME));
+        taskServices.add(new TaskService(TaskService.DEFAULT_NAME, getSharedExecutor(), 3, Integer.MAX_VALUE));
         taskServicesReadOnly = Collections.unmodifiableList(taskServices);
     }
 
@@ -476,6 +488,34 @@ public class ApplicationContext extends AbstractBean {
         return getTaskService(TaskService.DEFAULT_NAME);
     }
 
+    /**
+     * Returns the thread pool that TaskServices created with
+     * {@link TaskService#TaskService(String, java.util.concurrent.Executor, int, int)}
+     * share.  The pool creates threads on demand and reclaims the ones
+     * that have been idle for 10 seconds, so the number of threads follows
+     * the actual load rather than the number of TaskServices.  The
+     * concurrency of each TaskService is limited separately:
+     * <pre>
+     * ApplicationContext ctx = getContext();
+     * ctx.addTaskService(new TaskService("db", ctx.getSharedExecutor(), 2, 100));
+     * ctx.addTaskService(new TaskService("network", ctx.getSharedExecutor(), 4, 500));
+     * </pre>
+     * The default TaskService runs up to 3 Tasks at a time on this pool.
+     *
+     * @return the thread pool shared by this application's TaskServices
+     * @see TaskService#TaskService(String, java.util.concurrent.Executor, int, int)
+     */
+    public final synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = new ThreadPoolExecutor(
+                    0, // corePool size
+                    Integer.MAX_VALUE, // maximumPool size, bounded by the TaskServices' limits
+                    10L, TimeUnit.SECONDS, // idle threads time to live
+                    new SynchronousQueue<Runnable>());
+        }
+        return sharedExecutor;
+    }
+
     /**
      * Returns a read-only view of the complete list of TaskServices.
      * 
@@ -487,6 +527,119 @@ public class ApplicationContext extends AbstractBean {
         return taskServicesReadOnly;
     }
 
+    /**
+     * Returns the permits of the scarce resources that Tasks name with
+     * {@link Task#setRequiredResources setRequiredResources}.  They're
+     * shared by all of the TaskServices.
+     *
+     * @return the application's ResourcePermits
+     * @see ResourcePermits#setPermits
+     */
+    public final ResourcePermits getResourcePermits() {
+        return resourcePermits;
+    }
+
+    /**
+     * Returns the {@link TaskGroup} of the window, or applet, that contains
+     * the component.  The group is created the first time it's asked for and
+     * stored as a client property of the window's {@code JRootPane}.  For a
+     * component in a popup menu, the group of the window that contains the
+     * popup's invoker is returned.
+     * <p>
+     * {@code ApplicationAction} adds the Tasks returned by {@code @Action}
+     * methods to the group of the component that fired the action.
+     * <p>
+     * This method must be called on the EDT.
+     *
+     * @param component a component in the window
+     * @return the window's TaskGroup, or null if the component isn't in a JRootPane
+     * @see View#getTaskGroup
+     */
+    public TaskGroup getTaskGroup(Component component) {
+        if (component == null) {
+            throw new IllegalArgumentException("null component");
+        }
+        while (!(component instanceof JRootPane)) {
+            if (component instanceof JPopupMenu) {
+                component = ((JPopupMenu) component).getInvoker();
+            } else {
+                component = component.getParent();
+            }
+            if (component == null) {
+                return null;
+            }
+        }
+        JRootPane rootPane = (JRootPane) component;
+        TaskGroup group = (TaskGroup) rootPane.getClientProperty(TaskGroup.class);
+        if (group == null) {
+            Container root = rootPane.getParent();
+            group = new TaskGroup((root != null) ? root.getName() : null);
+            rootPane.putClientProperty(TaskGroup.class, group);
+        }
+        return group;
+    }
+
+    /**
+     * Returns the value of the {@code taskTracer} property.
+     * The default value of this property is null, Tasks aren't traced.
+     *
+     * @return the TaskTracer that records the timeline of this application's Tasks, or null
+     * @see #setTaskTracer
+     */
+    public TaskTracer getTaskTracer() {
+        return taskTracer;
+    }
+
+    /**
+     * Sets the {@code taskTracer} property.  While it's not null, the
+     * Tasks executed by this application's TaskServices, their state
+     * changes and their EDT callbacks are recorded by the TaskTracer.
+     * <p>
+     * This is a bound property.
+     *
+     * @param taskTracer the TaskTracer that records the timeline of this application's Tasks, or null
+     * @see TaskTracer
+     */
+    public void setTaskTracer(TaskTracer taskTracer) {
+        Object oldValue = this.taskTracer;
+        this.taskTracer = taskTracer;
+        firePropertyChange("taskTracer", oldValue, taskTracer);
+    }
+
+    /**
+     * Returns the value of the {@code EDTWatchdog} property.
+     * The default value of this property is null, the EDT isn't watched.
+     *
+     * @return the EDTWatchdog that reports stalls of the EDT, or null
+     * @see #setEDTWatchdog
+     */
+    public EDTWatchdog getEDTWatchdog() {
+        return edtWatchdog;
+    }
+
+    /**
+     * Sets the {@code EDTWatchdog} property.  The new watchdog is
+     * started, the one it replaces is stopped.  While it's not null, the
+     * watchdog is told which {@code @Action} method or Task callback is
+     * running on the EDT.
+     * <p>
+     * This is a bound property.
+     *
+     * @param edtWatchdog the EDTWatchdog that reports stalls of the EDT, or null
+     * @see EDTWatchdog
+     */
+    public void setEDTWatchdog(EDTWatchdog edtWatchdog) {
+        EDTWatchdog oldValue = this.edtWatchdog;
+        this.edtWatchdog = edtWatchdog;
+        if ((oldValue != null) && (oldValue != edtWatchdog)) {
+            oldValue.stop();
+        }
+        if (edtWatchdog != null) {
+            edtWatchdog.start();
+        }
+        firePropertyChange("EDTWatchdog", oldValue, edtWatchdog);
+    }
+
     /**
      * Returns a shared TaskMonitor object.  Most applications only 
      * need one TaskMonitor for the sake of status bars and other status
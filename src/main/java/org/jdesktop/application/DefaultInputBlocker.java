@@ -27,6 +27,7 @@ import javax.swing.InputVerifier;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
+import javax.swing.JLabel;
 import javax.swing.JMenuBar;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -43,8 +44,10 @@ final class DefaultInputBlocker extends Task.InputBlocker {
 
     private static final Logger logger = Logger.getLogger(DefaultInputBlocker.class.getName());
     private static final String PB_STRING_FORMAT_KEY = "progressBarStringFormat";
+    private static final String TIMEOUT_FORMAT_KEY = "timeoutLabelFormat";
     public static final String ON_ESCAPE_ACTION_KEY = "onEscape";
     private JDialog modalDialog = null;
+    private Timer remainingTimeTimer = null;
 
     DefaultInputBlocker(Task task, Task.BlockingScope scope, Object target, ApplicationAction action) {
         super(task, scope, target, action);
@@ -110,6 +113,7 @@ final class DefaultInputBlocker extends Task.InputBlocker {
      * BlockingDialog.cancelButton.text
      * BlockingDialog.cancelButton.icon
      * BlockingDialog.progressBar.stringPainted
+     * BlockingDialog.timeoutLabel.text (only if the Task has a deadline)
      * 
      * If the Task has an Action then use the actionName as a prefix
      * and look up the resources again, in the action's ResourceMap
@@ -120,6 +124,7 @@ final class DefaultInputBlocker extends Task.InputBlocker {
      * actionName.BlockingDialog.cancelButton.text
      * actionName.BlockingDialog.cancelButton.icon
      * actionName.BlockingDialog.progressBar.stringPainted
+     * actionName.BlockingDialog.timeoutLabel.text
      */
     private JDialog createBlockingDialog() {
         JOptionPane optionPane = new JOptionPane();
@@ -222,7 +227,17 @@ final class DefaultInputBlocker extends Task.InputBlocker {
                 }
             };
             getTask().addPropertyChangeListener(taskPCL);
-            panel.add(progressBar, BorderLayout.SOUTH);
+            JLabel timeoutLabel = null;
+            if (getTask().getRemainingTime(TimeUnit.SECONDS) >= 0L) {
+                JPanel statusPanel = new JPanel(new BorderLayout());
+                statusPanel.add(progressBar, BorderLayout.CENTER);
+                timeoutLabel = new JLabel();
+                timeoutLabel.setName("BlockingDialog.timeoutLabel");
+                statusPanel.add(timeoutLabel, BorderLayout.SOUTH);
+                panel.add(statusPanel, BorderLayout.SOUTH);
+            } else {
+                panel.add(progressBar, BorderLayout.SOUTH);
+            }
             injectBlockingDialogComponents(panel);
 
             /* The initial value of the progressBar string is the format.
@@ -238,6 +253,17 @@ final class DefaultInputBlocker extends Task.InputBlocker {
             }
             progressBar.setString("");
 
+            /* If the Task has a deadline, the timeoutLabel counts down the
+             * time that's left.  Its initial text is the format, the default
+             * is "%02d:%02d until timeout".
+             */
+            if (timeoutLabel != null) {
+                if (timeoutLabel.getClientProperty(TIMEOUT_FORMAT_KEY) == null) {
+                    timeoutLabel.putClientProperty(TIMEOUT_FORMAT_KEY, timeoutLabel.getText());
+                }
+                startRemainingTimeTimer(timeoutLabel);
+            }
+
             optionPane.setMessage(panel);
         }
     }
@@ -264,6 +290,37 @@ final class DefaultInputBlocker extends Task.InputBlocker {
 
     }
 
+    private void startRemainingTimeTimer(final JLabel timeoutLabel) {
+        updateTimeoutLabel(timeoutLabel);
+        ActionListener updateLabel = new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateTimeoutLabel(timeoutLabel);
+            }
+        };
+        remainingTimeTimer = new Timer(1000, updateLabel);
+        remainingTimeTimer.start();
+    }
+
+    private void stopRemainingTimeTimer() {
+        if (remainingTimeTimer != null) {
+            remainingTimeTimer.stop();
+            remainingTimeTimer = null;
+        }
+    }
+
+    private void updateTimeoutLabel(JLabel timeoutLabel) {
+        final String fmt = (String) timeoutLabel.getClientProperty(TIMEOUT_FORMAT_KEY);
+        long remSeconds = getTask().getRemainingTime(TimeUnit.SECONDS);
+        if ((fmt == null) || (remSeconds < 0L)) {
+            timeoutLabel.setText("");
+        } else {
+            long remMinutes = remSeconds / 60;
+            timeoutLabel.setText(String.format(fmt, remMinutes, remSeconds - (remMinutes * 60)));
+        }
+    }
+
     private void showBusyGlassPane(boolean f) {
        /*
         * Use SwingHelper.findRootPaneContainer to find the nearest
@@ -370,6 +427,7 @@ final class DefaultInputBlocker extends Task.InputBlocker {
             showModalDialogTimer.setRepeats(false);
             showModalDialogTimer.start();
         } else {
+            stopRemainingTimeTimer();
             if (modalDialog != null) {
                 modalDialog.dispose();
                 modalDialog = null;
@@ -0,0 +1,412 @@
+package org.jdesktop.application;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Detects when the event dispatch thread (EDT) is blocked for longer than
+ * a threshold, for example by an {@code @Action} method or a Task's
+ * {@code succeeded} method that does I/O.
+ * <p>
+ * A daemon thread posts a heartbeat to the EDT every quarter of the
+ * threshold.  If a heartbeat hasn't run after the threshold, the EDT is
+ * stalled: the watchdog captures the EDT's stack and what it was doing,
+ * i.e. the name of the {@link ApplicationAction} or the class of the
+ * {@link Task} whose EDT callback was running, and logs a warning.  When
+ * the heartbeat finally runs, the stall's duration is added to the
+ * histogram of that activity.  Activities whose histograms show long
+ * stalls are the ones that should become Tasks.
+ * <p>
+ * The watchdog only knows about the actions and Tasks of the application
+ * whose {@link ApplicationContext#setEDTWatchdog EDTWatchdog} it is:
+ * <pre>
+ * getContext().setEDTWatchdog(new EDTWatchdog(500, TimeUnit.MILLISECONDS));
+ * </pre>
+ *
+ * @see ApplicationContext#setEDTWatchdog
+ */
+public final class EDTWatchdog {
+
+    private static final Logger logger = Logger.getLogger(EDTWatchdog.class.getName());
+    /**
+     * The activity of stalls that happened outside of the framework's
+     * actions and Task callbacks, for example in a listener.
+     */
+    public static final String UNKNOWN_ACTIVITY = "unknown";
+    private static final long[] BUCKET_BOUNDS = { // milliseconds
+        100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L, Long.MAX_VALUE
+    };
+    private static final int MAX_STALLS = 100;
+    private final long threshold;                           // nanoseconds
+    private volatile String activity = null;                // only written on the EDT
+    private Thread watchdogThread = null;                   // guarded by this
+    private volatile Thread edtThread = null;               // updated by each heartbeat
+    private long heartbeatTime = -1L;                       // guarded by this, -1 if none is pending
+    private boolean capturing = false;                      // guarded by this
+    private long capturedStallDuration = -1L;               // guarded by this
+    private Stall currentStall = null;                      // guarded by this
+    private final LinkedList<Stall> stalls = new LinkedList<Stall>();      // guarded by this
+    private final Map<String, long[]> histograms = new LinkedHashMap<String, long[]>(); // guarded by this
+    private long stallCount = 0L;                           // guarded by this
+
+    /**
+     * Creates an EDTWatchdog that reports stalls longer than
+     * {@code threshold}.
+     *
+     * @param threshold the longest time the EDT may be blocked without being reported
+     * @param unit the time unit of {@code threshold}
+     */
+    public EDTWatchdog(long threshold, TimeUnit unit) {
+        if (threshold <= 0L) {
+            throw new IllegalArgumentException("threshold <= 0");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("null unit");
+        }
+        this.threshold = unit.toNanos(threshold);
+    }
+
+    /**
+     * Returns the longest time the EDT may be blocked without being
+     * reported.
+     *
+     * @param unit the time unit of the return value
+     * @return the threshold
+     */
+    public long getThreshold(TimeUnit unit) {
+        return unit.convert(threshold, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts the daemon thread that watches the EDT.  {@link
+     * ApplicationContext#setEDTWatchdog} calls this method.
+     */
+    public void start() {
+        // not with the lock held, a pending heartbeat may be waiting for it
+        Thread edt = findEDT();
+        synchronized (this) {
+            if (watchdogThread != null) {
+                return;
+            }
+            if (edt != null) {
+                edtThread = edt;
+            }
+            watchdogThread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    watch();
+                }
+            }, "EDTWatchdog");
+            watchdogThread.setDaemon(true);
+            watchdogThread.start();
+        }
+    }
+
+    /* Returns the EDT, or null if the current thread was interrupted
+     * while waiting for it.  The heartbeats keep track of it afterwards.
+     */
+    private static Thread findEDT() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            return Thread.currentThread();
+        }
+        final Thread[] edt = new Thread[1];
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+
+                @Override
+                public void run() {
+                    edt[0] = Thread.currentThread();
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException e) {
+            throw new Error(e.getCause());
+        }
+        return edt[0];
+    }
+
+    /**
+     * Stops watching the EDT.  The recorded stalls are kept.
+     */
+    public synchronized void stop() {
+        if (watchdogThread != null) {
+            watchdogThread.interrupt();
+            watchdogThread = null;
+        }
+        heartbeatTime = -1L;
+        capturing = false;
+        currentStall = null;
+    }
+
+    /**
+     * Returns true if the EDT is being watched.
+     *
+     * @return true if the watchdog has been started and not stopped
+     */
+    public synchronized boolean isRunning() {
+        return watchdogThread != null;
+    }
+
+    private void watch() {
+        long interval = Math.max(TimeUnit.MILLISECONDS.toNanos(10L), threshold / 4L);
+        Thread self = Thread.currentThread();
+        try {
+            while (true) {
+                if (!check(self, System.nanoTime())) {
+                    return;
+                }
+                TimeUnit.NANOSECONDS.sleep(interval);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /* Posts a heartbeat if none is pending, or captures the EDT if the
+     * pending one is overdue.  The EDT's stack is captured and logged
+     * without the lock, heartbeat needs it.  Returns false if the
+     * watchdog thread was stopped.
+     */
+    private boolean check(Thread self, long now) {
+        final long postTime;
+        String stalledActivity;
+        synchronized (this) {
+            if (watchdogThread != self) {
+                return false;
+            }
+            if (heartbeatTime == -1L) {
+                postTime = now;
+                heartbeatTime = postTime;
+                SwingUtilities.invokeLater(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        heartbeat(postTime);
+                    }
+                });
+                return true;
+            }
+            if ((currentStall != null) || (now - heartbeatTime <= threshold) || (edtThread == null)) {
+                return true;
+            }
+            postTime = heartbeatTime;
+            stalledActivity = (activity != null) ? activity : UNKNOWN_ACTIVITY;
+            capturing = true;
+            capturedStallDuration = -1L;
+        }
+        StackTraceElement[] stack = edtThread.getStackTrace();
+        Stall stall = new Stall(stalledActivity, stack, System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(now - postTime));
+        boolean ended = false;
+        synchronized (this) {
+            if (watchdogThread != self) {
+                return false;
+            }
+            capturing = false;
+            if (capturedStallDuration >= 0L) {
+                // the heartbeat ran while the stack was being captured
+                stall.duration = capturedStallDuration;
+                record(stall);
+                ended = true;
+            } else {
+                currentStall = stall;
+            }
+        }
+        if (logger.isLoggable(Level.WARNING)) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("EDT blocked for more than ").append(TimeUnit.NANOSECONDS.toMillis(threshold));
+            sb.append(" ms by ").append(stalledActivity);
+            for (StackTraceElement element : stack) {
+                sb.append("\n\tat ").append(element);
+            }
+            logger.warning(sb.toString());
+        }
+        if (ended) {
+            logStallEnded(stall);
+        }
+        return true;
+    }
+
+    private void heartbeat(long postTime) {
+        edtThread = Thread.currentThread();
+        Stall stall;
+        synchronized (this) {
+            if (heartbeatTime != postTime) {
+                return;   // the watchdog was stopped since
+            }
+            heartbeatTime = -1L;
+            if (capturing) {
+                // the watchdog thread records the stall once it has the stack
+                capturedStallDuration = System.nanoTime() - postTime;
+                return;
+            }
+            stall = currentStall;
+            currentStall = null;
+            if (stall == null) {
+                return;
+            }
+            stall.duration = System.nanoTime() - postTime;
+            record(stall);
+        }
+        logStallEnded(stall);
+    }
+
+    /* Called with the lock held once the stall has ended. */
+    private void record(Stall stall) {
+        stallCount++;
+        stalls.addLast(stall);
+        if (stalls.size() > MAX_STALLS) {
+            stalls.removeFirst();
+        }
+        long[] histogram = histograms.get(stall.activity);
+        if (histogram == null) {
+            histogram = new long[BUCKET_BOUNDS.length];
+            histograms.put(stall.activity, histogram);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(stall.duration);
+        int bucket = 0;
+        while (millis > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram[bucket]++;
+    }
+
+    private static void logStallEnded(Stall stall) {
+        logger.log(Level.INFO, "EDT was blocked for {0} ms by {1}", new Object[]{stall.getDuration(TimeUnit.MILLISECONDS), stall.activity});
+    }
+
+    /* Called on the EDT before an action or Task callback runs, returns
+     * the activity to restore with exit.
+     */
+    String enter(String activity) {
+        String previous = this.activity;
+        this.activity = activity;
+        return previous;
+    }
+
+    void exit(String previous) {
+        this.activity = previous;
+    }
+
+    /**
+     * Returns the number of stalls since this watchdog was created or
+     * {@link #clear cleared}.
+     *
+     * @return the number of stalls
+     */
+    public synchronized long getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * Returns the most recent stalls, up to 100 of them, oldest first.
+     *
+     * @return a copy of the list of recent stalls
+     */
+    public synchronized List<Stall> getStalls() {
+        return new ArrayList<Stall>(stalls);
+    }
+
+    /**
+     * Returns the upper bounds of the histogram buckets.  The last bound
+     * is {@code Long.MAX_VALUE} in any unit.
+     *
+     * @param unit the time unit of the return values
+     * @return the upper bound of each bucket, inclusive
+     * @see #getHistograms
+     */
+    public static long[] getBucketBounds(TimeUnit unit) {
+        long[] bounds = new long[BUCKET_BOUNDS.length];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = (BUCKET_BOUNDS[i] == Long.MAX_VALUE) ? Long.MAX_VALUE : unit.convert(BUCKET_BOUNDS[i], TimeUnit.MILLISECONDS);
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the number of stalls per activity and duration.  The keys
+     * are activities like "action save" or "task com.example.LoadTask",
+     * or {@link #UNKNOWN_ACTIVITY}.  Each value has the number of stalls
+     * in each of the {@link #getBucketBounds buckets}.
+     *
+     * @return a copy of the histograms
+     */
+    public synchronized Map<String, long[]> getHistograms() {
+        Map<String, long[]> copy = new LinkedHashMap<String, long[]>();
+        for (Map.Entry<String, long[]> entry : histograms.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().clone());
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Discards the recorded stalls and histograms.
+     */
+    public synchronized void clear() {
+        stalls.clear();
+        histograms.clear();
+        stallCount = 0L;
+    }
+
+    /**
+     * A period in which the EDT was blocked for longer than the threshold.
+     */
+    public static final class Stall {
+
+        private final String activity;
+        private final StackTraceElement[] stack;
+        private final long startTime;
+        private long duration = -1L;   // written before the Stall is published
+
+        private Stall(String activity, StackTraceElement[] stack, long startTime) {
+            this.activity = activity;
+            this.stack = stack;
+            this.startTime = startTime;
+        }
+
+        /**
+         * @return what the EDT was doing, e.g. "action save", or {@link #UNKNOWN_ACTIVITY}
+         */
+        public String getActivity() {
+            return activity;
+        }
+
+        /**
+         * @return the stack of the EDT when the stall was detected
+         */
+        public List<StackTraceElement> getStackTrace() {
+            return Collections.unmodifiableList(Arrays.asList(stack));
+        }
+
+        /**
+         * @return the time the stall began, in milliseconds since the epoch
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @param unit the time unit of the return value
+         * @return how long the EDT was blocked
+         */
+        public long getDuration(TimeUnit unit) {
+            return unit.convert(duration, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[%s, %d ms]", getClass().getSimpleName(), activity, getDuration(TimeUnit.MILLISECONDS));
+        }
+    }
+}
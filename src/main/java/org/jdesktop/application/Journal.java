@@ -18,13 +18,12 @@
  */
 package org.jdesktop.application;
 
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
-import java.util.AbstractSequentialList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Journal is a replacement for using ArrayList&lt;Task&gt; in TaskService and
@@ -48,132 +47,351 @@ import java.util.NoSuchElementException;
  * with 2000 tasks, we're up to 4000 1000-element lists or 4 million.
  *
  * What Journal provides is an extremely cheap way to provide all of these
- * before, and after, lists. Journal does this by keeping track of the
- * modification count when each task was added, and then removed, from the
- * journal. As a consequence, it is possible to create a different view, an
- * unmodifiable list, of the journal for any known modification count.
+ * before, and after, lists. The content of the journal at each modification
+ * count is an immutable {@link Snapshot}. The tasks are kept in chunks of up
+ * to 64 tasks, and a modification copies one chunk and the (short) array of
+ * chunks, all other chunks are shared with the previous Snapshot. Each list
+ * returned by {@link #getList getList()} is simply the current Snapshot.
  *
- * Of course, keeping every task ever added to the journal puts a limit on the
- * journal's usefulness due to memory constraints. The solution to this problem
- * lies in the fact that views can only be created for the current modification
- * count of the journal. So once old views are garbage collected, the tasks only
- * visible in those views may be removed from the journal.
+ * The current Snapshot is replaced with compareAndSet, so adding and removing
+ * tasks is lock-free, and reading a Snapshot never locks anything. Nothing
+ * needs to keep track of the views that are still in use: a Snapshot keeps
+ * the chunks it shows reachable, and once the last view of an old
+ * modification count has been garbage collected, so are the tasks that were
+ * only visible in it.
+ *
+ * Removed tasks stay in the current Snapshot's chunks, marked with the
+ * modification count of their removal, until there are more of them than
+ * tasks in the journal. Then the chunks are compressed, which keeps the
+ * cost of removals low and the chunks dense.
  *
  * @author Kevin Greiner
  */
 public class Journal {
-    void compressViewReference() {
-        // Initialize pointer
-        ViewReference lastKept;
-        ViewReference pointer = activeHead;
-        compression:
-        while (pointer != null) {
-            // Move pointer forward over links that I'm keeping
-            // Falling off end of list (NPE) means that there's nothing
-            // more to remove.
-            try {
-                while (pointer.next.get() != null) {
-                    pointer = pointer.next;
-                }
-            } catch (NullPointerException e) {
-                break compression;
-            }
+    /**
+     * The maximum number of tasks in a chunk.
+     */
+    private static final int CHUNK_SIZE = 64;
+    /*
+     * The states of a JournalLink.
+     */
+    private static final int ADDING = 0;
+    private static final int LIVE = 1;
+    private static final int REMOVING = 2;
+    private static final int DEAD = 3;
+    private static final int STILLBORN = 4;
 
-            // pointer now points at last link to keep.
-            lastKept = pointer;
+    /**
+     * Journal specific attributes of each task known to the journal. Links
+     * are associated directly to each task via the Task's getProperty method,
+     * which makes {@link #contains contains} cheap and ensures that each task
+     * is added and removed at most once, even if several threads try.
+     */
+    private static final class JournalLink {
+        private static final AtomicIntegerFieldUpdater<JournalLink> stateUpdater =
+                AtomicIntegerFieldUpdater.newUpdater(JournalLink.class, "state");
+        /**
+         * ADDING, LIVE, REMOVING, DEAD or, if the task was removed before it
+         * was added, STILLBORN.
+         */
+        volatile int state;
+        /**
+         * The modification count of the Journal when this task was added.
+         * While the task is being added it's the modification count the
+         * adding thread is trying to publish.
+         */
+        volatile long birth;
 
-            try {
-                do {
-                    // pointer already known to be dead
-                    // so move to next link
-                    pointer = pointer.next;
-                } while (pointer.get() == null);
-
-                // pointer now at node to keep
-                lastKept.next = pointer;
-            } catch (NullPointerException e) {
-                // iterated off end of link;
-
-                lastKept.next = null;
-                activeTail = lastKept;
-            }
+        JournalLink(int state) {
+            this.state = state;
+        }
+
+        boolean compareAndSetState(int expect, int update) {
+            return stateUpdater.compareAndSet(this, expect, update);
         }
     }
 
     /**
-     * A composite class that provides Journal specific attributes for each task
-     * known to the journal. Links provide a doubly-linked list which the
-     * journal's views use to traverse the known tasks. Links are also
-     * associated directly to each task via the Task's getProperty method.
-     *
-     * JournalLink was originally conceived as a way to associate the birth and
-     * death attributes with a task. It's next/previous members were added after
-     * testing showed that neither ArrayList nor LinkedList scaled well. The
-     * principle value of JournalList is that it offers a remove range
-     * capability lacking in the JDK Collections framework.
+     * An immutable run of up to CHUNK_SIZE tasks, ordered by birth. A
+     * removed task's death is the modification count of its removal, a live
+     * task's death is Long.MAX_VALUE.
      */
-    private static final class JournalLink {
+    private static final class Chunk {
+        final Task<?, ?>[] tasks;
+        final long[] births;
+        final long[] deaths;
         /**
-         * The modification count of the Journal when this task was added.
+         * The number of tasks in this chunk that haven't been removed.
          */
-        long birth;
+        final int live;
+
+        Chunk(Task<?, ?>[] tasks, long[] births, long[] deaths, int live) {
+            this.tasks = tasks;
+            this.births = births;
+            this.deaths = deaths;
+            this.live = live;
+        }
+
+        int size() {
+            return tasks.length;
+        }
+
+        Chunk append(Task<?, ?> task, long birth) {
+            int n = tasks.length;
+            Task<?, ?>[] newTasks = Arrays.copyOf(tasks, n + 1);
+            long[] newBirths = Arrays.copyOf(births, n + 1);
+            long[] newDeaths = Arrays.copyOf(deaths, n + 1);
+            newTasks[n] = task;
+            newBirths[n] = birth;
+            newDeaths[n] = Long.MAX_VALUE;
+            return new Chunk(newTasks, newBirths, newDeaths, live + 1);
+        }
+
+        Chunk kill(int index, long death) {
+            long[] newDeaths = deaths.clone();
+            newDeaths[index] = death;
+            return new Chunk(tasks, births, newDeaths, live - 1);
+        }
+    }
+
+    /**
+     * An immutable, array-backed copy of the Journal's content at one
+     * modification count.  Every list returned by {@link #getList getList()}
+     * or {@link #snapshot snapshot()} is a Snapshot: it never changes and
+     * never touches the Journal again, {@code get(index)} and {@code size()}
+     * are cheap and don't lock anything, so readers never block the writers
+     * of the Journal.
+     * <p>
+     * Like the lists the Journal used to return, two Snapshots of the same
+     * Journal are equal if they show the same modification count, so that
+     * comparing the before and after lists of a "tasks" event is O(1).
+     */
+    public static final class Snapshot extends AbstractList<Task<?, ?>> implements RandomAccess {
         /**
-         * The modification count of the Journal when this task was removed.
+         * The Journal this Snapshot belongs to.
          */
-        long death;
+        private final Journal journal;
         /**
-         * The task itself (used by views as they iterate over the journal).
+         * The modification count of the Journal this Snapshot shows.
          */
-        Task<?, ?> task;
+        private final long version;
+        private final Chunk[] chunks;
         /**
-         * Forward link. Links were used as each view has to skip over different
-         * JournalLink instances to find the next Task present in that
-         * particular view.
+         * The number of live tasks in the chunks before each chunk.
          */
-        JournalLink next;
+        private final int[] liveBefore;
         /**
-         * Backward link.
+         * The number of live tasks.
          */
-        JournalLink previous;
+        private final int length;
+        /**
+         * The number of tasks in the chunks, including removed ones.
+         */
+        private final int linkCount;
+
+        private Snapshot(Journal journal, long version, Chunk[] chunks, int[] liveBefore, int length, int linkCount) {
+            this.journal = journal;
+            this.version = version;
+            this.chunks = chunks;
+            this.liveBefore = liveBefore;
+            this.length = length;
+            this.linkCount = linkCount;
+        }
+
+        /**
+         * The modification count of the Journal when this Snapshot was
+         * taken.  Two Snapshots of the same Journal with the same version
+         * have the same content.
+         *
+         * @return the version of this Snapshot
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public Task<?, ?> get(int index) {
+            if ((index < 0) || (index >= length)) {
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + length);
+            }
+            // The last chunk that has no more than index live tasks before it
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (liveBefore[middle] <= index) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            Chunk chunk = chunks[low];
+            int skip = index - liveBefore[low];
+            for (int i = 0; i < chunk.size(); i++) {
+                if (chunk.deaths[i] == Long.MAX_VALUE && skip-- == 0) {
+                    return chunk.tasks[i];
+                }
+            }
+            throw new IllegalStateException("corrupt journal chunk");
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
 
-        public JournalLink(long birth, Task<?, ?> task) {
-            this.birth = birth;
-            this.death = Long.MAX_VALUE;
+        /**
+         * Returns the last task in this Snapshot.
+         *
+         * @return the last task, or null if this Snapshot is empty
+         */
+        public Task<?, ?> last() {
+            return length == 0 ? null : get(length - 1);
+        }
 
-            this.task = task;
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Snapshot && ((Snapshot) o).journal == journal) {
+                return ((Snapshot) o).version == version;
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+
+        /* The index of the chunk that may contain the task born at birth. */
+        private int chunkOf(long birth) {
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (chunks[middle].births[0] <= birth) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        /* True if task, born at birth, is live in this Snapshot. */
+        boolean containsEntry(long birth, Task<?, ?> task) {
+            if (chunks.length == 0) {
+                return false;
+            }
+            Chunk chunk = chunks[chunkOf(birth)];
+            int i = Arrays.binarySearch(chunk.births, birth);
+            return (i >= 0) && (chunk.tasks[i] == task) && (chunk.deaths[i] == Long.MAX_VALUE);
+        }
+
+        /* The next Snapshot, with task added at the end. */
+        Snapshot appended(Task<?, ?> task) {
+            long birth = version + 1;
+            int n = chunks.length;
+            if ((n > 0) && (chunks[n - 1].size() < CHUNK_SIZE)) {
+                Chunk[] newChunks = chunks.clone();
+                newChunks[n - 1] = chunks[n - 1].append(task, birth);
+                return new Snapshot(journal, birth, newChunks, liveBefore, length + 1, linkCount + 1);
+            }
+            Chunk[] newChunks = Arrays.copyOf(chunks, n + 1);
+            int[] newLiveBefore = Arrays.copyOf(liveBefore, n + 1);
+            newChunks[n] = new Chunk(new Task<?, ?>[]{task}, new long[]{birth}, new long[]{Long.MAX_VALUE}, 1);
+            newLiveBefore[n] = length;
+            return new Snapshot(journal, birth, newChunks, newLiveBefore, length + 1, linkCount + 1);
+        }
+
+        /* The next Snapshot, with the task born at birth removed. */
+        Snapshot removed(long birth) {
+            long death = version + 1;
+            int c = chunkOf(birth);
+            int i = Arrays.binarySearch(chunks[c].births, birth);
+            Chunk[] newChunks = chunks.clone();
+            newChunks[c] = chunks[c].kill(i, death);
+            int[] newLiveBefore = liveBefore.clone();
+            for (int k = c + 1; k < newLiveBefore.length; k++) {
+                newLiveBefore[k]--;
+            }
+            return new Snapshot(journal, death, newChunks, newLiveBefore, length - 1, linkCount);
+        }
+
+        /* The next Snapshot, with the same content. */
+        Snapshot touched() {
+            return new Snapshot(journal, version + 1, chunks, liveBefore, length, linkCount);
+        }
+
+        /* This Snapshot without the tasks removed no later than cutoff,
+         * or this if there are none.
+         */
+        Snapshot compressed(long cutoff) {
+            int kept = 0;
+            for (Chunk chunk : chunks) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (chunk.deaths[i] > cutoff) {
+                        kept++;
+                    }
+                }
+            }
+            if (kept == linkCount) {
+                return this;
+            }
+            int n = (kept + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            Chunk[] newChunks = new Chunk[n];
+            int[] newLiveBefore = new int[n];
+            Task<?, ?>[] tasks = null;
+            long[] births = null;
+            long[] deaths = null;
+            int c = 0;
+            int j = 0;
+            int live = 0;
+            int liveTotal = 0;
+            for (Chunk chunk : chunks) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (chunk.deaths[i] <= cutoff) {
+                        continue;
+                    }
+                    if (tasks == null) {
+                        int size = Math.min(CHUNK_SIZE, kept - c * CHUNK_SIZE);
+                        tasks = new Task<?, ?>[size];
+                        births = new long[size];
+                        deaths = new long[size];
+                        newLiveBefore[c] = liveTotal;
+                    }
+                    tasks[j] = chunk.tasks[i];
+                    births[j] = chunk.births[i];
+                    deaths[j] = chunk.deaths[i];
+                    j++;
+                    if (chunk.deaths[i] == Long.MAX_VALUE) {
+                        live++;
+                        liveTotal++;
+                    }
+                    if (j == tasks.length) {
+                        newChunks[c++] = new Chunk(tasks, births, deaths, live);
+                        tasks = null;
+                        j = 0;
+                        live = 0;
+                    }
+                }
+            }
+            return new Snapshot(journal, version, newChunks, newLiveBefore, length, kept);
         }
     }
     /**
-     * The modification count of the journal. Incremented for each addition and
-     * subtraction.
-     */
-    private long modCount = Long.MIN_VALUE + 1;
-    /**
-     * The number of tasks in the journal at the current modification count.
-     */
-    private int length = 0;
-    /**
-     * The number of JournalLink instances in this journal. Used for debugging
-     * and testing.
-     */
-    private int linkCount = 0;
-    /**
-     * The head of the JournalLink doubly-linked list.
-     */
-    private final JournalLink head;
-    /**
-     * The tail of the JournalLink doubly-linked list.
+     * The current content of the journal.
      */
-    private final JournalLink tail;
+    private final AtomicReference<Snapshot> current;
 
     /**
-     * The number of JournalLink instances in this Journal. Used for debugging
-     * and testing.
+     * The number of JournalLink instances in this journal, including the
+     * ones of removed tasks that haven't been compressed away yet. Used for
+     * debugging and testing.
      *
      * @return
      */
     int size() {
-        return linkCount;
+        return current.get().linkCount;
     }
 
     /**
@@ -183,7 +401,7 @@ public class Journal {
      * @return
      */
     int length() {
-        return length;
+        return current.get().length;
     }
 
     /**
@@ -192,180 +410,95 @@ public class Journal {
      * @return
      */
     long modCount() {
-        return modCount;
+        return current.get().version;
     }
 
     /**
      * Constructs an empty Journal.
      */
     public Journal() {
-        head = new JournalLink(Long.MIN_VALUE, null);
-        tail = new JournalLink(head.birth, null);
-
-        head.death = tail.death = head.birth;
-        head.next = tail;
-        head.previous = null;
-        tail.next = null;
-        tail.previous = head;
+        current = new AtomicReference<Snapshot>(new Snapshot(this, Long.MIN_VALUE + 1, new Chunk[0], new int[0], 0, 0));
     }
 
     /**
-     * A soft reference that knows the modification count of the Journal.View
-     * that is its referent. Used to determine which tasks can be removed from
-     * the journal because no view remains that can display those tasks.
+     * Returns true if the task is present at the current modification count.
+     * The task's JournalLink is found via the Task's property map, so this
+     * doesn't traverse the journal.
      *
-     * Like JournalLinks, ViewReference is linked into a singly-linked list to
-     * optimize list edits with a remove range capability.
+     * @param task the task to look for
+     * @return true if the task has been added and not removed yet
      */
-    protected static final class ViewReference extends SoftReference<Journal.View> {
-        /**
-         * The modification count of the Journal.View referent.
-         */
-        final long modCount;
-        /**
-         * Used to construct a list of ViewReference sorted by ascending
-         * modification count.
-         */
-        ViewReference next;
-
-        protected ViewReference() {
-            super(null);
-
-            modCount = Integer.MIN_VALUE;
-        }
-
-        protected ViewReference(Journal.View referent) {
-            super(referent);
-
-            modCount = referent.revision;
+    public boolean contains(Task<?, ?> task) {
+        JournalLink lifespan = (JournalLink) task.getProperty(this);
+        if (lifespan == null) {
+            return false;
         }
-
-        protected ViewReference(Journal.View referent, ReferenceQueue<? super Journal.View> q) {
-            super(referent, q);
-
-            modCount = referent.revision;
+        switch (lifespan.state) {
+            case LIVE:
+                return true;
+            case ADDING:
+            case REMOVING:
+                // Another thread is changing the journal, ask the current Snapshot
+                return current.get().containsEntry(lifespan.birth, task);
+            default:
+                return false;
         }
     }
+
     /**
-     * A ReferenceQueue used to detect when a GC has occurred prior to the
-     * current Journal update.
-     */
-    private final ReferenceQueue<Journal.View> refQueue = new ReferenceQueue<Journal.View>();
-    /**
-     * Save time processing the ReferenceQueue by only putting a few references
-     * on it. This works as I'm only using the ReferenceQueue to know when a GC
-     * has occurred.
-     */
-    private int numToEnqueue = 10;
-    /**
-     * Dummy node at the head of the ViewReference list.
-     */
-    private ViewReference activeHead = new ViewReference();
-    /**
-     * Tail (last node) of the ViewReference list.
+     * Returns the most recently added task that hasn't been removed yet.
+     * This is the last element of {@link #getList getList()}.
+     *
+     * @return the last task at the current modification count, or null if there is none
      */
-    private ViewReference activeTail = activeHead;
+    public Task<?, ?> last() {
+        return current.get().last();
+    }
 
     /**
-     * Compress JournalLink list by removing instances whose contents (task)
-     * will not be displayed by any remaining view.
+     * Compress the chunks by removing the tasks that were removed from the
+     * journal no later than the cutoff. Snapshots that have already been
+     * taken are unaffected, the compressed Snapshot has the same modification
+     * count and content as the one it replaces.
+     * <p>
+     * The tasks keep their JournalLink, so a removed task can't be removed,
+     * or added, again.
      *
      * @param cutoff the modification count indicating the earliest content to
      * retain.
      */
     protected void compressJournalLink(long cutoff) {
-        // Initialize pointer
-        JournalLink lastKept;
-        JournalLink pointer = head.next;
-        compression:
-        while (pointer != tail) {
-            // Move pointer forward over links that I'm keeping
-            // NOTE: Stops on link to remove (including tail)
-            while (pointer.death > cutoff) {
-                pointer = pointer.next;
-            }
-
-            // pointer now points at link to remove.  lastKept at preceding (kept) link.
-            lastKept = pointer.previous;
-
-            try {
-                do {
-                    // pointer already known to be dead so procede with
-                    // task clean up.
-
-                    // NOTE: This line will throw NPE if pointer == tail
-                    pointer.task.removeProperty(this);
-                    pointer.task = null;
-                    linkCount--;
-
-                    // move to next link
-                    pointer = pointer.next;
-                } while (pointer.death <= cutoff);
-            } catch (NullPointerException e) {
-                // iterated off end of link; reset pointer to tail as it is always kept.
-                pointer = tail;
+        Snapshot snapshot, compressed;
+        do {
+            snapshot = current.get();
+            compressed = snapshot.compressed(cutoff);
+            if (compressed == snapshot) {
+                return;
             }
-
-            // pointer now on link to keep and lastKept is its new previous link
-
-            lastKept.next = pointer;
-            pointer.previous = lastKept;
-        }
+        } while (!current.compareAndSet(snapshot, compressed));
     }
 
     /**
      * Add a new task to the end (last) position in this Journal's list.
+     * A task that has already been added, or removed, is ignored.
      *
      * @param task the task being added
      */
     public void addLast(Task<?, ?> task) {
-        JournalLink lifespan = (JournalLink) task.getProperty(this);
+        JournalLink lifespan = new JournalLink(ADDING);
 
         // Watch out for tasks whose remove event was delivered before their add event.
-        if (lifespan == null) {
-            lifespan = new JournalLink(++modCount, task);
-
-            task.setProperty(this, lifespan);
-
-            synchronized (this) {
-                JournalLink previous = tail.previous;
-
-                previous.next = lifespan;
-                lifespan.previous = previous;
-
-                lifespan.next = tail;
-                tail.previous = lifespan;
-
-                linkCount++;
-            }
-            length++;
+        if (task.putPropertyIfAbsent(this, lifespan) != null) {
+            return;
         }
 
-        cleanUp();
-    }
-
-    /**
-     * Called on every Journal change to remove any obsolete content.
-     */
-    private synchronized void cleanUp() {
-        Reference<? extends Journal.View> reference = refQueue.poll();
-        // if one Journal.View has been GC'd
-        if (reference != null) {
-            // Clean up the reference queue by draining all pending references.
-            // I'm NOT doing anything here because the order of references in the
-            // queue need not match the order in the active views list.
-            do {
-                reference = refQueue.poll();
-            } while (reference != null);
-
-            // Reset the number of references to enqueue so that future views will
-            // repopulate the reference queue after they are GC'd.
-            numToEnqueue = 10;
-
-            compressViewReference();
-
-            compressJournalLink(activeHead.next == null ? modCount : activeHead.next.modCount);
-        }
+        Snapshot snapshot, next;
+        do {
+            snapshot = current.get();
+            lifespan.birth = snapshot.version + 1;
+            next = snapshot.appended(task);
+        } while (!current.compareAndSet(snapshot, next));
+        lifespan.state = LIVE;
     }
 
     /**
@@ -375,247 +508,65 @@ public class Journal {
      * @return true if the task was actually removed.
      */
     public boolean remove(Task<?, ?> task) {
-        try {
-            JournalLink lifespan = (JournalLink) task.getProperty(this);
-
-            // Watch out for tasks whose remove event was delivered before their add event.
-            if (lifespan == null) {
-                // SwingWorker delivered the remove event before the add event.
-                // Synthesize a task entry that is both an add and a remove
-                // to block the pending add event from having any effect.
-
-                lifespan = new JournalLink(++modCount, task);
-                lifespan.death = lifespan.birth;
-
-                task.setProperty(this, lifespan);
-
-                synchronized (this) {
-                    JournalLink previous = tail.previous;
-
-                    previous.next = lifespan;
-                    lifespan.previous = previous;
-
-                    lifespan.next = tail;
-                    tail.previous = lifespan;
-
-                    linkCount++;
-                }
+        JournalLink lifespan = (JournalLink) task.getProperty(this);
 
-                return true;
-            } else if (modCount < lifespan.death) {
-                synchronized (this) {
-                    lifespan.death = ++modCount;
-                }
-                --length;
+        // Watch out for tasks whose remove event was delivered before their add event.
+        if (lifespan == null) {
+            // SwingWorker delivered the remove event before the add event.
+            // Mark the task as both added and removed to block the pending
+            // add event from having any effect.
+            Object previous = task.putPropertyIfAbsent(this, new JournalLink(STILLBORN));
+            if (previous == null) {
+                Snapshot snapshot;
+                do {
+                    snapshot = current.get();
+                } while (!current.compareAndSet(snapshot, snapshot.touched()));
                 return true;
             }
-
-            return false;
-        } finally {
-            cleanUp();
+            lifespan = (JournalLink) previous;
         }
-    }
-
-    /**
-     * A ListIterator that iterators over the tasks present on the specified
-     * modification count of the journal.
-     */
-    private final class ViewIterator implements ListIterator<Task<?, ?>> {
-        /**
-         * The current cursor position (see {@link ListIterator}) in this
-         * ListIterator.
-         */
-        int cursorPosition;
-        /**
-         * The number of tasks accessible in this view.
-         */
-        final int length;
-        /**
-         * The Journal's modification count at the time this iterator was
-         * created.
-         */
-        final long modCount;
-        /**
-         * Current position in the journal's doubly-linked list.
-         */
-        JournalLink cursor;
 
-        ViewIterator(int initialIndex, int length, long modCount) {
-            this.length = length;
-            this.modCount = modCount;
-            if (initialIndex * 2 < length) {
-                cursorPosition = 0;
-                cursor = Journal.this.head.next;
+        // Only one thread gets to remove the task
+        while (true) {
+            int state = lifespan.state;
+            if (state == LIVE) {
+                if (lifespan.compareAndSetState(LIVE, REMOVING)) {
+                    break;
+                }
+            } else if (state == ADDING) {
+                // The task will be LIVE as soon as the adding thread's
+                // compareAndSet succeeds
+                Thread.yield();
             } else {
-                cursorPosition = length;
-                cursor = Journal.this.tail;
-            }
-
-            while (cursorPosition < initialIndex) {
-                next();
-            }
-
-            while (initialIndex < cursorPosition) {
-                previous();
+                return false;
             }
         }
 
-        @Override
-        public boolean hasNext() {
-            return cursorPosition < length;
-        }
-
-        @Override
-        public Task<?, ?> next() {
-            synchronized (Journal.this) {
-                do {
-                    if (cursor.next == null) {
-                        throw new NoSuchElementException();
-                    }
-
-                    try {
-                        if (cursor.birth <= modCount && modCount < cursor.death) {
-                            cursorPosition++;
-                            return cursor.task;
-                        }
-                    } finally {
-                        cursor = cursor.next;
-                    }
-                } while (true);
-            }
-        }
+        Snapshot snapshot, next;
+        do {
+            snapshot = current.get();
+            next = snapshot.removed(lifespan.birth);
+        } while (!current.compareAndSet(snapshot, next));
+        lifespan.state = DEAD;
 
-        @Override
-        public boolean hasPrevious() {
-            return 0 < cursorPosition;
-        }
-
-        @Override
-        public Task<?, ?> previous() {
-            synchronized (Journal.this) {
-                do {
-                    if (cursor.previous == null) {
-                        throw new NoSuchElementException();
-                    }
-
-                    cursor = cursor.previous;
-
-                    if (cursor.birth <= modCount && modCount < cursor.death) {
-                        cursorPosition--;
-                        return cursor.task;
-                    }
-                } while (true);
-            }
-        }
-
-        @Override
-        public int nextIndex() {
-            return cursorPosition < length ? cursorPosition + 1 : length;
-        }
-
-        @Override
-        public int previousIndex() {
-            return cursorPosition > 0 ? cursorPosition - 1 : 0;
-        }
-
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException("Not supported yet.");
-        }
-
-        @Override
-        public void set(Task<?, ?> e) {
-            throw new UnsupportedOperationException("Not supported yet.");
+        if (next.linkCount - next.length > Math.max(CHUNK_SIZE, next.length)) {
+            compressJournalLink(next.version);
         }
+        return true;
+    }
 
-        @Override
-        public void add(Task<?, ?> e) {
-            throw new UnsupportedOperationException("Not supported yet.");
-        }
+    public List<Task<?, ?>> getList() {
+        return current.get();
     }
 
     /**
-     * An unmodifiable list showing the content of the Journal on a particular
-     * modification count.
+     * Returns an immutable Snapshot of the tasks present at the current
+     * modification count.  This is the same list that {@link #getList
+     * getList()} returns, with its specific type.
+     *
+     * @return a Snapshot of the current content of this Journal
      */
-    private final class View extends AbstractSequentialList<Task<?, ?>> {
-        final int length;
-        final long revision;
-        ListIterator<Task<?, ?>> getIterator;
-
-        View() {
-            synchronized (Journal.this) {
-                this.length = Journal.this.length;
-                this.revision = Journal.this.modCount;
-
-                final ViewReference viewReference = numToEnqueue-- > 0 ? new ViewReference(this, refQueue) : new ViewReference(this);
-
-                activeTail.next = viewReference;
-                activeTail = viewReference;
-            }
-        }
-
-        @Override
-        public Task<?, ?> get(int index) {
-            if (getIterator == null) {
-                getIterator = listIterator(index);
-            } else if (getIterator.nextIndex() < index) {
-                int forwardJumps = index - getIterator.nextIndex();
-                int backwardJumps = length - index;
-
-                if (forwardJumps > backwardJumps) {
-                    getIterator = listIterator(index);
-                } else {
-                    while (getIterator.nextIndex() < index) {
-                        getIterator.next();
-                    }
-                }
-            } else if (index <= getIterator.previousIndex()) {
-                int backwardJumps = getIterator.previousIndex() - index + 1;
-                int forwardJumps = index;
-
-                if (forwardJumps < backwardJumps) {
-                    getIterator = listIterator(index);
-                } else {
-                    while (index <= getIterator.previousIndex()) {
-                        getIterator.previous();
-                    }
-                }
-            }
-
-            return getIterator.next();
-        }
-
-        @Override
-        public ListIterator<Task<?, ?>> listIterator(int index) {
-            // Create a new listIterator everytime one is requested because sharing
-            // iterators will result in strange couplings. 
-            return new ViewIterator(index, length, revision);
-        }
-
-        @Override
-        public int size() {
-            return length;
-        }
-
-        private Journal journal() {
-            return Journal.this;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            return getClass() == o.getClass() && revision == ((Journal.View) o).revision && Journal.this == ((Journal.View) o).journal();
-        }
-
-        @Override
-        public int hashCode() {
-            int hash = 7;
-            hash = 41 * hash + (int) (this.revision & Integer.MAX_VALUE);
-            return hash;
-        }
-    }
-
-    public List<Task<?, ?>> getList() {
-        return new Journal.View();
+    public Snapshot snapshot() {
+        return current.get();
     }
 }
@@ -0,0 +1,295 @@
+package org.jdesktop.application;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * A fire-and-forget background job that's much cheaper than a {@link Task}.
+ * <p>
+ * A Task is a SwingWorker with bound properties, TaskListeners, a
+ * ResourceMap and an InputBlocker, and its state changes take several trips
+ * to the EDT.  That's negligible for the Tasks started by the user, but
+ * not for thousands of tiny jobs, like hashing thumbnails or saving
+ * fragments of a document.  A LightweightTask has none of these features:
+ * it runs {@link #doInBackground} on one of the {@link TaskService}'s
+ * threads, and then visits the EDT exactly once to call {@link #succeeded},
+ * {@link #failed} or {@link #cancelled}, and {@link #finished}.
+ * <pre>
+ * taskService.execute(new LightweightTask&lt;Long&gt;() {
+ *     protected Long doInBackground() throws IOException {
+ *         return checksum(file);
+ *     }
+ *     protected void succeeded(Long checksum) {
+ *         model.setChecksum(file, checksum);
+ *     }
+ * });
+ * </pre>
+ * LightweightTasks aren't in the TaskService's {@link TaskService#getTasks
+ * tasks} list.  The service counts them in its {@link
+ * TaskService#getLightweightTaskCount lightweightTaskCount} and
+ * {@code completedTaskCount} properties, and {@link TaskMonitor} includes
+ * them in its task counts and throughput.
+ * <p>
+ * Like a Task, a LightweightTask can only be executed once.
+ *
+ * @param <T> the result type returned by this LightweightTask's {@code doInBackground} method
+ * @see TaskService#execute(LightweightTask)
+ */
+public abstract class LightweightTask<T> implements RunnableFuture<T> {
+
+    private static final Logger logger = Logger.getLogger(LightweightTask.class.getName());
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int SUCCEEDED = 2;
+    private static final int FAILED = 3;
+    private static final int CANCELLED = 4;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<LightweightTask> stateUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(LightweightTask.class, "state");
+    private volatile int state = NEW;
+    private Thread runner = null;     // guarded by this
+    private volatile TaskService taskService = null;
+    private T result = null;          // written before the state is set to SUCCEEDED
+    private Throwable cause = null;   // written before the state is set to FAILED
+
+    /**
+     * Computes the result of this LightweightTask.  This method runs on a
+     * background thread, it must not touch the GUI.
+     *
+     * @return the result, passed to {@link #succeeded}
+     * @throws Exception the reason this LightweightTask failed, passed to {@link #failed}
+     */
+    protected abstract T doInBackground() throws Exception;
+
+    /**
+     * Called on the EDT when {@code doInBackground} has returned a result.
+     * It does nothing by default.
+     *
+     * @param result the value returned by {@code doInBackground}
+     */
+    protected void succeeded(T result) {
+    }
+
+    /**
+     * Called on the EDT when {@code doInBackground} has thrown an exception.
+     * By default it logs the exception.
+     *
+     * @param cause the exception thrown by {@code doInBackground}
+     */
+    protected void failed(Throwable cause) {
+        String msg = String.format("%s failed: %s", this, cause);
+        logger.log(Level.SEVERE, msg, cause);
+    }
+
+    /**
+     * Called on the EDT when this LightweightTask has been cancelled.
+     * It does nothing by default.
+     *
+     * @see #cancel
+     */
+    protected void cancelled() {
+    }
+
+    /**
+     * Called on the EDT after {@code succeeded}, {@code failed} or {@code
+     * cancelled}, even if that method threw an exception.  It does nothing
+     * by default.
+     */
+    protected void finished() {
+    }
+
+    /**
+     * Returns the TaskService that executed this LightweightTask.
+     *
+     * @return the TaskService, or null if this LightweightTask hasn't been executed yet
+     */
+    public final TaskService getTaskService() {
+        return taskService;
+    }
+
+    final void setTaskService(TaskService taskService) {
+        synchronized (this) {
+            if ((this.taskService != null) || (state != NEW)) {
+                throw new IllegalArgumentException("task has already been executed");
+            }
+            this.taskService = taskService;
+        }
+    }
+
+    /**
+     * Runs {@code doInBackground} and then schedules the completion
+     * methods on the EDT.  This method is called by the TaskService's
+     * executor, applications should {@link TaskService#execute(LightweightTask)
+     * execute} a LightweightTask rather than run it.
+     */
+    @Override
+    public final void run() {
+        if (!stateUpdater.compareAndSet(this, NEW, RUNNING)) {
+            return;
+        }
+        TaskService service = taskService;
+        if (service != null) {
+            service.lightweightTaskStarted();
+        }
+        synchronized (this) {
+            runner = Thread.currentThread();
+        }
+        T value = null;
+        Throwable thrown = null;
+        try {
+            value = doInBackground();
+        } catch (Throwable e) {
+            thrown = e;
+        } finally {
+            synchronized (this) {
+                runner = null;
+            }
+            if (service != null) {
+                service.lightweightTaskStopped();
+            }
+        }
+        // Don't leave an interrupt meant for doInBackground to the executor's thread
+        Thread.interrupted();
+        if (thrown == null) {
+            result = value;
+            complete(RUNNING, SUCCEEDED);
+        } else {
+            cause = thrown;
+            complete(RUNNING, FAILED);
+        }
+    }
+
+    /**
+     * Cancels this LightweightTask.  If it hasn't started yet, it never
+     * will.  If it's running and {@code mayInterruptIfRunning} is true,
+     * the thread that's running {@code doInBackground} is interrupted.
+     * Either way {@link #cancelled} is called on the EDT and the result of
+     * {@code doInBackground}, if any, is ignored.
+     *
+     * @param mayInterruptIfRunning true if a running {@code doInBackground} should be interrupted
+     * @return false if this LightweightTask was already done
+     */
+    @Override
+    public final boolean cancel(boolean mayInterruptIfRunning) {
+        if (complete(NEW, CANCELLED)) {
+            return true;
+        }
+        if (complete(RUNNING, CANCELLED)) {
+            if (mayInterruptIfRunning) {
+                synchronized (this) {
+                    if (runner != null) {
+                        runner.interrupt();
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /* Moves this LightweightTask to a final state and makes the one trip to
+     * the EDT.  Returns false if it wasn't in the expected state.
+     */
+    private boolean complete(int expect, int finalState) {
+        if (!stateUpdater.compareAndSet(this, expect, finalState)) {
+            return false;
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                doCompletion();
+            }
+        });
+        return true;
+    }
+
+    private void doCompletion() {
+        try {
+            switch (state) {
+                case SUCCEEDED:
+                    succeeded(result);
+                    break;
+                case FAILED:
+                    failed(cause);
+                    break;
+                default:
+                    cancelled();
+            }
+        } finally {
+            try {
+                finished();
+            } finally {
+                TaskService service = taskService;
+                if (service != null) {
+                    service.lightweightTaskCompleted();
+                }
+            }
+        }
+    }
+
+    @Override
+    public final boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public final boolean isDone() {
+        return state > RUNNING;
+    }
+
+    /**
+     * Returns true if {@code doInBackground} is running.
+     *
+     * @return true if this LightweightTask has started and isn't done
+     */
+    public final boolean isStarted() {
+        return state == RUNNING;
+    }
+
+    @Override
+    public final T get() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (!isDone()) {
+                wait();
+            }
+        }
+        return outcome();
+    }
+
+    @Override
+    public final T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (!isDone()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return outcome();
+    }
+
+    private T outcome() throws ExecutionException {
+        switch (state) {
+            case SUCCEEDED:
+                return result;
+            case FAILED:
+                throw new ExecutionException(cause);
+            default:
+                throw new CancellationException();
+        }
+    }
+}
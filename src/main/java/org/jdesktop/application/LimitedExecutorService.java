@@ -0,0 +1,188 @@
+package org.jdesktop.application;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ExecutorService that runs its commands on a pool it shares with
+ * other LimitedExecutorServices, but never uses more than {@code
+ * maxConcurrency} of the pool's threads at a time and never queues
+ * more than {@code maxQueued} commands.  Queued commands are kept
+ * here rather than in the pool, so that {@code shutdownNow} can return
+ * them and each view's limits are independent of the others.
+ * <p>
+ * Shutting a view down doesn't affect the pool or the other views.
+ */
+final class LimitedExecutorService extends AbstractExecutorService {
+
+    private final Executor pool;
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+    private final Set<Thread> runningThreads = new HashSet<Thread>();
+    private int activeWorkers = 0;
+    private boolean shutdown = false;
+    private boolean stopped = false;
+
+    LimitedExecutorService(Executor pool, int maxConcurrency, int maxQueued) {
+        if (pool == null) {
+            throw new IllegalArgumentException("null pool");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency < 1");
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("negative maxQueued");
+        }
+        this.pool = pool;
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueued = maxQueued;
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    int getMaxQueued() {
+        return maxQueued;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("executor has been shut down");
+            }
+            if (activeWorkers >= maxConcurrency) {
+                if (queue.size() >= maxQueued) {
+                    throw new RejectedExecutionException("queue is full");
+                }
+                queue.addLast(command);
+                return;
+            }
+            activeWorkers++;
+        }
+        try {
+            pool.execute(new Worker(command));
+        } catch (RuntimeException e) {
+            workerExited();
+            throw e;
+        }
+    }
+
+    /* Runs its first command and then the queued ones, until the
+     * queue is empty.  At most maxConcurrency Workers exist at a time.
+     */
+    private class Worker implements Runnable {
+
+        private Runnable command;
+
+        Worker(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            Thread thread = Thread.currentThread();
+            boolean handedOff = false;
+            try {
+                while (command != null) {
+                    synchronized (LimitedExecutorService.this) {
+                        runningThreads.add(thread);
+                        // A command dequeued just before shutdownNow() runs interrupted
+                        if (stopped) {
+                            thread.interrupt();
+                        }
+                    }
+                    try {
+                        command.run();
+                    } finally {
+                        synchronized (LimitedExecutorService.this) {
+                            runningThreads.remove(thread);
+                            command = queue.poll();
+                        }
+                        // Don't let a shutdownNow() interrupt leak into the next command
+                        Thread.interrupted();
+                    }
+                }
+            } finally {
+                /* If a command threw, a new Worker takes over the
+                 * command that was dequeued for this one.
+                 */
+                if (command != null) {
+                    try {
+                        pool.execute(new Worker(command));
+                        handedOff = true;
+                    } catch (RuntimeException e) {
+                        synchronized (LimitedExecutorService.this) {
+                            queue.addFirst(command);
+                        }
+                    }
+                }
+                if (!handedOff) {
+                    workerExited();
+                }
+            }
+        }
+    }
+
+    private synchronized void workerExited() {
+        activeWorkers--;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending;
+        synchronized (this) {
+            shutdown = true;
+            stopped = true;
+            pending = new ArrayList<Runnable>(queue);
+            queue.clear();
+            for (Thread thread : runningThreads) {
+                thread.interrupt();
+            }
+            notifyAll();
+        }
+        return pending;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown && (activeWorkers == 0) && queue.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,253 @@
+package org.jdesktop.application;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Limits how many Tasks may use a scarce resource at the same time, like
+ * a scanner, a database connection that's the only writer, or a CPU-bound
+ * encoder, no matter which {@link TaskService} executes them.
+ * <p>
+ * A Task names the resources it needs with {@link
+ * Task#setRequiredResources setRequiredResources}, or the {@code
+ * resources} parameter of its {@link Action &#064;Action}.  Before the
+ * TaskService hands such a Task over to its executor, it takes a permit
+ * for each of the resources, all of them at once.  If one of them has no
+ * permits left, the Task waits without occupying a thread and its {@code
+ * message} is set to the {@code ResourcePermits.waitingMessage} resource,
+ * "waiting for <i>resource</i>".  The permits are returned when the Task
+ * is done.  Waiting Tasks get their permits in the order they started
+ * waiting, a Task isn't overtaken by later Tasks that need one of the
+ * same resources.
+ * <p>
+ * Each resource has one permit unless it's {@link #setPermits configured}
+ * otherwise:
+ * <pre>
+ * ResourcePermits permits = getContext().getResourcePermits();
+ * permits.setPermits("encoder", Runtime.getRuntime().availableProcessors());
+ * </pre>
+ *
+ * @see ApplicationContext#getResourcePermits
+ * @see Task#setRequiredResources
+ */
+public final class ResourcePermits {
+
+    private final Map<String, int[]> permits = new HashMap<String, int[]>();   // guarded by this, {permits, used}
+    private final Map<Task<?, ?>, Boolean> holders = new IdentityHashMap<Task<?, ?>, Boolean>(); // guarded by this
+    private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();        // guarded by this
+
+    /* A Task that's waiting for permits, and what the TaskService does
+     * once it has them.
+     */
+    private static final class Waiter {
+
+        final Task<?, ?> task;
+        final Runnable onAcquire;
+        boolean granted = false;         // guarded by this
+        boolean messageShown = false;    // guarded by this
+        String previousMessage = null;   // guarded by this
+
+        Waiter(Task<?, ?> task, Runnable onAcquire) {
+            this.task = task;
+            this.onAcquire = onAcquire;
+        }
+    }
+
+    ResourcePermits() {
+    }
+
+    private static void checkResource(String resource) {
+        if (resource == null) {
+            throw new IllegalArgumentException("null resource");
+        }
+    }
+
+    private int[] permitsOf(String resource) {
+        int[] p = permits.get(resource);
+        if (p == null) {
+            p = new int[]{1, 0};
+            permits.put(resource, p);
+        }
+        return p;
+    }
+
+    /**
+     * Returns how many Tasks may use {@code resource} at the same time.
+     *
+     * @param resource the name of the resource
+     * @return the number of permits of the resource, 1 unless it was configured
+     * @see #setPermits
+     */
+    public synchronized int getPermits(String resource) {
+        checkResource(resource);
+        int[] p = permits.get(resource);
+        return (p != null) ? p[0] : 1;
+    }
+
+    /**
+     * Sets how many Tasks may use {@code resource} at the same time.  If
+     * the number is raised, waiting Tasks may get their permits right
+     * away.  If it's lowered, the Tasks that are using the resource keep
+     * their permits.
+     *
+     * @param resource the name of the resource
+     * @param count the number of permits, at least 1
+     * @see #getPermits
+     */
+    public void setPermits(String resource, int count) {
+        checkResource(resource);
+        if (count < 1) {
+            throw new IllegalArgumentException("count < 1");
+        }
+        synchronized (this) {
+            permitsOf(resource)[0] = count;
+        }
+        grantWaiters();
+    }
+
+    /**
+     * Returns how many more Tasks could use {@code resource} right now.
+     *
+     * @param resource the name of the resource
+     * @return the number of permits that aren't taken, never negative
+     */
+    public synchronized int getAvailablePermits(String resource) {
+        checkResource(resource);
+        int[] p = permits.get(resource);
+        return (p != null) ? Math.max(0, p[0] - p[1]) : 1;
+    }
+
+    /**
+     * Returns the number of Tasks that are waiting for permits.
+     *
+     * @return the number of waiting Tasks
+     */
+    public synchronized int getWaitingTaskCount() {
+        return waiters.size();
+    }
+
+    /* Returns the first of the task's resources that has no permit left,
+     * or null.  Resources in reserved count as taken.
+     */
+    private String unavailable(List<String> resources, Set<String> reserved) {
+        for (String resource : resources) {
+            int[] p = permitsOf(resource);
+            if ((p[1] >= p[0]) || ((reserved != null) && reserved.contains(resource))) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    private void take(Task<?, ?> task) {
+        for (String resource : task.getRequiredResources()) {
+            permitsOf(resource)[1]++;
+        }
+        holders.put(task, Boolean.TRUE);
+    }
+
+    /* Called by a TaskService before it hands the task over to its
+     * executor.  Returns true if the task got its permits, otherwise it
+     * waits for them and onAcquire runs once it has them, on the thread
+     * that released them.
+     */
+    boolean acquire(Task<?, ?> task, Runnable onAcquire) {
+        Waiter waiter;
+        String resource;
+        synchronized (this) {
+            Set<String> reserved = new HashSet<String>();
+            for (Waiter w : waiters) {
+                reserved.addAll(w.task.getRequiredResources());
+            }
+            resource = unavailable(task.getRequiredResources(), reserved);
+            if (resource == null) {
+                take(task);
+                return true;
+            }
+            waiter = new Waiter(task, onAcquire);
+            waiters.addLast(waiter);
+        }
+        String message = task.getContext().getResourceMap().getString("ResourcePermits.waitingMessage", resource);
+        synchronized (waiter) {
+            if (!waiter.granted) {
+                waiter.previousMessage = task.getMessage();
+                waiter.messageShown = true;
+                task.setMessage((message != null) ? message : "waiting for " + resource);
+            }
+        }
+        return false;
+    }
+
+    /* Called when the task is done.  Returns its permits, or stops it from
+     * waiting for them.
+     */
+    void release(Task<?, ?> task) {
+        synchronized (this) {
+            if (holders.remove(task) != null) {
+                for (String resource : task.getRequiredResources()) {
+                    permitsOf(resource)[1]--;
+                }
+            } else {
+                // the resources it had reserved may be free now
+                for (Iterator<Waiter> i = waiters.iterator(); i.hasNext();) {
+                    if (i.next().task == task) {
+                        i.remove();
+                    }
+                }
+            }
+        }
+        grantWaiters();
+    }
+
+    /* Called by TaskService.shutdownNow.  Returns true if the task was
+     * waiting for permits, it'll never get them.
+     */
+    synchronized boolean removeWaiter(Task<?, ?> task) {
+        for (Iterator<Waiter> i = waiters.iterator(); i.hasNext();) {
+            if (i.next().task == task) {
+                i.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Gives permits to the waiting Tasks, in FIFO order.  A waiter's
+     * resources are reserved for it, so later waiters that need one of
+     * them can't overtake it.
+     */
+    private void grantWaiters() {
+        List<Waiter> granted = new ArrayList<Waiter>();
+        synchronized (this) {
+            Set<String> reserved = new HashSet<String>();
+            for (Iterator<Waiter> i = waiters.iterator(); i.hasNext();) {
+                Waiter waiter = i.next();
+                if (waiter.task.isDone()) {
+                    i.remove();
+                } else if (unavailable(waiter.task.getRequiredResources(), reserved) == null) {
+                    i.remove();
+                    take(waiter.task);
+                    granted.add(waiter);
+                } else {
+                    reserved.addAll(waiter.task.getRequiredResources());
+                }
+            }
+        }
+        for (Waiter waiter : granted) {
+            synchronized (waiter) {
+                waiter.granted = true;
+                if (waiter.messageShown) {
+                    waiter.task.setMessage(waiter.previousMessage);
+                }
+            }
+            waiter.onAcquire.run();
+        }
+    }
+}
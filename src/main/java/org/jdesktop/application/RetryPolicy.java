@@ -0,0 +1,167 @@
+package org.jdesktop.application;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Specifies how often, and how long after each failure, a {@link
+ * RetryingTask} repeats its attempt.  The delay after the first failed
+ * attempt is {@code initialDelay}, after each further failure it's
+ * multiplied by {@code multiplier}, up to {@code maxDelay}.  With a
+ * {@code jitter} of, for example, 0.25 each delay is shortened by a random
+ * amount of up to 25%, so that Tasks that failed at the same time don't
+ * retry at the same time.
+ * <p>
+ * By default every {@code Exception} except an {@code InterruptedException}
+ * is retryable.  Subclasses can override {@link #isRetryable isRetryable}
+ * to only retry transient failures:
+ * <pre>
+ * RetryPolicy policy = new RetryPolicy(5, 500, TimeUnit.MILLISECONDS) {
+ *     &#064;Override public boolean isRetryable(Throwable cause) {
+ *         return cause instanceof IOException;
+ *     }
+ * };
+ * </pre>
+ * RetryPolicies are immutable and can be shared by any number of Tasks.
+ *
+ * @see RetryingTask
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialDelay;
+    private final long maxDelay;
+    private final double multiplier;
+    private final double jitter;
+
+    /**
+     * Creates a RetryPolicy.
+     *
+     * @param maxAttempts the maximum number of attempts, including the first one
+     * @param initialDelay the delay after the first failed attempt
+     * @param maxDelay the maximum delay between attempts
+     * @param unit the time unit of {@code initialDelay} and {@code maxDelay}
+     * @param multiplier the factor by which the delay grows after each failure, at least 1
+     * @param jitter the fraction of each delay that's randomized, between 0 and 1
+     */
+    public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay, TimeUnit unit, double multiplier, double jitter) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1");
+        }
+        if ((initialDelay < 0L) || (maxDelay < initialDelay)) {
+            throw new IllegalArgumentException("invalid delays");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("null unit");
+        }
+        if (!(multiplier >= 1.0) || Double.isInfinite(multiplier)) {
+            throw new IllegalArgumentException("multiplier < 1");
+        }
+        if (!((jitter >= 0.0) && (jitter <= 1.0))) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = unit.toMillis(initialDelay);
+        this.maxDelay = unit.toMillis(maxDelay);
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Creates a RetryPolicy whose delay doubles after each failure, up
+     * to one minute, with a jitter of 0.25.
+     *
+     * @param maxAttempts the maximum number of attempts, including the first one
+     * @param initialDelay the delay after the first failed attempt
+     * @param unit the time unit of {@code initialDelay}
+     */
+    public RetryPolicy(int maxAttempts, long initialDelay, TimeUnit unit) {
+        this(maxAttempts, initialDelay, Math.max(initialDelay, unit.convert(1L, TimeUnit.MINUTES)), unit, 2.0, 0.25);
+    }
+
+    /**
+     * Returns the maximum number of attempts, including the first one.
+     *
+     * @return the maximum number of attempts
+     */
+    public final int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns the delay after the first failed attempt.
+     *
+     * @param unit the time unit of the return value
+     * @return the initial delay
+     */
+    public final long getInitialDelay(TimeUnit unit) {
+        return unit.convert(initialDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the maximum delay between two attempts.
+     *
+     * @param unit the time unit of the return value
+     * @return the maximum delay
+     */
+    public final long getMaxDelay(TimeUnit unit) {
+        return unit.convert(maxDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the factor by which the delay grows after each failure.
+     *
+     * @return the delay multiplier
+     */
+    public final double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Returns the fraction of each delay that's randomized.
+     *
+     * @return the jitter, between 0 and 1
+     */
+    public final double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Returns true if an attempt that failed with {@code cause} may be
+     * repeated.  By default all Exceptions are retryable except for an
+     * {@code InterruptedException} or a {@code CancellationException},
+     * Errors are never retryable.
+     *
+     * @param cause the Throwable thrown by the failed attempt
+     * @return true if the attempt may be repeated
+     */
+    public boolean isRetryable(Throwable cause) {
+        return (cause instanceof Exception)
+                && !(cause instanceof InterruptedException)
+                && !(cause instanceof CancellationException);
+    }
+
+    /**
+     * Returns how long to wait after the specified attempt has failed,
+     * jitter included.
+     *
+     * @param attempt the number of the attempt that failed, starting with 1
+     * @param unit the time unit of the return value
+     * @return the delay before the next attempt
+     */
+    public long getDelay(int attempt, TimeUnit unit) {
+        if (attempt < 1) {
+            throw new IllegalArgumentException("attempt < 1");
+        }
+        double delay = initialDelay * Math.pow(multiplier, attempt - 1);
+        delay = Math.min(delay, maxDelay);
+        delay -= delay * jitter * Math.random();
+        return unit.convert((long) delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[maxAttempts=%d, initialDelay=%dms, maxDelay=%dms, multiplier=%s, jitter=%s]",
+                getClass().getName(), maxAttempts, initialDelay, maxDelay, multiplier, jitter);
+    }
+}
@@ -0,0 +1,376 @@
+package org.jdesktop.application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+/**
+ * A {@code Task} that repeats its work, with increasing delays, when it
+ * fails with a transient exception.  Subclasses implement {@link #attempt
+ * attempt} instead of {@code doInBackground}:
+ * <pre>
+ * class FetchQuote extends RetryingTask&lt;Quote, Void&gt; {
+ *     FetchQuote(Application app) {
+ *         super(app, new RetryPolicy(5, 500, TimeUnit.MILLISECONDS));
+ *     }
+ *     &#064;Override protected Quote attempt() throws IOException {
+ *         return gateway.fetchQuote();
+ *     }
+ * }
+ * </pre>
+ * When an attempt fails with an exception that the {@link RetryPolicy}
+ * considers {@link RetryPolicy#isRetryable retryable}, and the maximum
+ * number of attempts hasn't been reached, the attempt is repeated after
+ * the policy's delay.  Otherwise the Task fails with the attempt's
+ * exception, or succeeds with its result, as usual.
+ * <p>
+ * When the Task is executed by a {@link TaskService}, it doesn't hold a
+ * thread between attempts: each attempt runs on the TaskService's executor
+ * and the next one is scheduled after the delay.  Because a SwingWorker can
+ * only run once, the Task's own state stays {@code PENDING} until the last
+ * attempt is over.  It counts as {@link Task#isStarted started} from the
+ * first attempt on though, the "started" event is fired and the
+ * TaskListeners' {@code doInBackground} method is called when that attempt
+ * begins.  The {@code attempt} property and the {@link
+ * TaskListener.RetryListener#retrying retrying} method of the TaskListeners
+ * that implement {@code TaskListener.RetryListener} report progress in the
+ * meantime, and the {@code message} property is set to the {@code
+ * retryMessage} resource, see below.  If the Task is run some other way,
+ * e.g. as a {@link TaskGraph} node, the attempts run on the calling thread,
+ * which sleeps between them.
+ * <p>
+ * After a failed attempt the message is set to the Task's {@code
+ * retryMessage} resource, or the {@code RetryingTask.retryMessage}
+ * resource if there isn't one.  The format arguments are the number of the
+ * failed attempt, the maximum number of attempts and the delay in seconds.
+ * <p>
+ * Cancelling the Task stops the retries and interrupts the attempt that's
+ * running, if any.
+ *
+ * @param <T> the result type returned by {@code attempt}
+ * @param <V> the type used for carrying out intermediate results
+ * @see RetryPolicy
+ */
+public abstract class RetryingTask<T, V> extends Task<T, V> {
+
+    public static final String PROP_ATTEMPT = "attempt";
+    public static final String PROP_RETRYPOLICY = "retryPolicy";
+
+    private RetryPolicy retryPolicy;
+    private int attempt = 0;
+    private Throwable lastFailure = null;
+    private Thread attemptThread = null;
+    private boolean outcomeReady = false;
+    private T result = null;
+    private Throwable failure = null;
+
+    /**
+     * Construct a {@code RetryingTask}.
+     *
+     * @param application the Application this Task belongs to
+     * @param retryPolicy specifies when attempts are repeated, or null for a single attempt
+     */
+    public RetryingTask(Application application, RetryPolicy retryPolicy) {
+        super(application);
+        this.retryPolicy = retryPolicy;
+        addPropertyChangeListener(new CancelPCL());
+    }
+
+    /**
+     * Construct a {@code RetryingTask} without a RetryPolicy.  Set one
+     * with {@link #setRetryPolicy setRetryPolicy} before executing it.
+     *
+     * @param application the Application this Task belongs to
+     */
+    public RetryingTask(Application application) {
+        this(application, null);
+    }
+
+    /**
+     * Does the work of one attempt.  This method may be called several
+     * times, so it shouldn't leave side effects behind when it fails.
+     * Like {@code doInBackground} it runs on a background thread.
+     *
+     * @return the result of this Task
+     * @throws Exception if the attempt fails
+     */
+    protected abstract T attempt() throws Exception;
+
+    /**
+     * Returns the value of the {@code retryPolicy} property.
+     *
+     * @return the policy that specifies when attempts are repeated, or null
+     * @see #setRetryPolicy
+     */
+    public final synchronized RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the {@code retryPolicy} property.  If it's null, the Task
+     * makes a single attempt.  This property may only be set before the
+     * Task is submitted to a TaskService for execution.
+     * <p>
+     * This is a bound property.
+     *
+     * @param retryPolicy the policy that specifies when attempts are repeated, or null
+     * @throws IllegalStateException if the Task is already being executed
+     * @see #getRetryPolicy
+     */
+    public final void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (getTaskService() != null) {
+            throw new IllegalStateException("task already being executed");
+        }
+        RetryPolicy oldValue, newValue;
+        synchronized (this) {
+            oldValue = this.retryPolicy;
+            this.retryPolicy = retryPolicy;
+            newValue = this.retryPolicy;
+        }
+        firePropertyChange(PROP_RETRYPOLICY, oldValue, newValue);
+    }
+
+    /**
+     * Returns the number of the current, or last, attempt.  It's 0 before
+     * the first attempt starts.
+     * <p>
+     * This is a bound property.
+     *
+     * @return the number of the current attempt, starting with 1
+     */
+    public final synchronized int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Returns the Throwable thrown by the most recent failed attempt.
+     *
+     * @return the cause of the last failure, or null
+     */
+    public final synchronized Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Returns the outcome of the attempts.  This method can't be
+     * overridden, subclasses implement {@link #attempt attempt} instead.
+     *
+     * @return the result of the successful attempt
+     * @throws Exception the cause of the last failed attempt
+     */
+    @Override
+    protected final T doInBackground() throws Exception {
+        synchronized (this) {
+            if (outcomeReady) {
+                if (failure instanceof Exception) {
+                    throw (Exception) failure;
+                } else if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                return result;
+            }
+        }
+        // Not run by a TaskService, e.g. a TaskGraph node: retry on this thread
+        while (true) {
+            try {
+                return runAttempt();
+            } catch (Exception e) {
+                long delay = prepareRetry(e);
+                if (delay < 0L) {
+                    throw e;
+                }
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    private T runAttempt() throws Exception {
+        int oldValue, newValue;
+        synchronized (this) {
+            oldValue = attempt;
+            newValue = ++attempt;
+            attemptThread = Thread.currentThread();
+        }
+        firePropertyChange(PROP_ATTEMPT, oldValue, newValue);
+        try {
+            return attempt();
+        } finally {
+            synchronized (this) {
+                attemptThread = null;
+            }
+        }
+    }
+
+    /* Records a failed attempt.  Returns the delay in milliseconds before
+     * the next attempt or -1 if there won't be one.
+     */
+    private long prepareRetry(Throwable cause) {
+        RetryPolicy policy;
+        int failedAttempt;
+        synchronized (this) {
+            lastFailure = cause;
+            policy = retryPolicy;
+            failedAttempt = attempt;
+        }
+        if (isCancelled() || (policy == null) || (failedAttempt >= policy.getMaxAttempts()) || !policy.isRetryable(cause)) {
+            return -1L;
+        }
+        long delay = policy.getDelay(failedAttempt, TimeUnit.MILLISECONDS);
+        retryMessage(failedAttempt, policy.getMaxAttempts(), delay);
+        fireRetryingListeners(failedAttempt + 1);
+        return delay;
+    }
+
+    private void retryMessage(int failedAttempt, int maxAttempts, long delay) {
+        ResourceMap resourceMap = getResourceMap();
+        if (resourceMap != null) {
+            long seconds = TimeUnit.MILLISECONDS.toSeconds(delay);
+            String msg = resourceMap.getString(resourceName("retryMessage"), failedAttempt, maxAttempts, seconds);
+            if (msg == null) {
+                msg = resourceMap.getString("RetryingTask.retryMessage", failedAttempt, maxAttempts, seconds);
+            }
+            if (msg != null) {
+                setMessage(msg);
+            }
+        }
+    }
+
+    private void fireRetryingListeners(final int nextAttempt) {
+        Runnable doFire = new Runnable() {
+
+            @Override
+            public void run() {
+                TaskEvent<Integer> event = new TaskEvent<Integer>(RetryingTask.this, nextAttempt);
+                for (TaskListener<T, V> listener : getTaskListeners()) {
+                    if (listener instanceof TaskListener.RetryListener) {
+                        ((TaskListener.RetryListener) listener).retrying(event);
+                    }
+                }
+            }
+        };
+        SwingUtilities.invokeLater(doFire);
+    }
+
+    /* Called by the TaskService instead of executing the Task itself. */
+    void executeAttempts(Executor executor, ScheduledExecutorService scheduler) {
+        executor.execute(new Attempt(executor, scheduler));
+    }
+
+    /* Runs one attempt on the TaskService's executor and either schedules
+     * the next one or completes the Task, on the same thread, with the outcome.
+     */
+    /* Called by Task.completeWith when this Task has been attached to an
+     * identical one: the next run of the SwingWorker completes it with
+     * source's outcome, no attempt is made.
+     */
+    @Override
+    boolean adoptOutcome(Future<? extends T> source) {
+        T value = null;
+        Throwable cause = null;
+        try {
+            value = source.get();
+        } catch (ExecutionException e) {
+            cause = e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        synchronized (this) {
+            result = value;
+            failure = cause;
+            outcomeReady = true;
+        }
+        return true;
+    }
+
+    final class Attempt implements Runnable {
+
+        private final Executor executor;
+        private final ScheduledExecutorService scheduler;
+
+        Attempt(Executor executor, ScheduledExecutorService scheduler) {
+            this.executor = executor;
+            this.scheduler = scheduler;
+        }
+
+        Task<T, V> getTask() {
+            return RetryingTask.this;
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                return;
+            }
+            if (getAttempt() == 0) {
+                attemptsStarted();
+            }
+            T value = null;
+            Throwable cause = null;
+            try {
+                value = runAttempt();
+            } catch (Throwable e) {
+                cause = e;
+            }
+            // An interrupt aimed at the attempt mustn't affect what follows
+            Thread.interrupted();
+            if (cause != null) {
+                long delay = prepareRetry(cause);
+                if (delay >= 0L) {
+                    Runnable doRetry = new Runnable() {
+
+                        @Override
+                        public void run() {
+                            if (!isDone()) {
+                                try {
+                                    executor.execute(Attempt.this);
+                                } catch (RejectedExecutionException e) {
+                                    cancel(false);
+                                }
+                            }
+                        }
+                    };
+                    try {
+                        scheduler.schedule(doRetry, delay, TimeUnit.MILLISECONDS);
+                        return;
+                    } catch (RejectedExecutionException e) {
+                        // The TaskService has been shut down, fail with the last cause
+                    }
+                }
+            }
+            synchronized (RetryingTask.this) {
+                result = value;
+                failure = cause;
+                outcomeReady = true;
+            }
+            RetryingTask.this.run();
+        }
+    }
+
+    /* Interrupts the running attempt when the Task is cancelled.  The
+     * attempts run outside of the SwingWorker, so cancel(true) doesn't
+     * reach them.  This listener runs on the EDT.
+     */
+    private class CancelPCL implements PropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            if (PROP_DONE.equals(e.getPropertyName())) {
+                removePropertyChangeListener(this);
+                if (isCancelled()) {
+                    synchronized (RetryingTask.this) {
+                        if (attemptThread != null) {
+                            attemptThread.interrupt();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.jdesktop.application;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * An Executor that runs its commands one at a time, in the order in which
+ * they were submitted, on another Executor.  It never occupies a thread of
+ * the underlying Executor while it has nothing to do.
+ */
+final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+    private boolean draining = false;
+
+    SerialExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("null executor");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        synchronized (this) {
+            queue.addLast(command);
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        try {
+            executor.execute(new Drain());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                queue.removeLast();
+                draining = false;
+            }
+            throw e;
+        }
+    }
+
+    synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /* Removes the commands that haven't started yet and returns them. */
+    synchronized List<Runnable> drainQueue() {
+        List<Runnable> commands = new ArrayList<Runnable>(queue);
+        queue.clear();
+        return commands;
+    }
+
+    /* Runs the queued commands until the queue is empty.  Only one Drain
+     * exists at a time.
+     */
+    private class Drain implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable command;
+                synchronized (SerialExecutor.this) {
+                    command = queue.poll();
+                    if (command == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    // Keep the queue moving, the next Drain takes over
+                    continueLater();
+                    throw e;
+                } catch (Error e) {
+                    continueLater();
+                    throw e;
+                }
+            }
+        }
+
+        private void continueLater() {
+            synchronized (SerialExecutor.this) {
+                if (queue.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+            }
+            try {
+                executor.execute(new Drain());
+            } catch (RuntimeException e) {
+                synchronized (SerialExecutor.this) {
+                    queue.clear();
+                    draining = false;
+                }
+            }
+        }
+    }
+}
@@ -189,6 +189,7 @@ public abstract class SingleFrameApplication extends Application {
         } else if (root instanceof Window) { // close == save session state
             Window window = (Window) root;
             window.addHierarchyListener(new SecondaryWindowListener());
+            window.addWindowListener(new SecondaryWindowTaskListener());
         }
         // If this is a JFrame monitor "normal" (not maximized) bounds
         if (root instanceof JFrame) {
@@ -397,6 +398,43 @@ public abstract class SingleFrameApplication extends Application {
         }
     }
 
+    /* Closing a secondary window cancels the Tasks that were started
+     * from it, see ApplicationContext#getTaskGroup.  If the window
+     * doesn't close itself when the user asks it to, only disposing
+     * the window cancels them.
+     */
+    private static class SecondaryWindowTaskListener extends WindowAdapter {
+
+        private void cancelTaskGroup(Window window) {
+            if (window instanceof RootPaneContainer) {
+                JRootPane rootPane = ((RootPaneContainer) window).getRootPane();
+                TaskGroup group = (TaskGroup) rootPane.getClientProperty(TaskGroup.class);
+                if (group != null) {
+                    group.cancel();
+                }
+            }
+        }
+
+        @Override
+        public void windowClosing(WindowEvent e) {
+            Window window = e.getWindow();
+            int closeOperation = WindowConstants.HIDE_ON_CLOSE;
+            if (window instanceof JFrame) {
+                closeOperation = ((JFrame) window).getDefaultCloseOperation();
+            } else if (window instanceof JDialog) {
+                closeOperation = ((JDialog) window).getDefaultCloseOperation();
+            }
+            if (closeOperation != WindowConstants.DO_NOTHING_ON_CLOSE) {
+                cancelTaskGroup(window);
+            }
+        }
+
+        @Override
+        public void windowClosed(WindowEvent e) {
+            cancelTaskGroup(e.getWindow());
+        }
+    }
+
     /* In order to properly restore a maximized JFrame, we need to 
      * record it's normal (not maximized) bounds.  They're recorded
      * under a rootPane client property here, so that they've can be 
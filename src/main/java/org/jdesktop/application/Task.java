@@ -7,12 +7,23 @@ package org.jdesktop.application;
 import java.awt.Component;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.SwingUtilities;
@@ -129,13 +140,37 @@ import javax.swing.SwingWorker;
 public abstract class Task<T, V> extends SwingWorker<T, V> {
 
     private static final Logger logger = Logger.getLogger(Task.class.getName());
-
+    /*
+     * The descriptive properties are polled by the EDT while the background
+     * thread sets them, so they're volatile rather than guarded by the Task's
+     * monitor.  The setters swap the value atomically, so each event's old
+     * value is the previous event's new value, even if several threads set
+     * the same property.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Task, String> titleUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, String.class, "title");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Task, String> descriptionUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, String.class, "description");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Task, MessageState> messageUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, MessageState.class, "messageState");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Task> workUnitsUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(Task.class, "workUnits");
+
+    public static final String PROP_DEDUPLICATIONKEY = "deduplicationKey";
+    public static final String PROP_ORDERINGKEY = "orderingKey";
+    public static final String PROP_REQUIREDRESOURCES = "requiredResources";
     public static final String PROP_DESCRIPTION = "description";
     public static final String PROP_INPUTBLOCKER = "inputBlocker";
     public static final String PROP_MESSAGE = "message";
     public static final String PROP_TASKSERVICE = "taskService";
+    public static final String PROP_TIMEOUT = "timeout";
     public static final String PROP_TITLE = "title";
     public static final String PROP_USERCANCANCEL = "userCanCancel";
+    public static final String PROP_WORKUNITS = "workUnits";
     public static final String PROP_COMPLETED = "completed";
     public static final String PROP_DONE = "done";
     public static final String PROP_STARTED = "started";
@@ -144,17 +179,35 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
     private String resourcePrefix;
     private ResourceMap resourceMap;
     private List<TaskListener<T, V>> taskListeners;
+    private List<Subscription> subscriptions;
     private InputBlocker inputBlocker;
-    private String title = null;
-    private String description = null;
-    private long messageTime = -1L;
-    private String message = null;
-    private long startTime = -1L;
-    private long doneTime = -1L;
-    private boolean userCanCancel = true;
-    private boolean progressPropertyIsValid = false;
+    private volatile String title = null;
+    private volatile String description = null;
+    private volatile MessageState messageState = MessageState.NONE;
+    private volatile long startTime = -1L;
+    private volatile long doneTime = -1L;
+    private final AtomicBoolean userCanCancel = new AtomicBoolean(true);
+    private volatile int workUnits = 1;
+    private TaskGroup taskGroup = null;
+    private volatile boolean progressPropertyIsValid = false;
+    private ProgressScope progressScope = null;  // guarded by this
     private TaskService taskService = null;
+    private volatile TaskContext taskContext = null;
     private Map<Object, Object> properties = null;
+    private Object deduplicationKey = null;
+    private Object orderingKey = null;
+    private List<String> requiredResources = Collections.emptyList();
+    private volatile Future<? extends T> resultSource = null;
+    private volatile boolean attached = false;
+    private volatile long attachTime = 0L;
+    private Object supersedingKey = null;
+    private volatile boolean superseded = false;
+    private long timeout = 0L;
+    private long deadline = -1L;
+    private long appliedTimeout = 0L;
+    private Future<?> deadlineTimer = null;
+    private volatile boolean timedOut = false;
+    private boolean completionListenersFired = false; // only accessed on the EDT
 
     /**
      * Specifies to what extent the GUI should be blocked a Task 
@@ -204,13 +257,14 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
         if (resourceMap != null) {
             title = resourceMap.getString(resourceName(PROP_TITLE));
             description = resourceMap.getString(resourceName(PROP_DESCRIPTION));
-            message = resourceMap.getString(resourceName(PROP_MESSAGE));
+            String message = resourceMap.getString(resourceName(PROP_MESSAGE));
             if (message != null) {
-                messageTime = System.currentTimeMillis();
+                messageState = new MessageState(message, System.currentTimeMillis());
             }
         }
         addPropertyChangeListener(new StatePCL());
         taskListeners = new CopyOnWriteArrayList<TaskListener<T, V>>();
+        subscriptions = new CopyOnWriteArrayList<Subscription>();
     }
 
     private ResourceMap defaultResourceMap(Application application) {
@@ -333,6 +387,32 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
         firePropertyChange(PROP_TASKSERVICE, oldTaskService, newTaskService);
     }
 
+    /**
+     * Returns the name of the {@link ApplicationAction} on whose behalf
+     * this Task was executed, or null.  That's the action whose
+     * &#064;Action method returned or executed this Task, or the action
+     * of the Task whose {@code doInBackground} method or EDT callbacks
+     * executed this Task.  This property is set when a task is executed
+     * by a TaskService.
+     *
+     * @return the name of the action that caused this Task to be executed, or null
+     * @see ApplicationAction#getName
+     * @see TaskContextPropagator
+     */
+    public String getActionName() {
+        TaskContext context = taskContext;
+        return (context != null) ? context.getActionName() : null;
+    }
+
+    /* Set by the TaskService when this Task is executed. */
+    void setTaskContext(TaskContext taskContext) {
+        this.taskContext = taskContext;
+    }
+
+    TaskContext getTaskContext() {
+        return taskContext;
+    }
+
     /**
      * Returns a Task resource name with the specified suffix.  Task resource
      * names are the simple name of the constructor's {@code resourceClass} 
@@ -379,7 +459,7 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #setDescription
      * @see #setMessage
      */
-    public synchronized String getTitle() {
+    public String getTitle() {
         return title;
     }
 
@@ -402,13 +482,8 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #setMessage
      */
     protected void setTitle(String title) {
-        String oldTitle, newTitle;
-        synchronized (this) {
-            oldTitle = this.title;
-            this.title = title;
-            newTitle = this.title;
-        }
-        firePropertyChange(PROP_TITLE, oldTitle, newTitle);
+        String oldTitle = titleUpdater.getAndSet(this, title);
+        firePropertyChange(PROP_TITLE, oldTitle, title);
     }
 
     /**
@@ -425,7 +500,7 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #setTitle
      * @see #setMessage
      */
-    public synchronized String getDescription() {
+    public String getDescription() {
         return description;
     }
 
@@ -444,13 +519,8 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #setMessage
      */
     protected void setDescription(String description) {
-        String oldDescription, newDescription;
-        synchronized (this) {
-            oldDescription = this.description;
-            this.description = description;
-            newDescription = this.description;
-        }
-        firePropertyChange(PROP_DESCRIPTION, oldDescription, newDescription);
+        String oldDescription = descriptionUpdater.getAndSet(this, description);
+        firePropertyChange(PROP_DESCRIPTION, oldDescription, description);
     }
 
     /** 
@@ -468,11 +538,9 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #execute
      */
     public long getExecutionDuration(TimeUnit unit) {
-        long startTime, doneTime, dt;
-        synchronized (this) {
-            startTime = this.startTime;
-            doneTime = this.doneTime;
-        }
+        long startTime = this.startTime;
+        long doneTime = this.doneTime;
+        long dt;
         if (startTime == -1L) {
             dt = 0L;
         } else if (doneTime == -1L) {
@@ -483,6 +551,13 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
         return unit.convert(Math.max(0L, dt), TimeUnit.MILLISECONDS);
     }
 
+    /* True once the Task's state has changed to STARTED, i.e. once
+     * the "started" property change has been fired.
+     */
+    boolean hasStarted() {
+        return startTime != -1L;
+    }
+
     /**
      * Return the value of the {@code message} property.  
      * The default value of this property is the value of the 
@@ -496,7 +571,7 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #getMessageDuration
      */
     public String getMessage() {
-        return message;
+        return messageState.message;
     }
 
     /**
@@ -538,14 +613,8 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #message
      */
     protected void setMessage(String message) {
-        String oldMessage, newMessage;
-        synchronized (this) {
-            oldMessage = this.message;
-            this.message = message;
-            newMessage = this.message;
-            messageTime = System.currentTimeMillis();
-        }
-        firePropertyChange(PROP_MESSAGE, oldMessage, newMessage);
+        MessageState oldState = messageUpdater.getAndSet(this, new MessageState(message, System.currentTimeMillis()));
+        firePropertyChange(PROP_MESSAGE, oldState.message, message);
     }
 
     /**
@@ -587,32 +656,50 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #setMessage
      */
     public long getMessageDuration(TimeUnit unit) {
-        long messageTime;
-        synchronized (this) {
-            messageTime = this.messageTime;
-        }
+        long messageTime = messageState.time;
         long dt = (messageTime == -1L) ? 0L : Math.max(0L, System.currentTimeMillis() - messageTime);
         return unit.convert(dt, TimeUnit.MILLISECONDS);
     }
 
-    Object getProperty(Object key) {
+    /* The message property and the time it was set, swapped as one value
+     * so that getMessageDuration always matches getMessage.
+     */
+    private static final class MessageState {
+
+        static final MessageState NONE = new MessageState(null, -1L);
+        final String message;
+        final long time;
+
+        MessageState(String message, long time) {
+            this.message = message;
+            this.time = time;
+        }
+    }
+
+    synchronized Object getProperty(Object key) {
         return properties == null ? null : properties.get(key);
     }
     
-    void removeProperty(Object key) {
+    synchronized void removeProperty(Object key) {
         if (properties != null && properties.remove(key) != null && properties.isEmpty()) {
             properties = null;
         }
     }
     
-    void setProperty(Object key, Object value) {
-        if (value != null) {
+    /* Sets the property unless it already has a value, and returns the
+     * previous value.  Journals on different threads share a Task's
+     * properties, that's why these methods are synchronized.
+     */
+    synchronized Object putPropertyIfAbsent(Object key, Object value) {
+        Object previous = getProperty(key);
+        if ((previous == null) && (value != null)) {
             if (properties == null) {
                 properties = new HashMap<Object, Object>();
             }
             
             properties.put(key, value);
         }
+        return previous;
     }
     
     /**
@@ -626,8 +713,8 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @return true if the user can cancel this Task.
      * @see #setUserCanCancel
      */
-    public synchronized boolean getUserCanCancel() {
-        return userCanCancel;
+    public boolean getUserCanCancel() {
+        return userCanCancel.get();
     }
 
     /**
@@ -648,13 +735,475 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @see #getUserCanCancel
      */
     protected void setUserCanCancel(boolean userCanCancel) {
-        boolean oldValue, newValue;
+        boolean oldValue = this.userCanCancel.getAndSet(userCanCancel);
+        firePropertyChange(PROP_USERCANCANCEL, oldValue, userCanCancel);
+    }
+
+    /**
+     * Returns the value of the {@code workUnits} property.
+     * The default value of this property is 1.
+     *
+     * @return the relative amount of work this Task does
+     * @see #setWorkUnits
+     */
+    public int getWorkUnits() {
+        return workUnits;
+    }
+
+    /**
+     * Sets the {@code workUnits} property, the amount of work this Task
+     * does relative to other Tasks.  A Task that copies a 400 MB file
+     * might declare 400 work units, one that copies a 4 MB file 4.
+     * <p>
+     * Like {@code userCanCancel}, this property is advice for GUI
+     * components: a {@link TaskMonitor} whose {@link
+     * TaskMonitor#setProgressWeighted progressWeighted} property is true
+     * weights each Task's progress by its work units when it computes the
+     * {@link TaskMonitor#getAggregateProgress aggregate progress}.
+     * <p>
+     * This is a bound property.
+     *
+     * @param workUnits the relative amount of work this Task does, at least 1
+     * @see #getWorkUnits
+     */
+    public void setWorkUnits(int workUnits) {
+        if (workUnits < 1) {
+            throw new IllegalArgumentException("workUnits < 1");
+        }
+        int oldValue = workUnitsUpdater.getAndSet(this, workUnits);
+        firePropertyChange(PROP_WORKUNITS, oldValue, workUnits);
+    }
+
+    /**
+     * Returns the {@link TaskGroup} this Task belongs to.  A Task leaves
+     * its group when it's done.
+     *
+     * @return this Task's group, or null
+     * @see TaskGroup#add
+     */
+    public synchronized TaskGroup getTaskGroup() {
+        return taskGroup;
+    }
+
+    synchronized void setTaskGroup(TaskGroup taskGroup) {
+        this.taskGroup = taskGroup;
+    }
+
+    /**
+     * Returns the value of the {@code deduplicationKey} property.
+     * The default value of this property is null.
+     *
+     * @return the key that identifies the work done by this Task, or null
+     * @see #setDeduplicationKey
+     */
+    public synchronized Object getDeduplicationKey() {
+        return deduplicationKey;
+    }
+
+    /**
+     * Sets the {@code deduplicationKey} property.
+     * The default value of this property is null.
+     * <p>
+     * Tasks of the same class with equal deduplication keys are assumed
+     * to compute the same result.  If such a Task is {@link TaskService#execute
+     * executed} while an identical one is still running, the TaskService
+     * attaches the new Task to the running one instead of starting it.
+     * The attached Task never does its own work, when the running Task is
+     * done, the attached Task's completion methods and TaskListeners are
+     * called, on the EDT, with the running Task's outcome.  If the TaskService has a {@link TaskService#setResultCache
+     * result cache} the same happens for Tasks whose identical predecessor
+     * has recently succeeded.
+     * <p>
+     * The attached Task is on the TaskService's {@link TaskService#getTasks
+     * tasks} list until it's done, so a {@link TaskMonitor} shows it, and
+     * the {@link TaskHistory} records it with the shared outcome.
+     * <p>
+     * A SwingWorker can only complete by running its own {@code
+     * doInBackground} method.  A {@link RetryingTask}'s {@code
+     * doInBackground} method can return the shared outcome, so an attached
+     * RetryingTask is run and succeeds or fails like the Task it was
+     * attached to.  Any other attached Task is completed by cancelling it:
+     * its own {@code isCancelled} method returns true and its {@code get}
+     * method throws a {@code CancellationException}.  The completion
+     * methods, TaskListeners, {@link #whenCompleted whenCompleted}
+     * callbacks and the Future returned by {@link TaskService#submit
+     * TaskService.submit} report the shared outcome either way.
+     * <p>
+     * This property may only be set before the Task is
+     * {@link TaskService#execute submitted} to a TaskService for
+     * execution.  If it's called afterwards, an IllegalStateException
+     * is thrown.
+     * <p>
+     * This is a bound property.
+     *
+     * @param deduplicationKey the key that identifies the work done by this Task, or null
+     * @see #getDeduplicationKey
+     * @see TaskService#setResultCache
+     */
+    public final void setDeduplicationKey(Object deduplicationKey) {
+        if (getTaskService() != null) {
+            throw new IllegalStateException("task already being executed");
+        }
+        Object oldValue, newValue;
+        synchronized (this) {
+            oldValue = this.deduplicationKey;
+            this.deduplicationKey = deduplicationKey;
+            newValue = this.deduplicationKey;
+        }
+        firePropertyChange(PROP_DEDUPLICATIONKEY, oldValue, newValue);
+    }
+
+    /**
+     * Returns the value of the {@code orderingKey} property.
+     * The default value of this property is null.
+     *
+     * @return the key of the lane this Task runs in, or null
+     * @see #setOrderingKey
+     */
+    public synchronized Object getOrderingKey() {
+        return orderingKey;
+    }
+
+    /**
+     * Sets the {@code orderingKey} property.
+     * The default value of this property is null.
+     * <p>
+     * A TaskService runs the Tasks with equal ordering keys one at a time,
+     * in the order in which they were handed to its executor, and Tasks
+     * with different keys in parallel.  For example, using the document as
+     * the ordering key guarantees that saving a document doesn't start
+     * before loading it has finished, while other documents are loaded
+     * and saved concurrently.  No thread is reserved for a key, the
+     * Tasks in a lane run on the TaskService's threads like any other
+     * Task.  See {@link TaskService#getLaneDepth}.
+     * <p>
+     * This property may only be set before the Task is
+     * {@link TaskService#execute submitted} to a TaskService for
+     * execution.  If it's called afterwards, an IllegalStateException
+     * is thrown.
+     * <p>
+     * This is a bound property.
+     *
+     * @param orderingKey the key of the lane this Task runs in, or null
+     * @see #getOrderingKey
+     */
+    public final void setOrderingKey(Object orderingKey) {
+        if (getTaskService() != null) {
+            throw new IllegalStateException("task already being executed");
+        }
+        Object oldValue, newValue;
+        synchronized (this) {
+            oldValue = this.orderingKey;
+            this.orderingKey = orderingKey;
+            newValue = this.orderingKey;
+        }
+        firePropertyChange(PROP_ORDERINGKEY, oldValue, newValue);
+    }
+
+    /**
+     * Returns the value of the {@code requiredResources} property.
+     * The default value of this property is an empty list.
+     *
+     * @return the names of the scarce resources this Task uses while it runs
+     * @see #setRequiredResources
+     */
+    public synchronized List<String> getRequiredResources() {
+        return requiredResources;
+    }
+
+    /**
+     * Sets the {@code requiredResources} property.
+     * The default value of this property is an empty list.
+     * <p>
+     * Before a TaskService hands this Task over to its executor, it takes
+     * a permit for each of the named resources from the application's
+     * {@link ResourcePermits}, which are shared by all TaskServices.  If
+     * there are none left, the Task waits without occupying a thread, and
+     * its {@code message} says which resource it's waiting for.  The
+     * permits are returned when the Task is done.
+     * <p>
+     * This property may only be set before the Task is
+     * {@link TaskService#execute submitted} to a TaskService for
+     * execution.  If it's called afterwards, an IllegalStateException
+     * is thrown.
+     * <p>
+     * This is a bound property.
+     *
+     * @param resources the names of the scarce resources this Task uses
+     * @see #getRequiredResources
+     * @see ApplicationContext#getResourcePermits
+     */
+    public final void setRequiredResources(String... resources) {
+        if (resources == null) {
+            throw new IllegalArgumentException("null resources");
+        }
+        if (getTaskService() != null) {
+            throw new IllegalStateException("task already being executed");
+        }
+        LinkedHashSet<String> names = new LinkedHashSet<String>();
+        for (String resource : resources) {
+            if (resource == null) {
+                throw new IllegalArgumentException("null resource");
+            }
+            names.add(resource);
+        }
+        List<String> oldValue, newValue;
+        synchronized (this) {
+            oldValue = this.requiredResources;
+            this.requiredResources = Collections.unmodifiableList(new ArrayList<String>(names));
+            newValue = this.requiredResources;
+        }
+        firePropertyChange(PROP_REQUIREDRESOURCES, oldValue, newValue);
+    }
+
+    /* The key passed to TaskService.execute(task, supersedingKey), or null.
+     */
+    synchronized Object getSupersedingKey() {
+        return supersedingKey;
+    }
+
+    synchronized void setSupersedingKey(Object supersedingKey) {
+        this.supersedingKey = supersedingKey;
+    }
+
+    /* Called by the TaskService when a newer Task with the same superseding
+     * key is executed.  Even if this Task has already computed its result,
+     * the completion methods that haven't run yet will report it as cancelled.
+     */
+    void supersede() {
+        superseded = true;
+        cancel(true);
+    }
+
+    /* Called by the TaskService to complete a Task that has been attached
+     * to an identical one instead of being run.  The completion methods and
+     * TaskListeners will report the outcome of source, which must be done.
+     * A Task that can adopt that outcome is run, so it completes like the
+     * source did, other Tasks are cancelled.
+     */
+    void completeWith(Future<? extends T> source) {
+        if (!isDone()) {
+            resultSource = source;
+            if (!source.isCancelled() && adoptOutcome(source)) {
+                run();
+            } else {
+                cancel(false);
+            }
+        }
+    }
+
+    /* Makes the doInBackground method return the outcome of source, which
+     * is done and wasn't cancelled, instead of doing the work.  Returns
+     * false if this Task can't do that, which is the case unless its
+     * doInBackground method is final, like RetryingTask's.
+     */
+    boolean adoptOutcome(Future<? extends T> source) {
+        return false;
+    }
+
+    /* Called by the TaskService when this Task is attached to an identical
+     * one, before it's completed.
+     */
+    void attach() {
+        attachTime = System.nanoTime();
+        attached = true;
+    }
+
+    /* The System.nanoTime() at which this Task was attached. */
+    long getAttachTime() {
+        return attachTime;
+    }
+
+    /* The Future that TaskService.submit returns for this Task.  Since an
+     * attached Task may be completed by cancelling it, its Future reports
+     * the outcome of the Task it was completed with instead.
+     */
+    Future<T> outcome() {
+        return attached ? new AttachedOutcome() : this;
+    }
+
+    private final class AttachedOutcome implements Future<T> {
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return Task.this.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            Future<? extends T> source = resultSource;
+            return (source != null) ? source.isCancelled() : Task.this.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return Task.this.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            try {
+                Task.this.get();
+            } catch (CancellationException ignore) {
+                // that's how most attached Tasks are completed
+            }
+            return sourceResult();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                Task.this.get(timeout, unit);
+            } catch (CancellationException ignore) {
+                // that's how most attached Tasks are completed
+            }
+            return sourceResult();
+        }
+
+        /* resultSource is set before the attached Task is completed, if
+         * it's null the Task was cancelled for real.
+         */
+        private T sourceResult() throws InterruptedException, ExecutionException {
+            Future<? extends T> source = resultSource;
+            if (source == null) {
+                throw new CancellationException("task was cancelled");
+            }
+            return source.get();
+        }
+    }
+
+    /**
+     * Returns the value of the {@code timeout} property.
+     * The default value of this property is 0, which means that
+     * the TaskService's {@link TaskService#getDefaultTimeout default timeout}
+     * applies.
+     *
+     * @param unit the time unit of the return value
+     * @return the maximum time this Task may take, or 0
+     * @see #setTimeout
+     */
+    public long getTimeout(TimeUnit unit) {
+        long timeout;
+        synchronized (this) {
+            timeout = this.timeout;
+        }
+        return unit.convert(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the {@code timeout} property.
+     * <p>
+     * The timeout bounds the time between the moment this Task is
+     * {@link TaskService#execute executed} and the moment it's done,
+     * including the time spent waiting for a thread.  If the Task isn't
+     * done when its deadline passes, the TaskService cancels it with
+     * {@code cancel(true)}, which interrupts {@code doInBackground}, and
+     * its {@link #timedOut timedOut} completion method is called instead
+     * of {@code cancelled}.  TaskListeners that implement {@link
+     * TaskListener.TimeoutListener} are told by its {@code timedOut} method,
+     * the others by {@code cancelled}, with {@link #isTimedOut isTimedOut}
+     * returning true.
+     * <p>
+     * A timeout of 0 means that the TaskService's {@link
+     * TaskService#setDefaultTimeout default timeout} applies.  This property
+     * may only be set before the Task is submitted to a TaskService for
+     * execution.  If it's called afterwards, an IllegalStateException is thrown.
+     * <p>
+     * This is a bound property, its values are in milliseconds.
+     *
+     * @param timeout the maximum time this Task may take, or 0
+     * @param unit the time unit of {@code timeout}
+     * @see #getTimeout
+     * @see #getRemainingTime
+     * @see Action#timeout
+     */
+    public final void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0L) {
+            throw new IllegalArgumentException("negative timeout");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("null unit");
+        }
+        if (getTaskService() != null) {
+            throw new IllegalStateException("task already being executed");
+        }
+        long oldValue, newValue;
         synchronized (this) {
-            oldValue = this.userCanCancel;
-            this.userCanCancel = userCanCancel;
-            newValue = this.userCanCancel;
+            oldValue = this.timeout;
+            this.timeout = unit.toMillis(timeout);
+            newValue = this.timeout;
+        }
+        firePropertyChange(PROP_TIMEOUT, oldValue, newValue);
+    }
+
+    /**
+     * Returns the time left before this Task's deadline passes.  Returns
+     * -1 if the Task doesn't have a deadline, because it hasn't been
+     * executed yet or no timeout applies to it, and 0 once the deadline
+     * has passed or the Task is done.
+     *
+     * @param unit the time unit of the return value
+     * @return the time left before this Task times out, or -1
+     * @see #setTimeout
+     */
+    public long getRemainingTime(TimeUnit unit) {
+        long deadline;
+        synchronized (this) {
+            deadline = this.deadline;
+        }
+        long doneTime = this.doneTime;
+        if (deadline == -1L) {
+            return -1L;
+        }
+        long dt = (doneTime == -1L) ? deadline - System.currentTimeMillis() : 0L;
+        return unit.convert(Math.max(0L, dt), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns true if this Task was cancelled because its deadline passed.
+     *
+     * @return true if this Task timed out
+     * @see #setTimeout
+     * @see #timedOut
+     */
+    public final boolean isTimedOut() {
+        return timedOut && isCancelled() && !superseded && (resultSource == null);
+    }
+
+    /* Called by the TaskService when this Task is executed with a timeout,
+     * in milliseconds, after a start delay.  The timer calls timeOut() when
+     * the deadline passes.
+     */
+    synchronized void startDeadline(long delay, long timeout, Future<?> timer) {
+        deadline = System.currentTimeMillis() + delay + timeout;
+        appliedTimeout = timeout;
+        deadlineTimer = timer;
+    }
+
+    /* Called by the TaskService when this Task is done, so that
+     * the timer doesn't keep it reachable until the deadline.
+     */
+    void stopDeadline() {
+        Future<?> timer;
+        synchronized (this) {
+            timer = deadlineTimer;
+            deadlineTimer = null;
+        }
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+
+    /* Called by the deadline timer.  If the Task completed in the meantime
+     * the cancel fails and the Task isn't reported as timed out.
+     */
+    void timeOut() {
+        if (!isDone()) {
+            timedOut = true;
+            if (!cancel(true)) {
+                timedOut = false;
+            }
         }
-        firePropertyChange(PROP_USERCANCANCEL, oldValue, newValue);
     }
 
     /**
@@ -673,7 +1222,7 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * @return true if the {@link #setProgress progress} property has been set.
      * @see #setProgress
      */
-    public synchronized boolean isProgressPropertyValid() {
+    public boolean isProgressPropertyValid() {
         return progressPropertyIsValid;
     }
 
@@ -738,7 +1287,193 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
     }
 
     /**
-     * Equivalent to {@code getState() == StateValue.PENDING}.  
+     * Returns the root of this Task's progress scopes, which spans the
+     * whole {@code progress} range, 0 .. 100.
+     * <p>
+     * A Task that runs several steps gives each step a {@link
+     * ProgressScope#open child scope} whose weight is the step's share
+     * of the work.  Each step reports its own progress from 0.0 to 1.0,
+     * and the Task's {@code progress} property is computed from it:
+     * <pre>
+     * protected Void doInBackground() {
+     *     ProgressScope scope = getProgressScope();
+     *     parse(scope.open(0.2f));     // progress 0 .. 20
+     *     validate(scope.open(0.1f));  // progress 20 .. 30
+     *     load(scope.open(0.7f));      // progress 30 .. 100
+     *     scope.close();
+     *     return null;
+     * }
+     * </pre>
+     * A step doesn't need to know its position in the whole, so it can
+     * be reused in other Tasks, and it can divide its own scope among
+     * sub-steps the same way.
+     *
+     * @return the root progress scope
+     * @see ProgressScope
+     */
+    protected final synchronized ProgressScope getProgressScope() {
+        if (progressScope == null) {
+            progressScope = new ProgressScope(this, null, 0.0, 1.0);
+        }
+        return progressScope;
+    }
+
+    /* Sets the progress property to the fraction of the whole Task that's
+     * done, unless that wouldn't change its value.
+     */
+    private void setScopedProgress(double fraction) {
+        int value = (int) Math.round(Math.min(1.0, Math.max(0.0, fraction)) * 100.0);
+        if (value != getProgress()) {
+            setProgress(value);
+        }
+    }
+
+    /**
+     * A part of a Task's work, which reports its progress from 0.0 to
+     * 1.0.  Each scope covers a range of its Task's {@code progress}
+     * property: the root scope, see {@link Task#getProgressScope}, covers
+     * all of it, and a child scope covers a share of its parent's range
+     * given by its weight.  Children are opened one after the other, each
+     * one begins where its parent's progress is.
+     * <p>
+     * Setting the progress of a scope, opening a new child or closing a
+     * scope closes its open child first, which moves the parent's
+     * progress to the end of the child's range.  The {@code progress}
+     * property is only set if its value changes.  Reporting progress
+     * doesn't allocate, opening a child allocates one small object.
+     * <p>
+     * ProgressScopes aren't thread safe, they're meant to be used by the
+     * thread that runs {@code doInBackground}.
+     */
+    public static final class ProgressScope {
+
+        private final Task<?, ?> task;
+        private final ProgressScope parent;
+        private final double start;     // fractions of the whole Task
+        private final double end;
+        private double position;
+        private ProgressScope child = null;
+        private boolean closed = false;
+
+        private ProgressScope(Task<?, ?> task, ProgressScope parent, double start, double end) {
+            this.task = task;
+            this.parent = parent;
+            this.start = start;
+            this.end = end;
+            this.position = start;
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("progress scope is closed");
+            }
+        }
+
+        private void closeChild() {
+            if (child != null) {
+                child.close();
+            }
+        }
+
+        /**
+         * Opens a child scope that covers {@code weight} of this scope's
+         * range, beginning at this scope's current progress.  If that
+         * goes beyond the end of this scope, the child ends where this
+         * scope ends.
+         *
+         * @param weight the child's share of this scope, greater than 0.0 and at most 1.0
+         * @return the new child scope
+         * @throws IllegalStateException if this scope has been closed
+         */
+        public ProgressScope open(float weight) {
+            if (!((weight > 0.0f) && (weight <= 1.0f))) {
+                throw new IllegalArgumentException("invalid weight");
+            }
+            checkOpen();
+            closeChild();
+            child = new ProgressScope(task, this, position, Math.min(end, position + (weight * (end - start))));
+            return child;
+        }
+
+        /**
+         * Sets the progress of this scope, and the Task's {@code progress}
+         * property accordingly.
+         *
+         * @param percentage a value in the range 0.0 ... 1.0 inclusive
+         * @throws IllegalStateException if this scope has been closed
+         */
+        public void setProgress(float percentage) {
+            if ((percentage < 0.0f) || (percentage > 1.0f)) {
+                throw new IllegalArgumentException("invalid percentage");
+            }
+            checkOpen();
+            closeChild();
+            position = start + (percentage * (end - start));
+            task.setScopedProgress(position);
+        }
+
+        /**
+         * A convenience method that sets the progress of this scope to
+         * {@code value / total}, e.g. the number of records that have been
+         * imported out of all of them.
+         *
+         * @param value a value in the range 0 ... total, inclusive
+         * @param total the total amount of work in this scope
+         * @throws IllegalStateException if this scope has been closed
+         */
+        public void setProgress(long value, long total) {
+            if (total <= 0L) {
+                throw new IllegalArgumentException("invalid total");
+            }
+            if ((value < 0L) || (value > total)) {
+                throw new IllegalArgumentException("invalid value");
+            }
+            setProgress((float) ((double) value / (double) total));
+        }
+
+        /**
+         * Returns the progress of this scope.
+         *
+         * @return a value in the range 0.0 ... 1.0 inclusive
+         */
+        public float getProgress() {
+            if (end <= start) {
+                return closed ? 1.0f : 0.0f;
+            }
+            return (float) ((position - start) / (end - start));
+        }
+
+        /**
+         * Returns true if this scope has been closed.
+         *
+         * @return true if this scope's work is complete
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Completes this scope: its progress, and its parent's, move to
+         * the end of its range.  Closing a closed scope has no effect.
+         */
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closeChild();
+            closed = true;
+            position = end;
+            if (parent != null) {
+                parent.child = null;
+                parent.position = end;
+            }
+            task.setScopedProgress(end);
+        }
+    }
+
+    /**
+     * Equivalent to {@code getState() == StateValue.PENDING}, except for a
+     * {@link RetryingTask} whose attempts have begun.
      * <p> 
      * When a pending Task's state changes to {@code StateValue.STARTED} 
      * a PropertyChangeEvent for the "started" property is fired.  Similarly
@@ -746,7 +1481,7 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * "done" PropertyChangeEvent is fired.
      */
     public final boolean isPending() {
-        return getState() == StateValue.PENDING;
+        return (getState() == StateValue.PENDING) && !hasStarted();
     }
 
     /**
@@ -756,10 +1491,41 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      * a PropertyChangeEvent for the "started" property is fired.  Similarly
      * when a started Task's state changes to {@code StateValue.DONE}, a
      * "done" PropertyChangeEvent is fired.
+     * <p>
+     * A {@link RetryingTask} executed by a TaskService only runs itself once
+     * its attempts are over, so its state stays {@code PENDING} until then.
+     * It counts as started, and the "started" event is fired, as soon as
+     * its first attempt begins.
      * @return true if the state is {@code STARTED}
      */
     public final boolean isStarted() {
-        return getState() == StateValue.STARTED;
+        StateValue state = getState();
+        return (state == StateValue.STARTED) || ((state == StateValue.PENDING) && hasStarted());
+    }
+
+    /* Called by a RetryingTask when its first attempt begins, on the thread
+     * that runs it.
+     */
+    void attemptsStarted() {
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                if (!hasStarted() && !isDone()) {
+                    taskStarted();
+                }
+            }
+        });
+    }
+
+    /* This method runs on the EDT, it's called from StatePCL (see below)
+     * or by attemptsStarted.
+     */
+    private void taskStarted() {
+        startTime = System.currentTimeMillis();
+        traceStateChange(PROP_STARTED);
+        firePropertyChange(PROP_STARTED, false, true);
+        fireDoInBackgroundListeners();
     }
 
     /**
@@ -773,7 +1539,22 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
      */
     @Override
     protected void process(List<V> values) {
-        fireProcessListeners(values);
+        EDTWatchdog watchdog = getContext().getEDTWatchdog();
+        String previousActivity = (watchdog != null) ? watchdog.enter(watchdogActivity()) : null;
+        TaskContext context = taskContext;
+        Object[] previousContext = (context != null) ? context.install() : null;
+        long startTime = System.nanoTime();
+        try {
+            fireProcessListeners(values);
+        } finally {
+            traceCallback("process", startTime);
+            if (previousContext != null) {
+                context.uninstall(previousContext);
+            }
+            if (watchdog != null) {
+                watchdog.exit(previousActivity);
+            }
+        }
     }
 
     @Override
@@ -791,6 +1572,19 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
     protected void cancelled() {
     }
 
+    /**
+     * Called instead of {@link #cancelled cancelled} when this Task has
+     * been cancelled because its {@link #setTimeout deadline} passed.
+     * <p>
+     * This method runs on the EDT.  It calls {@code cancelled} by default.
+     *
+     * @see #setTimeout
+     * @see #isTimedOut
+     */
+    protected void timedOut() {
+        cancelled();
+    }
+
     /**
      * Called when this Task has successfully completed, i.e. when 
      * its {@code get} method returns a value.  Tasks that compute
@@ -895,6 +1689,147 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
         return taskListeners.toArray(new TaskListener[taskListeners.size()]);
     }
 
+    /**
+     * Calls {@code callback} with the outcome of this Task once it's
+     * complete, i.e. after its completion methods and TaskListeners have
+     * run.  The callback runs on {@code executor}, or on the EDT if {@code
+     * executor} is null.  If the Task is already complete, the callback is
+     * called right away.
+     * <p>
+     * This is the non-blocking alternative to {@code get()}: code running
+     * on other threads can continue with the Task's result without parking
+     * a thread until it's available.
+     *
+     * @param callback receives the result, or the reason the Task didn't succeed
+     * @param executor runs the callback, or null for the EDT
+     * @see TaskService#submit
+     * @see #subscribe
+     */
+    public void whenCompleted(TaskCallback<? super T> callback, Executor executor) {
+        if (callback == null) {
+            throw new IllegalArgumentException("null callback");
+        }
+        addSubscription(new Subscription(callback, null, executor));
+    }
+
+    /**
+     * Delivers the values this Task {@link #publish publishes}, and then
+     * its outcome, to {@code subscriber}.  The calls are made one at a time,
+     * in order, on {@code executor}, or on the EDT if {@code executor} is
+     * null.  Values published before the subscriber was added aren't
+     * delivered again.
+     * <p>
+     * Published values reach the subscriber through the Task's {@link
+     * #process process} method, so a subclass that overrides {@code process}
+     * must call {@code super.process(values)}.
+     *
+     * @param subscriber receives the published values and the outcome
+     * @param executor runs the subscriber's methods, or null for the EDT
+     * @see #whenCompleted
+     */
+    public void subscribe(TaskSubscriber<? super T, V> subscriber, Executor executor) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("null subscriber");
+        }
+        addSubscription(new Subscription(subscriber, subscriber, executor));
+    }
+
+    /* Subscriptions are added on the EDT, where the completion listeners
+     * are fired, so a Subscription either sees the completion or finds
+     * that it has already happened.  They're kept apart from the
+     * TaskListeners and notified after them.
+     */
+    private void addSubscription(final Subscription subscription) {
+        Runnable doAdd = new Runnable() {
+
+            @Override
+            public void run() {
+                if (completionListenersFired) {
+                    subscription.complete();
+                } else {
+                    subscriptions.add(subscription);
+                }
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            doAdd.run();
+        } else {
+            SwingUtilities.invokeLater(doAdd);
+        }
+    }
+
+    /* Forwards the published chunks and the outcome to a TaskCallback or
+     * TaskSubscriber.  Its methods run on the EDT.
+     */
+    private class Subscription {
+
+        private final TaskCallback<? super T> callback;
+        private final TaskSubscriber<? super T, V> subscriber;
+        private final Executor executor;
+
+        Subscription(TaskCallback<? super T> callback, TaskSubscriber<? super T, V> subscriber, Executor executor) {
+            this.callback = callback;
+            this.subscriber = subscriber;
+            this.executor = (executor != null) ? new SerialExecutor(executor) : null;
+        }
+
+        private void deliver(Runnable delivery) {
+            if (executor == null) {
+                delivery.run();
+            } else {
+                try {
+                    executor.execute(delivery);
+                } catch (RejectedExecutionException e) {
+                    logger.log(Level.WARNING, "callback executor rejected delivery", e);
+                }
+            }
+        }
+
+        void process(final List<V> chunks) {
+            if (subscriber != null) {
+                deliver(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        subscriber.process(chunks);
+                    }
+                });
+            }
+        }
+
+        void complete() {
+            Future<? extends T> outcome = (resultSource != null) ? resultSource : Task.this;
+            T value = null;
+            Throwable failure = null;
+            if (isTimedOut()) {
+                failure = new TimeoutException("task timed out");
+            } else if (outcome.isCancelled() || superseded) {
+                failure = new CancellationException("task was cancelled");
+            } else {
+                try {
+                    value = outcome.get();
+                } catch (InterruptedException e) {
+                    failure = e;
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                }
+            }
+            final T result = value;
+            final Throwable cause = failure;
+            deliver(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (cause == null) {
+                        callback.succeeded(result);
+                    } else {
+                        callback.failed(cause);
+                    }
+                }
+            });
+        }
+    }
+
     /* This method is guaranteed to run on the EDT, it's called
      * from SwingWorker.process().
      */
@@ -903,6 +1838,9 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
         for (TaskListener<T, V> listener : taskListeners) {
             listener.process(event);
         }
+        for (Subscription subscription : subscriptions) {
+            subscription.process(values);
+        }
     }
 
     /* This method runs on the EDT because it's called from
@@ -935,6 +1873,25 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
         }
     }
 
+    /* This method runs on the EDT because it's called from
+     * StatePCL (see below).
+     */
+    private void fireTimedOutListeners() {
+        long timeout;
+        synchronized (this) {
+            timeout = appliedTimeout;
+        }
+        TaskEvent<Long> event = new TaskEvent<Long>(this, timeout);
+        TaskEvent<Void> cancelledEvent = new TaskEvent<Void>(this, null);
+        for (TaskListener<T, V> listener : taskListeners) {
+            if (listener instanceof TaskListener.TimeoutListener) {
+                ((TaskListener.TimeoutListener) listener).timedOut(event);
+            } else {
+                listener.cancelled(cancelledEvent);
+            }
+        }
+    }
+
     /* This method runs on the EDT because it's called from
      * StatePCL (see below).
      */
@@ -968,13 +1925,16 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
     /* This method runs on the EDT because it's called from
      * StatePCL (see below).
      */
-    private void fireCompletionListeners() {
+    private void fireCompletionListeners(Future<? extends T> outcome) {
+        completionListenersFired = true;
         try {
-            if (isCancelled()) {
+            if (isTimedOut()) {
+                fireTimedOutListeners();
+            } else if (outcome.isCancelled() || superseded) {
                 fireCancelledListeners();
             } else {
                 try {
-                    fireSucceededListeners(get());
+                    fireSucceededListeners(outcome.get());
                 } catch (InterruptedException e) {
                     fireInterruptedListeners(e);
                 } catch (ExecutionException e) {
@@ -983,6 +1943,40 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
             }
         } finally {
             fireFinishedListeners();
+            completeSubscriptions();
+        }
+    }
+
+    /* This method runs on the EDT because it's called from
+     * StatePCL (see below).
+     */
+    private void completeSubscriptions() {
+        for (Subscription subscription : subscriptions) {
+            subscriptions.remove(subscription);
+            subscription.complete();
+        }
+    }
+
+    /* What the EDT is doing while it runs this Task's callbacks. */
+    private String watchdogActivity() {
+        return "task " + getClass().getName();
+    }
+
+    /* Adds an event to the application's TaskTracer, if there is one. */
+    private void traceStateChange(String state) {
+        TaskTracer tracer = getContext().getTaskTracer();
+        if (tracer != null) {
+            tracer.taskStateChanged(this, state);
+        }
+    }
+
+    /* Adds the span of an EDT callback that started at startTime, in
+     * nanoseconds, to the application's TaskTracer, if there is one.
+     */
+    private void traceCallback(String callback, long startTime) {
+        TaskTracer tracer = getContext().getTaskTracer();
+        if ((tracer != null) && (callback != null)) {
+            tracer.taskCallback(this, callback, startTime);
         }
     }
 
@@ -995,31 +1989,22 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
                 StateValue state = (StateValue) (e.getNewValue());
                 switch (state) {
                     case STARTED:
-                        taskStarted();
+                        if (!hasStarted()) {
+                            taskStarted();
+                        }
                         break;
                     case DONE:
                         taskDone();
                         break;
                 }
             } else if ("progress".equals(propertyName)) {
-                synchronized (Task.this) {
-                    progressPropertyIsValid = true;
-                }
+                progressPropertyIsValid = true;
             }
         }
 
-        private void taskStarted() {
-            synchronized (Task.this) {
-                startTime = System.currentTimeMillis();
-            }
-            firePropertyChange(PROP_STARTED, false, true);
-            fireDoInBackgroundListeners();
-        }
-
         private void taskDone() {
-            synchronized (Task.this) {
-                doneTime = System.currentTimeMillis();
-            }
+            doneTime = System.currentTimeMillis();
+            traceStateChange(PROP_DONE);
             try {
                 removePropertyChangeListener(this);
                 firePropertyChange(PROP_DONE, false, true);
@@ -1028,23 +2013,47 @@ public abstract class Task<T, V> extends SwingWorker<T, V> {
                 SwingUtilities.invokeLater(new Runnable() {
                     @Override
                     public void run() {
+                        Future<? extends T> outcome = (resultSource != null) ? resultSource : Task.this;
+                        EDTWatchdog watchdog = getContext().getEDTWatchdog();
+                        String previousActivity = (watchdog != null) ? watchdog.enter(watchdogActivity()) : null;
+                        TaskContext context = taskContext;
+                        Object[] previousContext = (context != null) ? context.install() : null;
+                        String callback = null;
+                        long callbackTime = System.nanoTime();
                         try {
-                            if (isCancelled()) {
+                            if (isTimedOut()) {
+                                callback = "timedOut";
+                                timedOut();
+                            } else if (outcome.isCancelled() || superseded) {
+                                callback = "cancelled";
                                 cancelled();
                             } else {
                                 try {
-                                    succeeded(get());
+                                    T result = outcome.get();
+                                    callback = "succeeded";
+                                    succeeded(result);
                                 } catch (InterruptedException e) {
+                                    callback = "interrupted";
                                     interrupted(e);
                                 } catch (ExecutionException e) {
+                                    callback = "failed";
                                     failed(e.getCause());
                                 }
                             }
                         } finally {
+                            traceCallback(callback, callbackTime);
+                            callbackTime = System.nanoTime();
                             finished();
+                            traceCallback("finished", callbackTime);
                             try {
-                                fireCompletionListeners();
+                                fireCompletionListeners(outcome);
                             } finally {
+                                if (previousContext != null) {
+                                    context.uninstall(previousContext);
+                                }
+                                if (watchdog != null) {
+                                    watchdog.exit(previousActivity);
+                                }
                                 firePropertyChange(PROP_COMPLETED, false, true);
                             }
                         }
@@ -0,0 +1,34 @@
+package org.jdesktop.application;
+
+/**
+ * Receives the outcome of a {@code Task} once it's complete, on a thread
+ * of the caller's choosing.  Unlike a {@link TaskListener}, a TaskCallback
+ * lets code that doesn't run on the EDT react to a Task's result without
+ * blocking a thread on {@code get()}.
+ * <p>
+ * Exactly one of the two methods is called, after all of the Task's own
+ * completion methods and TaskListeners have run.
+ *
+ * @param <T> the result type of the Task
+ * @see Task#whenCompleted
+ * @see TaskService#submit
+ */
+public interface TaskCallback<T> {
+
+    /**
+     * Called when the Task has succeeded.
+     *
+     * @param result the value computed by the Task
+     */
+    void succeeded(T result);
+
+    /**
+     * Called when the Task didn't succeed.  The cause is the Throwable
+     * thrown by the Task, a {@code CancellationException} if the Task was
+     * cancelled, a {@code TimeoutException} if it {@link Task#isTimedOut
+     * timed out} or an {@code InterruptedException} if it was interrupted.
+     *
+     * @param cause why the Task didn't succeed
+     */
+    void failed(Throwable cause);
+}
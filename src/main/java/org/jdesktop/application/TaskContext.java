@@ -0,0 +1,94 @@
+package org.jdesktop.application;
+
+import java.util.List;
+
+/**
+ * The context a TaskService captured when a Task was executed: the values
+ * of the service's {@link TaskContextPropagator TaskContextPropagators}
+ * and the name of the ApplicationAction that was being performed.
+ */
+final class TaskContext {
+
+    private static final ThreadLocal<String> currentActionName = new ThreadLocal<String>();
+    private final String actionName;
+    private final TaskContextPropagator<Object>[] propagators;
+    private final Object[] values;
+
+    private TaskContext(String actionName, TaskContextPropagator<Object>[] propagators, Object[] values) {
+        this.actionName = actionName;
+        this.propagators = propagators;
+        this.values = values;
+    }
+
+    /* Called by ApplicationAction around its @Action method and the
+     * execution of the Task it returns.  Returns the name to pass to
+     * exitAction.
+     */
+    static String enterAction(String actionName) {
+        String previous = currentActionName.get();
+        currentActionName.set(actionName);
+        return previous;
+    }
+
+    static void exitAction(String previous) {
+        if (previous == null) {
+            currentActionName.remove();
+        } else {
+            currentActionName.set(previous);
+        }
+    }
+
+    /* Captures the context of the current thread, returns null if there's
+     * nothing to propagate.
+     */
+    static TaskContext capture(List<TaskContextPropagator<?>> propagators) {
+        String actionName = currentActionName.get();
+        if (propagators.isEmpty() && (actionName == null)) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        TaskContextPropagator<Object>[] snapshot = (TaskContextPropagator<Object>[]) propagators.toArray(new TaskContextPropagator<?>[propagators.size()]);
+        Object[] values = new Object[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            values[i] = snapshot[i].capture();
+        }
+        return new TaskContext(actionName, snapshot, values);
+    }
+
+    String getActionName() {
+        return actionName;
+    }
+
+    /* Installs this context on the current thread.  Returns the context
+     * that it replaced, which must be passed to uninstall.
+     */
+    Object[] install() {
+        Object[] previous = new Object[values.length + 1];
+        previous[values.length] = enterAction(actionName);
+        int installed = 0;
+        try {
+            for (; installed < values.length; installed++) {
+                previous[installed] = propagators[installed].install(values[installed]);
+            }
+        } finally {
+            if (installed < values.length) {
+                uninstall(previous, installed);
+            }
+        }
+        return previous;
+    }
+
+    void uninstall(Object[] previous) {
+        uninstall(previous, values.length);
+    }
+
+    private void uninstall(Object[] previous, int installed) {
+        try {
+            for (int i = installed - 1; i >= 0; i--) {
+                propagators[i].install(previous[i]);
+            }
+        } finally {
+            exitAction((String) previous[values.length]);
+        }
+    }
+}
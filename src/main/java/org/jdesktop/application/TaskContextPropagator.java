@@ -0,0 +1,61 @@
+package org.jdesktop.application;
+
+/**
+ * Carries thread-bound state, like the current user, a logging context
+ * or a locale override, from the thread that executes a {@link Task} to
+ * the threads that run it.
+ * <p>
+ * When a Task is {@link TaskService#execute executed}, the TaskService
+ * calls {@link #capture capture} on the executing thread, typically the
+ * EDT, for each of its {@link TaskService#addContextPropagator
+ * propagators}.  The captured value is {@link #install installed} on the
+ * background thread while {@code doInBackground} runs, and on the EDT
+ * while the Task's {@code process}, {@code succeeded}, {@code failed},
+ * {@code cancelled}, {@code interrupted}, {@code timedOut} and {@code
+ * finished} methods run.  Afterwards the value that {@code install}
+ * returned is installed again.  For example, a propagator for a logging
+ * framework's MDC:
+ * <pre>
+ * class MDCPropagator implements TaskContextPropagator&lt;Map&lt;String, String&gt;&gt; {
+ *     public Map&lt;String, String&gt; capture() {
+ *         return MDC.getCopyOfContextMap();
+ *     }
+ *     public Map&lt;String, String&gt; install(Map&lt;String, String&gt; context) {
+ *         Map&lt;String, String&gt; previous = MDC.getCopyOfContextMap();
+ *         if (context == null) {
+ *             MDC.clear();
+ *         } else {
+ *             MDC.setContextMap(context);
+ *         }
+ *         return previous;
+ *     }
+ * }
+ * taskService.addContextPropagator(new MDCPropagator());
+ * </pre>
+ * Both methods must be quick, they run on the EDT.  The captured value is
+ * shared by all of the threads the Task runs on, so it should be
+ * immutable or a copy.
+ *
+ * @param <C> the type of the captured context
+ * @see TaskService#addContextPropagator
+ * @see Task#getActionName
+ */
+public interface TaskContextPropagator<C> {
+
+    /**
+     * Returns the context of the current thread.  Called on the thread
+     * that executes a Task.
+     *
+     * @return the current context, may be null
+     */
+    C capture();
+
+    /**
+     * Makes {@code context} the context of the current thread.
+     *
+     * @param context a value returned by {@code capture}, or one returned by
+     *        {@code install} that's being put back
+     * @return the context that has been replaced
+     */
+    C install(C context);
+}
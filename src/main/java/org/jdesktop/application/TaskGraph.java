@@ -0,0 +1,383 @@
+package org.jdesktop.application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A {@code Task} that runs a set of other Tasks, its <i>nodes</i>, in
+ * dependency order with as much parallelism as the dependencies allow.
+ * <p>
+ * Each node is added together with the nodes it depends on.  A node is
+ * started as soon as all of its dependencies have succeeded, so independent
+ * branches of the graph run concurrently on the executor of the
+ * {@code TaskService} that executes the graph:
+ * <pre>
+ * TaskGraph graph = new TaskGraph(application);
+ * graph.add(loadConfig);
+ * graph.add(fetchCatalogA, loadConfig);
+ * graph.add(fetchCatalogB, loadConfig);
+ * graph.add(buildIndex, fetchCatalogA, fetchCatalogB);
+ * taskService.execute(graph);
+ * </pre>
+ * Since a node only starts after its dependencies are done, its
+ * {@code doInBackground} method can use {@link #getResult getResult}
+ * to read their results without blocking.
+ * <p>
+ * If a node fails or is cancelled, all of the nodes that depend on it,
+ * directly or indirectly, are cancelled and never run.  Nodes on
+ * independent branches keep running.  When every node is done the
+ * graph fails with the cause of the first node failure, if there was one.
+ * Cancelling the graph cancels all of the nodes that haven't finished yet.
+ * <p>
+ * Only the graph itself is added to the TaskService's {@code tasks} list,
+ * so a {@link TaskMonitor} sees it as a single Task.  Its {@code progress}
+ * property reflects the fraction of nodes that are done and its
+ * {@code message} property the title of the most recently started node.
+ * The completion methods and TaskListeners of the nodes run as usual.
+ *
+ * @see TaskService#execute
+ */
+public class TaskGraph extends Task<Void, Void> {
+
+    private final Object lock = new Object();
+    private final Map<Task<?, ?>, Node> nodes = new IdentityHashMap<Task<?, ?>, Node>();
+    private final List<Node> nodeList = new ArrayList<Node>();
+    private final LinkedList<Node> ready = new LinkedList<Node>();
+    private int remaining = 0;
+    private int finished = 0;
+    private boolean started = false;
+    private boolean aborted = false;
+    private Throwable failure = null;
+
+    private static final class Node {
+
+        final Task<?, ?> task;
+        final List<Node> dependents = new ArrayList<Node>();
+        int pendingDependencies;
+        boolean dispatched = false;
+        boolean skipped = false;
+        boolean done = false;
+
+        Node(Task<?, ?> task, int pendingDependencies) {
+            this.task = task;
+            this.pendingDependencies = pendingDependencies;
+        }
+    }
+
+    /**
+     * Construct an empty {@code TaskGraph}.
+     *
+     * @param application the Application this graph belongs to
+     */
+    public TaskGraph(Application application) {
+        super(application);
+        addPropertyChangeListener(new AbortPCL());
+    }
+
+    /**
+     * Adds a node to this graph.  All of the {@code dependencies} must have
+     * been added to this graph already, which guarantees that the graph
+     * has no cycles.
+     *
+     * @param task the Task to add, it must not have been executed yet
+     * @param dependencies the nodes that must succeed before {@code task} is started
+     * @throws IllegalArgumentException if the task is null, already executed or already
+     *         in the graph, or if a dependency isn't a node of this graph
+     * @throws IllegalStateException if this graph has already been executed
+     */
+    public void add(Task<?, ?> task, Task<?, ?>... dependencies) {
+        if (task == null) {
+            throw new IllegalArgumentException("null task");
+        }
+        if (task == this) {
+            throw new IllegalArgumentException("graph can't be its own node");
+        }
+        if (!task.isPending() || (task.getTaskService() != null)) {
+            throw new IllegalArgumentException("task has already been executed");
+        }
+        synchronized (lock) {
+            if (started || !isPending()) {
+                throw new IllegalStateException("graph already being executed");
+            }
+            if (nodes.containsKey(task)) {
+                throw new IllegalArgumentException("task already added");
+            }
+            List<Node> dependencyNodes = new ArrayList<Node>(dependencies.length);
+            for (Task<?, ?> dependency : dependencies) {
+                Node dependencyNode = nodes.get(dependency);
+                if (dependencyNode == null) {
+                    throw new IllegalArgumentException("dependency is not a node of this graph: " + dependency);
+                }
+                if (!dependencyNodes.contains(dependencyNode)) {
+                    dependencyNodes.add(dependencyNode);
+                }
+            }
+            Node node = new Node(task, dependencyNodes.size());
+            for (Node dependencyNode : dependencyNodes) {
+                dependencyNode.dependents.add(node);
+            }
+            nodes.put(task, node);
+            nodeList.add(node);
+        }
+    }
+
+    /**
+     * Returns the nodes of this graph in the order they were added.
+     *
+     * @return a copy of the list of nodes
+     */
+    public List<Task<?, ?>> getTasks() {
+        synchronized (lock) {
+            List<Task<?, ?>> tasks = new ArrayList<Task<?, ?>>(nodeList.size());
+            for (Node node : nodeList) {
+                tasks.add(node.task);
+            }
+            return tasks;
+        }
+    }
+
+    /**
+     * Returns the result of a node that has succeeded.  A node's {@code
+     * doInBackground} method typically calls this to read the results of
+     * its dependencies, which are always done by then.
+     *
+     * @param task a node of this graph
+     * @return the value computed by {@code task}
+     * @throws IllegalArgumentException if {@code task} isn't a node of this graph
+     * @throws IllegalStateException if {@code task} isn't done or didn't succeed
+     */
+    public <R> R getResult(Task<R, ?> task) {
+        synchronized (lock) {
+            if (!nodes.containsKey(task)) {
+                throw new IllegalArgumentException("task is not a node of this graph");
+            }
+        }
+        if (!task.isDone() || task.isCancelled()) {
+            throw new IllegalStateException("task did not complete");
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("task failed", e.getCause());
+        }
+    }
+
+    /**
+     * Runs the nodes of this graph.  Ready nodes are run by helper threads
+     * from the TaskService's executor and by the calling thread itself,
+     * whichever claims them first, so a graph makes progress even on a
+     * single-threaded executor.
+     *
+     * @return null
+     * @throws Exception the cause of the first node failure
+     */
+    @Override
+    protected Void doInBackground() throws Exception {
+        int total;
+        synchronized (lock) {
+            started = true;
+            total = nodeList.size();
+            remaining = total;
+            for (Node node : nodeList) {
+                if (node.pendingDependencies == 0) {
+                    ready.add(node);
+                }
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+        setProgress(0);
+        try {
+            while (true) {
+                Node next;
+                int helpers = 0;
+                synchronized (lock) {
+                    while (ready.isEmpty() && (remaining > 0) && !aborted) {
+                        lock.wait();
+                    }
+                    if ((remaining == 0) || aborted) {
+                        break;
+                    }
+                    next = ready.removeFirst();
+                    for (Node node : ready) {
+                        if (!node.dispatched) {
+                            node.dispatched = true;
+                            helpers++;
+                        }
+                    }
+                }
+                for (int i = 0; i < helpers; i++) {
+                    dispatchHelper();
+                }
+                runNode(next);
+            }
+        } catch (InterruptedException e) {
+            cancelUnfinishedNodes();
+            throw e;
+        }
+        if (aborted) {
+            cancelUnfinishedNodes();
+            return null;
+        }
+        Throwable cause;
+        synchronized (lock) {
+            cause = failure;
+        }
+        if (cause instanceof Exception) {
+            throw (Exception) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return null;
+    }
+
+    /* Asks the executor for one more thread to run a ready node.  The node
+     * stays in the ready queue, so if the executor is busy, or rejects the
+     * helper, the graph's own thread runs it instead.
+     */
+    private void dispatchHelper() {
+        TaskService taskService = getTaskService();
+        if (taskService == null) {
+            return;
+        }
+        Runnable helper = new Runnable() {
+
+            @Override
+            public void run() {
+                Node node;
+                synchronized (lock) {
+                    node = (ready.isEmpty() || aborted) ? null : ready.removeFirst();
+                }
+                if (node != null) {
+                    runNode(node);
+                }
+            }
+        };
+        try {
+            taskService.executeSubtask(helper);
+        } catch (RejectedExecutionException ignore) {
+        }
+    }
+
+    private void runNode(Node node) {
+        Task<?, ?> task = node.task;
+        if (!task.isDone()) {
+            task.setTaskService(getTaskService());
+            String title = task.getTitle();
+            if (title != null) {
+                setMessage(title);
+            }
+            task.run();
+        }
+        nodeDone(node);
+    }
+
+    /* Called once per node, after its Future has completed.  Makes
+     * the node's dependents ready or, if the node didn't succeed,
+     * cancels all of them.
+     */
+    private void nodeDone(Node node) {
+        Task<?, ?> task = node.task;
+        boolean succeeded = false;
+        Throwable cause = null;
+        if (!task.isCancelled()) {
+            try {
+                task.get();
+                succeeded = true;
+            } catch (InterruptedException e) {
+                cause = e;
+            } catch (ExecutionException e) {
+                cause = e.getCause();
+            }
+        }
+        List<Node> skipped = new ArrayList<Node>();
+        int done, total;
+        synchronized (lock) {
+            if (node.done) {
+                return;
+            }
+            node.done = true;
+            remaining--;
+            finished++;
+            if (succeeded) {
+                for (Node dependent : node.dependents) {
+                    if ((--dependent.pendingDependencies == 0) && !dependent.skipped) {
+                        ready.add(dependent);
+                    }
+                }
+            } else {
+                if ((cause != null) && (failure == null)) {
+                    failure = cause;
+                }
+                skipDependents(node, skipped);
+            }
+            done = finished;
+            total = nodeList.size();
+            lock.notifyAll();
+        }
+        for (Node dependent : skipped) {
+            dependent.task.cancel(false);
+        }
+        setProgress(done, 0, total);
+    }
+
+    /* Must be called with the lock held. */
+    private void skipDependents(Node node, List<Node> skipped) {
+        for (Node dependent : node.dependents) {
+            if (!dependent.skipped && !dependent.done) {
+                dependent.skipped = true;
+                dependent.done = true;
+                remaining--;
+                finished++;
+                skipped.add(dependent);
+                skipDependents(dependent, skipped);
+            }
+        }
+    }
+
+    private void cancelUnfinishedNodes() {
+        List<Node> unfinished = new ArrayList<Node>();
+        synchronized (lock) {
+            aborted = true;
+            for (Node node : nodeList) {
+                if (!node.done) {
+                    unfinished.add(node);
+                }
+            }
+            ready.clear();
+            lock.notifyAll();
+        }
+        for (Node node : unfinished) {
+            node.task.cancel(true);
+        }
+    }
+
+    /* When the graph itself is cancelled, stop scheduling nodes and
+     * cancel the ones that haven't finished.  This listener runs on the EDT.
+     */
+    private class AbortPCL implements PropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            if (PROP_DONE.equals(e.getPropertyName())) {
+                removePropertyChangeListener(this);
+                if (isCancelled()) {
+                    cancelUnfinishedNodes();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.jdesktop.application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of Tasks that belong together and can be cancelled as a unit,
+ * typically all of the Tasks started from one window or {@link View}.
+ * <p>
+ * Tasks returned by an {@code @Action} method join the TaskGroup of the
+ * window whose component fired the action, see {@link
+ * ApplicationContext#getTaskGroup ApplicationContext.getTaskGroup}.  When
+ * {@link SingleFrameApplication} closes a secondary window, it cancels the
+ * window's TaskGroup, so that Tasks started from it don't keep running
+ * against a GUI that's gone.  Other Tasks can be added explicitly:
+ * <pre>
+ * view.getTaskGroup().add(refreshTask);
+ * taskService.execute(refreshTask);
+ * </pre>
+ * A Task belongs to at most one TaskGroup and leaves it when it's done.
+ * The group's {@code taskCount}, {@code runningTaskCount} and {@code
+ * progress} properties summarize its members; {@link TaskMonitor} lists the
+ * groups of the Tasks it monitors in its {@code taskGroups} property.
+ * <p>
+ * This class is thread-safe, its PropertyChangeListeners run on the EDT.
+ *
+ * @see View#getTaskGroup
+ * @see TaskMonitor#getTaskGroups
+ */
+public class TaskGroup extends AbstractBean {
+
+    public static final String PROP_TASK_COUNT = "taskCount";
+    public static final String PROP_RUNNING_TASK_COUNT = "runningTaskCount";
+    public static final String PROP_PROGRESS = "progress";
+
+    private final String name;
+    private final List<Task<?, ?>> tasks = new ArrayList<Task<?, ?>>();
+    private final PropertyChangeListener taskPCL = new TaskPCL();
+    private int finishedTaskCount = 0;
+    private int taskCount = 0;
+    private int runningTaskCount = 0;
+    private int progress = 0;
+
+    /**
+     * Creates an empty TaskGroup.
+     *
+     * @param name the name of the group, used for display purposes, may be null
+     */
+    public TaskGroup(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of this group.
+     *
+     * @return the name of this group, or null
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Adds a Task to this group.  If the Task is already done, this
+     * method does nothing.
+     *
+     * @param task the Task to add
+     * @throws IllegalStateException if the Task already belongs to another group
+     * @see Task#getTaskGroup
+     */
+    public void add(Task<?, ?> task) {
+        if (task == null) {
+            throw new IllegalArgumentException("null task");
+        }
+        synchronized (this) {
+            TaskGroup group = task.getTaskGroup();
+            if (group == this) {
+                return;
+            } else if (group != null) {
+                throw new IllegalStateException("task already belongs to group " + group.getName());
+            }
+            task.setTaskGroup(this);
+            tasks.add(task);
+        }
+        task.addPropertyChangeListener(taskPCL);
+        // The Task may have finished before the listener was added
+        if (task.isDone()) {
+            remove(task);
+        } else {
+            update();
+        }
+    }
+
+    private void remove(Task<?, ?> task) {
+        task.removePropertyChangeListener(taskPCL);
+        synchronized (this) {
+            if (tasks.remove(task)) {
+                finishedTaskCount++;
+                task.setTaskGroup(null);
+            }
+        }
+        update();
+    }
+
+    /**
+     * Cancels all of the Tasks in this group with {@code cancel(true)}.
+     * Tasks that are added later aren't affected.
+     */
+    public void cancel() {
+        for (Task<?, ?> task : getTasks()) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Returns a copy of the list of Tasks in this group that aren't done yet.
+     *
+     * @return the Tasks in this group
+     */
+    public synchronized List<Task<?, ?>> getTasks() {
+        return new ArrayList<Task<?, ?>>(tasks);
+    }
+
+    /**
+     * Returns the number of Tasks in this group that aren't done yet.
+     * <p>
+     * This is a bound property.
+     *
+     * @return the number of Tasks in this group
+     */
+    public synchronized int getTaskCount() {
+        return taskCount;
+    }
+
+    /**
+     * Returns the number of Tasks in this group that are running, i.e.
+     * whose state is {@code STARTED}.
+     * <p>
+     * This is a bound property.
+     *
+     * @return the number of running Tasks in this group
+     */
+    public synchronized int getRunningTaskCount() {
+        return runningTaskCount;
+    }
+
+    /**
+     * Returns the combined progress of this group's Tasks, as a percentage
+     * between 0 and 100.  Tasks that left the group since it was last empty
+     * count as 100% done, Tasks that haven't set their progress as 0% done.
+     * If none of the Tasks has set its progress and none has finished, the
+     * value is -1, i.e. the progress is indeterminate.
+     * <p>
+     * This is a bound property.
+     *
+     * @return the group's progress, or -1 if it's indeterminate
+     * @see TaskMonitor#getAggregateProgress
+     */
+    public synchronized int getProgress() {
+        return progress;
+    }
+
+    private void update() {
+        int oldTaskCount, newTaskCount;
+        int oldRunning, newRunning;
+        int oldProgress, newProgress;
+        synchronized (this) {
+            int running = 0;
+            int progressSum = 0;
+            boolean progressKnown = false;
+            for (Task<?, ?> task : tasks) {
+                if (task.isStarted()) {
+                    running++;
+                }
+                if (task.isProgressPropertyValid()) {
+                    progressKnown = true;
+                    progressSum += task.getProgress();
+                }
+            }
+            int total = tasks.size() + finishedTaskCount;
+            oldTaskCount = taskCount;
+            oldRunning = runningTaskCount;
+            oldProgress = progress;
+            taskCount = tasks.size();
+            runningTaskCount = running;
+            if (total == 0) {
+                progress = 0;
+            } else if (!progressKnown && (finishedTaskCount == 0)) {
+                progress = -1;
+            } else {
+                progress = (progressSum + 100 * finishedTaskCount) / total;
+            }
+            if (tasks.isEmpty()) {
+                finishedTaskCount = 0;
+            }
+            newTaskCount = taskCount;
+            newRunning = runningTaskCount;
+            newProgress = progress;
+        }
+        firePropertyChange(PROP_TASK_COUNT, oldTaskCount, newTaskCount);
+        firePropertyChange(PROP_RUNNING_TASK_COUNT, oldRunning, newRunning);
+        firePropertyChange(PROP_PROGRESS, oldProgress, newProgress);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "[" + name + "]";
+    }
+
+    private class TaskPCL implements PropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            String propertyName = e.getPropertyName();
+            Task<?, ?> task = (Task<?, ?>) e.getSource();
+            if (Task.PROP_DONE.equals(propertyName)) {
+                remove(task);
+            } else if ("state".equals(propertyName) || Task.PROP_STARTED.equals(propertyName) || "progress".equals(propertyName)) {
+                update();
+            }
+        }
+    }
+}
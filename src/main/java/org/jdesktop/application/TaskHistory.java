@@ -0,0 +1,391 @@
+package org.jdesktop.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded record of the most recently completed Tasks, for diagnosing
+ * slow Tasks in production.  Once a Task is done its {@link TaskService}
+ * forgets it; a TaskService with a {@link TaskService#setHistory history}
+ * records each of its Tasks' class, title, queue wait, run time, outcome
+ * and thread here first.
+ * <p>
+ * The records are kept in preallocated arrays that are used as a ring
+ * buffer: once {@code capacity} Tasks have been recorded, each new record
+ * overwrites the oldest one, and recording a Task doesn't allocate
+ * anything.  The {@link Summary summaries} provide percentiles of the
+ * recorded times:
+ * <pre>
+ * TaskHistory history = new TaskHistory(1000);
+ * taskService.setHistory(history);
+ * // ... later
+ * for (Class&lt;?&gt; taskClass : history.getTaskClasses()) {
+ *     TaskHistory.Summary summary = history.getSummary(taskClass);
+ *     log(taskClass + " p90: " + summary.getRunTimePercentile(90, TimeUnit.MILLISECONDS) + "ms");
+ * }
+ * </pre>
+ * A TaskHistory can be shared by several TaskServices, which gives the
+ * application a single history of all of its Tasks.
+ *
+ * @see TaskService#setHistory
+ */
+public final class TaskHistory {
+
+    /**
+     * How a recorded Task completed.
+     */
+    public enum Outcome {
+
+        /** {@code doInBackground} returned a result */
+        SUCCEEDED,
+        /** {@code doInBackground} threw an exception */
+        FAILED,
+        /** the Task was cancelled */
+        CANCELLED,
+        /** the Task was cancelled because its {@link Task#setTimeout timeout} expired */
+        TIMED_OUT
+    }
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private final int capacity;
+    private final Class<?>[] taskClasses;
+    private final String[] titles;
+    private final String[] threadNames;
+    private final long[] finishTimes;
+    private final long[] queueWaits;
+    private final long[] runTimes;
+    private final byte[] outcomes;
+    private long recordedCount = 0L;   // guarded by this
+
+    /**
+     * Creates an empty TaskHistory that holds up to {@code capacity}
+     * records.
+     *
+     * @param capacity the maximum number of records
+     */
+    public TaskHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        this.capacity = capacity;
+        taskClasses = new Class<?>[capacity];
+        titles = new String[capacity];
+        threadNames = new String[capacity];
+        finishTimes = new long[capacity];
+        queueWaits = new long[capacity];
+        runTimes = new long[capacity];
+        outcomes = new byte[capacity];
+    }
+
+    /**
+     * Returns the maximum number of records this TaskHistory holds.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of records this TaskHistory holds, at most
+     * {@link #getCapacity capacity}.
+     *
+     * @return the number of records
+     */
+    public synchronized int size() {
+        return (int) Math.min(recordedCount, capacity);
+    }
+
+    /**
+     * Returns the number of Tasks recorded since this TaskHistory was
+     * created or cleared, including the records that have been
+     * overwritten since.
+     *
+     * @return the number of recorded Tasks
+     */
+    public synchronized long getRecordedCount() {
+        return recordedCount;
+    }
+
+    /**
+     * Discards all records.
+     */
+    public synchronized void clear() {
+        Arrays.fill(taskClasses, null);
+        Arrays.fill(titles, null);
+        Arrays.fill(threadNames, null);
+        recordedCount = 0L;
+    }
+
+    /* Called by the TaskService on the thread that ran the task, or on the
+     * EDT for a task that was attached to an identical one, the times are
+     * in nanoseconds.
+     */
+    synchronized void record(Task<?, ?> task, long queueWait, long runTime, Outcome outcome, String threadName) {
+        int i = (int) (recordedCount % capacity);
+        taskClasses[i] = task.getClass();
+        titles[i] = task.getTitle();
+        threadNames[i] = threadName;
+        finishTimes[i] = System.currentTimeMillis();
+        queueWaits[i] = queueWait;
+        runTimes[i] = runTime;
+        outcomes[i] = (byte) outcome.ordinal();
+        recordedCount++;
+    }
+
+    /* The index of the index-th oldest record. */
+    private int slot(int index) {
+        long first = Math.max(0L, recordedCount - capacity);
+        return (int) ((first + index) % capacity);
+    }
+
+    /**
+     * Returns a copy of the records, oldest first.
+     *
+     * @return the records
+     */
+    public synchronized List<Record> getRecords() {
+        int size = size();
+        List<Record> records = new ArrayList<Record>(size);
+        for (int index = 0; index < size; index++) {
+            int i = slot(index);
+            records.add(new Record(taskClasses[i], titles[i], threadNames[i], finishTimes[i],
+                    queueWaits[i], runTimes[i], OUTCOMES[outcomes[i]]));
+        }
+        return records;
+    }
+
+    /**
+     * Returns the classes of the recorded Tasks, in the order they were
+     * first recorded.
+     *
+     * @return the recorded Task classes
+     */
+    public synchronized Set<Class<?>> getTaskClasses() {
+        Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        int size = size();
+        for (int index = 0; index < size; index++) {
+            classes.add(taskClasses[slot(index)]);
+        }
+        return Collections.unmodifiableSet(classes);
+    }
+
+    /**
+     * Returns the statistics of all records.
+     *
+     * @return the Summary of all records
+     * @see #getSummary(Class)
+     */
+    public Summary getSummary() {
+        return getSummary(null);
+    }
+
+    /**
+     * Returns the statistics of the records of Tasks of one class.
+     *
+     * @param taskClass the class of the Tasks to summarize, or null for all of them
+     * @return the Summary of those records
+     */
+    public synchronized Summary getSummary(Class<?> taskClass) {
+        int size = size();
+        long[] selectedQueueWaits = new long[size];
+        long[] selectedRunTimes = new long[size];
+        int[] outcomeCounts = new int[OUTCOMES.length];
+        int n = 0;
+        for (int index = 0; index < size; index++) {
+            int i = slot(index);
+            if ((taskClass == null) || (taskClasses[i] == taskClass)) {
+                selectedQueueWaits[n] = queueWaits[i];
+                selectedRunTimes[n] = runTimes[i];
+                outcomeCounts[outcomes[i]]++;
+                n++;
+            }
+        }
+        return new Summary(taskClass, Arrays.copyOf(selectedQueueWaits, n), Arrays.copyOf(selectedRunTimes, n), outcomeCounts);
+    }
+
+    /**
+     * One completed Task.
+     */
+    public static final class Record {
+
+        private final Class<?> taskClass;
+        private final String title;
+        private final String threadName;
+        private final long finishTime;
+        private final long queueWait;
+        private final long runTime;
+        private final Outcome outcome;
+
+        private Record(Class<?> taskClass, String title, String threadName, long finishTime, long queueWait, long runTime, Outcome outcome) {
+            this.taskClass = taskClass;
+            this.title = title;
+            this.threadName = threadName;
+            this.finishTime = finishTime;
+            this.queueWait = queueWait;
+            this.runTime = runTime;
+            this.outcome = outcome;
+        }
+
+        /**
+         * @return the class of the Task
+         */
+        public Class<?> getTaskClass() {
+            return taskClass;
+        }
+
+        /**
+         * @return the Task's {@link Task#getTitle title} when it completed
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return the name of the thread that ran the Task
+         */
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return the time the Task completed, in milliseconds since the epoch
+         */
+        public long getFinishTime() {
+            return finishTime;
+        }
+
+        /**
+         * Returns the time the Task waited for a thread after it had been
+         * handed over to the executor.  The start delay and the wait for
+         * the {@link TaskService#setRateLimit rate limiter} aren't included.
+         *
+         * @param unit the time unit of the return value
+         * @return the queue wait
+         */
+        public long getQueueWait(TimeUnit unit) {
+            return unit.convert(queueWait, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the time the Task ran.  The run time of a {@link
+         * RetryingTask} includes all of its attempts and the delays
+         * between them.
+         *
+         * @param unit the time unit of the return value
+         * @return the run time
+         */
+        public long getRunTime(TimeUnit unit) {
+            return unit.convert(runTime, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return how the Task completed
+         */
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[%s, %s, title=%s, thread=%s, queueWait=%dms, runTime=%dms]",
+                    getClass().getSimpleName(), taskClass.getName(), outcome, title, threadName,
+                    getQueueWait(TimeUnit.MILLISECONDS), getRunTime(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * The statistics of a set of records, computed when the Summary was
+     * created.
+     *
+     * @see TaskHistory#getSummary(Class)
+     */
+    public static final class Summary {
+
+        private final Class<?> taskClass;
+        private final long[] queueWaits;   // sorted
+        private final long[] runTimes;     // sorted
+        private final int[] outcomeCounts;
+
+        private Summary(Class<?> taskClass, long[] queueWaits, long[] runTimes, int[] outcomeCounts) {
+            Arrays.sort(queueWaits);
+            Arrays.sort(runTimes);
+            this.taskClass = taskClass;
+            this.queueWaits = queueWaits;
+            this.runTimes = runTimes;
+            this.outcomeCounts = outcomeCounts;
+        }
+
+        /**
+         * @return the class of the summarized Tasks, or null if all records are summarized
+         */
+        public Class<?> getTaskClass() {
+            return taskClass;
+        }
+
+        /**
+         * @return the number of summarized records
+         */
+        public int getCount() {
+            return runTimes.length;
+        }
+
+        /**
+         * Returns the number of summarized Tasks that completed with
+         * {@code outcome}.
+         *
+         * @param outcome how the Tasks completed
+         * @return the number of such Tasks
+         */
+        public int getOutcomeCount(Outcome outcome) {
+            if (outcome == null) {
+                throw new IllegalArgumentException("null outcome");
+            }
+            return outcomeCounts[outcome.ordinal()];
+        }
+
+        /**
+         * Returns a percentile of the run times, for example the median
+         * for 50 or the maximum for 100.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @param unit the time unit of the return value
+         * @return the run time percentile, or -1 if there are no records
+         */
+        public long getRunTimePercentile(double percentile, TimeUnit unit) {
+            return percentile(runTimes, percentile, unit);
+        }
+
+        /**
+         * Returns a percentile of the queue waits.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @param unit the time unit of the return value
+         * @return the queue wait percentile, or -1 if there are no records
+         * @see Record#getQueueWait
+         */
+        public long getQueueWaitPercentile(double percentile, TimeUnit unit) {
+            return percentile(queueWaits, percentile, unit);
+        }
+
+        /* The nearest-rank percentile of the sorted values, in nanoseconds. */
+        private static long percentile(long[] values, double percentile, TimeUnit unit) {
+            if (!((percentile >= 0.0) && (percentile <= 100.0))) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+            if (unit == null) {
+                throw new IllegalArgumentException("null unit");
+            }
+            if (values.length == 0) {
+                return -1L;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * values.length);
+            int index = Math.min(values.length - 1, Math.max(0, rank - 1));
+            return unit.convert(values[index], TimeUnit.NANOSECONDS);
+        }
+    }
+}
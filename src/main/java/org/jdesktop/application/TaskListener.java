@@ -87,6 +87,12 @@ public interface TaskListener<T, V> {
      * Called after the Task's {@link Task#cancelled cancelled} method
      * is called.  The {@code event's} source is the Task and its
      * value is null.
+     * <p>
+     * This method is also called when the Task was cancelled because its
+     * {@link Task#setTimeout deadline} passed, the Task's {@link
+     * Task#isTimedOut isTimedOut} method returns true then.  Listeners that
+     * implement {@link TimeoutListener} are told about timeouts by its
+     * {@code timedOut} method instead.
      *
      * @param event a TaskEvent whose source is the {@code Task} object, value is null
      * @see Task#cancelled
@@ -118,6 +124,57 @@ public interface TaskListener<T, V> {
      */
     void finished(TaskEvent<Void> event);
 
+    /**
+     * Optional interface for TaskListeners that handle timeouts separately
+     * from other cancellations.  A TaskListener that implements it is told
+     * about a timeout by {@link #timedOut timedOut} instead of {@link
+     * TaskListener#cancelled cancelled}.
+     *
+     * @see Task#setTimeout
+     */
+    interface TimeoutListener {
+
+        /**
+         * Called instead of {@link TaskListener#cancelled cancelled} after
+         * the Task's {@link Task#timedOut timedOut} method is called, i.e.
+         * when the Task was cancelled because its deadline passed.  The
+         * {@code event's} source is the Task and its value is the timeout,
+         * in milliseconds, that applied to it.
+         *
+         * @param event a TaskEvent whose source is the {@code Task} object, and
+         *     whose value is the timeout in milliseconds
+         * @see Task#timedOut
+         * @see Task#setTimeout
+         * @see TaskEvent#getSource
+         * @see TaskEvent#getValue
+         */
+        void timedOut(TaskEvent<Long> event);
+    }
+
+    /**
+     * Optional interface for TaskListeners of a {@link RetryingTask} that
+     * want to know when a failed attempt is repeated.
+     *
+     * @see RetryingTask
+     */
+    interface RetryListener {
+
+        /**
+         * Called when an attempt of a {@link RetryingTask} has failed and
+         * will be repeated.  The {@code event's} source is the Task and its
+         * value is the number of the next attempt, i.e. 2 for the first retry.
+         * The cause of the failure is available from {@link
+         * RetryingTask#getLastFailure}.
+         *
+         * @param event a TaskEvent whose source is the {@code Task} object, and
+         *     whose value is the number of the next attempt
+         * @see RetryingTask
+         * @see TaskEvent#getSource
+         * @see TaskEvent#getValue
+         */
+        void retrying(TaskEvent<Integer> event);
+    }
+
     /** 
      * Convenience class that stubs all of the TaskListener interface
      * methods.  Using TaskListener.Adapter can simplify building 
@@ -127,7 +184,7 @@ public interface TaskListener<T, V> {
      * @param <V> the type used for carrying out intermediate results by this
      *        {@code SwingWorker's} {@code publish} and {@code process} methods
      */
-    class Adapter<T, V> implements TaskListener<T, V> {
+    class Adapter<T, V> implements TaskListener<T, V>, TimeoutListener, RetryListener {
 
         @Override
         public void doInBackground(TaskEvent<Void> event) {
@@ -137,6 +194,10 @@ public interface TaskListener<T, V> {
         public void process(TaskEvent<List<V>> event) {
         }
 
+        @Override
+        public void retrying(TaskEvent<Integer> event) {
+        }
+
         @Override
         public void succeeded(TaskEvent<T> event) {
         }
@@ -149,6 +210,17 @@ public interface TaskListener<T, V> {
         public void cancelled(TaskEvent<Void> event) {
         }
 
+        /**
+         * Calls {@link #cancelled cancelled}, so that listeners that don't
+         * distinguish timeouts treat them like any other cancellation.
+         *
+         * @param event a TaskEvent whose value is the timeout in milliseconds
+         */
+        @Override
+        public void timedOut(TaskEvent<Long> event) {
+            cancelled(new TaskEvent<Void>((Task) event.getSource(), null));
+        }
+
         @Override
         public void interrupted(TaskEvent<InterruptedException> event) {
         }
@@ -1,9 +1,17 @@
 package org.jdesktop.application;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import javax.swing.SwingWorker.StateValue;
+import javax.swing.Timer;
 
 /**
  * This class is intended to serve as the model for GUI components, like status
@@ -49,12 +57,32 @@ import javax.swing.SwingWorker.StateValue;
  */
 public class TaskMonitor extends AbstractBean {
     public static final String PROP_FOREGROUND_TASK = "foregroundTask";
+    public static final String PROP_AGGREGATE_PROGRESS = "aggregateProgress";
+    public static final String PROP_RUNNING_TASK_COUNT = "runningTaskCount";
+    public static final String PROP_QUEUED_TASK_COUNT = "queuedTaskCount";
+    public static final String PROP_THROUGHPUT = "throughput";
+    public static final String PROP_TASK_GROUPS = "taskGroups";
+    private static final int DEFAULT_UPDATE_INTERVAL = 250; // milliseconds
+    private static final double THROUGHPUT_WINDOW = 10.0; // seconds
+    private static final double IDLE_THROUGHPUT = 0.01; // tasks per second
+    private final ApplicationContext context;
     private final PropertyChangeListener applicationPCL;
     private final PropertyChangeListener taskServicePCL;
     private final PropertyChangeListener taskPCL;
     private final Journal taskQueue;
     private boolean autoUpdateForegroundTask = true;
     private Task foregroundTask = null;
+    private final Timer statisticsTimer;
+    private boolean progressWeighted = false;
+    private int aggregateProgress = 0;
+    private int runningTaskCount = 0;
+    private int queuedTaskCount = 0;
+    private double throughput = 0.0;
+    private List<TaskGroup> taskGroups = Collections.emptyList();
+    private long batchCompletedWork = 0L;
+    private int completedSinceUpdate = 0;
+    private long completedLightweightTaskCount = 0L;
+    private long lastUpdateTime = System.nanoTime();
 
     /**
      * Construct a TaskMonitor.
@@ -62,13 +90,22 @@ public class TaskMonitor extends AbstractBean {
      * @param context
      */
     public TaskMonitor(ApplicationContext context) {
+        this.context = context;
         applicationPCL = new ApplicationPCL();
         taskServicePCL = new TaskServicePCL();
         taskPCL = new TaskPCL();
         taskQueue = new Journal();
+        statisticsTimer = new Timer(DEFAULT_UPDATE_INTERVAL, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateStatistics();
+            }
+        });
         context.addPropertyChangeListener(applicationPCL);
         for (final TaskService taskService : context.getTaskServices()) {
             taskService.addPropertyChangeListener(taskServicePCL);
+            completedLightweightTaskCount += taskService.getCompletedLightweightTaskCount();
         }
     }
 
@@ -145,13 +182,14 @@ public class TaskMonitor extends AbstractBean {
      * property named "tasks" is fired. Applications that want to monitor all
      * background Tasks should monitor the tasks property.
      *
-     * <p>KJG: This list is unmodifiable. For optimum performance, do not retain
-     * this list. If you must retain a list, make a copy of this list.
+     * <p>This list is an immutable snapshot with constant-time indexed
+     * access.  It's shared by all callers until the list of Tasks changes,
+     * so it's cheap to call this method repeatedly.
      *
      * @return a list of all Tasks that aren't {@code DONE}
      */
     public List<Task<?, ?>> getTasks() {
-        return taskQueue.getList();
+        return taskQueue.snapshot();
     }
 
     /* Called on the EDT, each time a TaskService's list of tasks changes,
@@ -161,18 +199,21 @@ public class TaskMonitor extends AbstractBean {
     private void updateTasks(List<Task> oldTasks, List<Task> newTasks) {
         boolean tasksChanged = false;  // has the "tasks" property changed?
 
-        List<Task<?, ?>> oldTaskQueue = taskQueue.getList();//copyTaskQueue();
+        List<Task<?, ?>> oldTaskQueue = taskQueue.getList();
+        Set<Task> newTaskSet = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+        newTaskSet.addAll(newTasks);
         // Remove each oldTask that is either done or not in the newTasks list from taskQueue
         for (Task oldTask : oldTasks) {
-            if (oldTask.isDone() || !(newTasks.contains(oldTask))) {
+            if (oldTask.isDone() || !newTaskSet.contains(oldTask)) {
                 if (taskQueue.remove(oldTask)) {
+                    taskRemoved(oldTask);
                     tasksChanged = true;
                 }
             }
         }
         // Add each newTask that's not cancelled, done, or already in the taskQueue
         for (Task newTask : newTasks) {
-            if (!newTask.isCancelled() && !newTask.isDone() && !(taskQueue.getList().contains(newTask))) {
+            if (!newTask.isCancelled() && !newTask.isDone() && !taskQueue.contains(newTask)) {
                 taskQueue.addLast(newTask);
                 tasksChanged = true;
             }
@@ -182,46 +223,286 @@ public class TaskMonitor extends AbstractBean {
         if (tasksChanged) {
             List<Task<?, ?>> newTaskQueue = taskQueue.getList();
             firePropertyChange("tasks", oldTaskQueue, newTaskQueue);
+            startStatisticsTimer();
         }
 
         if (autoUpdateForegroundTask && (getForegroundTask() == null)) {
-            Task last = null;
-            List<Task<?, ?>> currentTasks = taskQueue.getList();
-
-            if (!currentTasks.isEmpty()) {
-                last = currentTasks.get(currentTasks.size() - 1);
-            }
-            setForegroundTask(last);
+            setForegroundTask(taskQueue.last());
         }
     }
 
     /* Called on the EDT each time a TaskService's list of tasks changes,
-     * i.e. each time a new Task is executed and each time a Task's
-     * state changes to DONE.
+     * i.e. each time new Tasks are executed and each time a Task's
+     * state changes to DONE.  This is the path taken for the
+     * TaskService's own TaskPropertyChangeEvents: it only touches the
+     * removed and added Tasks, the lists in the "tasks" event are
+     * Journal views that are never traversed here.  A batch of Tasks
+     * from TaskService.executeAll is added in one pass and fires a single
+     * "tasks" event.
      */
-    private void updateTasks(Task removed, Task added) {
+    private void updateTasks(Task removed, List<Task<?, ?>> added) {
+        long oldRevision = taskQueue.modCount();
         List<Task<?, ?>> oldTaskQueue = taskQueue.getList();
 
-        if (removed != null) {
-            taskQueue.remove(removed);
+        if ((removed != null) && taskQueue.remove(removed)) {
+            taskRemoved(removed);
         }
 
-        if (added != null) {
-            taskQueue.addLast(added);
+        for (Task<?, ?> task : added) {
+            if (!taskQueue.contains(task)) {
+                taskQueue.addLast(task);
+            }
         }
 
-        List<Task<?, ?>> newTaskQueue = taskQueue.getList();
-        firePropertyChange("tasks", oldTaskQueue, newTaskQueue);
+        if (taskQueue.modCount() != oldRevision) {
+            List<Task<?, ?>> newTaskQueue = taskQueue.getList();
+            firePropertyChange("tasks", oldTaskQueue, newTaskQueue);
+            startStatisticsTimer();
+        }
 
         if (autoUpdateForegroundTask && (getForegroundTask() == null)) {
-            Task last = null;
-            List<Task<?, ?>> currentTasks = taskQueue.getList();
+            setForegroundTask(taskQueue.last());
+        }
+    }
+
+    /**
+     * Returns the combined progress of all of the monitored Tasks, as a
+     * percentage between 0 and 100.  Tasks that finished since the list of
+     * Tasks was last empty count as 100% done, so the value doesn't jump
+     * back when some of a batch of parallel Tasks finish early.  Tasks that
+     * haven't set their {@link Task#setProgress progress} count as 0% done.
+     * If none of the Tasks has set its progress and none has finished yet,
+     * the value is -1, i.e. the progress is indeterminate.
+     * <p>
+     * This is a bound property.  It's updated at most once per {@link
+     * #getUpdateInterval update interval}.
+     *
+     * @return the aggregate progress, or -1 if it's indeterminate
+     * @see #setProgressWeighted
+     */
+    public int getAggregateProgress() {
+        return aggregateProgress;
+    }
 
-            if (!currentTasks.isEmpty()) {
-                last = currentTasks.get(currentTasks.size() - 1);
+    /**
+     * Returns the number of monitored Tasks that are running, i.e. that
+     * are {@link Task#isStarted started}.  This includes the {@link LightweightTask
+     * LightweightTasks} whose {@code doInBackground} method is running.
+     * <p>
+     * This is a bound property.  It's updated at most once per {@link
+     * #getUpdateInterval update interval}.
+     *
+     * @return the number of running Tasks
+     * @see #getQueuedTaskCount
+     */
+    public int getRunningTaskCount() {
+        return runningTaskCount;
+    }
+
+    /**
+     * Returns the number of monitored Tasks that are waiting to run, i.e.
+     * that are still {@link Task#isPending pending}.  This includes the {@link
+     * LightweightTask LightweightTasks} that haven't started, or whose
+     * completion methods haven't run yet.
+     * <p>
+     * This is a bound property.  It's updated at most once per {@link
+     * #getUpdateInterval update interval}.
+     *
+     * @return the number of queued Tasks
+     * @see #getRunningTaskCount
+     */
+    public int getQueuedTaskCount() {
+        return queuedTaskCount;
+    }
+
+    /**
+     * Returns an estimate of the number of monitored Tasks that finish per
+     * second, averaged over roughly the last ten seconds.  Completed {@link
+     * LightweightTask LightweightTasks} are included.
+     * <p>
+     * This is a bound property.  It's updated at most once per {@link
+     * #getUpdateInterval update interval}.
+     *
+     * @return the number of Tasks finished per second
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Returns the {@link TaskGroup TaskGroups} of the monitored Tasks, in
+     * the order in which their first Task was executed.  A status bar can
+     * use the groups' own {@code taskCount} and {@code progress}
+     * properties to summarize the work each window has started.
+     * <p>
+     * This is a bound property.  It's updated at most once per {@link
+     * #getUpdateInterval update interval}.
+     *
+     * @return the groups of the monitored Tasks
+     * @see Task#getTaskGroup
+     */
+    public List<TaskGroup> getTaskGroups() {
+        return taskGroups;
+    }
+
+    /**
+     * True if each Task's progress is weighted by its {@link
+     * Task#getWorkUnits work units} in the {@code aggregateProgress}.
+     * <p>
+     * This property is false by default.
+     *
+     * @return true if the aggregate progress is weighted
+     * @see #setProgressWeighted
+     */
+    public boolean isProgressWeighted() {
+        return progressWeighted;
+    }
+
+    /**
+     * Specifies whether each Task's progress is weighted by its {@link
+     * Task#getWorkUnits work units} in the {@code aggregateProgress}.  If
+     * it's false, all Tasks count the same.
+     * <p>
+     * This property is false by default.
+     *
+     * @param progressWeighted true if the aggregate progress should be weighted
+     * @see #isProgressWeighted
+     * @see #getAggregateProgress
+     */
+    public void setProgressWeighted(boolean progressWeighted) {
+        boolean oldValue = this.progressWeighted;
+        this.progressWeighted = progressWeighted;
+        firePropertyChange("progressWeighted", oldValue, this.progressWeighted);
+    }
+
+    /**
+     * Returns how often, in milliseconds, the {@code aggregateProgress},
+     * {@code runningTaskCount}, {@code queuedTaskCount} and {@code
+     * throughput} properties are updated while there are Tasks to monitor.
+     * <p>
+     * The default value of this property is 250.
+     *
+     * @return the update interval in milliseconds
+     * @see #setUpdateInterval
+     */
+    public int getUpdateInterval() {
+        return statisticsTimer.getDelay();
+    }
+
+    /**
+     * Sets how often, in milliseconds, the {@code aggregateProgress},
+     * {@code runningTaskCount}, {@code queuedTaskCount} and {@code
+     * throughput} properties are updated while there are Tasks to monitor.
+     * Every update visits all of the monitored Tasks, so it shouldn't be
+     * much shorter than necessary for the GUI.
+     *
+     * @param updateInterval the update interval in milliseconds
+     * @see #getUpdateInterval
+     */
+    public void setUpdateInterval(int updateInterval) {
+        if (updateInterval <= 0) {
+            throw new IllegalArgumentException("updateInterval <= 0");
+        }
+        int oldValue = statisticsTimer.getDelay();
+        statisticsTimer.setDelay(updateInterval);
+        firePropertyChange("updateInterval", oldValue, updateInterval);
+    }
+
+    private void taskRemoved(Task task) {
+        completedSinceUpdate++;
+        batchCompletedWork += progressWeighted ? task.getWorkUnits() : 1;
+    }
+
+    private void startStatisticsTimer() {
+        if (!statisticsTimer.isRunning()) {
+            lastUpdateTime = System.nanoTime();
+            statisticsTimer.start();
+        }
+    }
+
+    /* Called by the statisticsTimer on the EDT.  The timer runs while
+     * there are Tasks to monitor, and until the throughput has decayed
+     * after the last one finished.
+     */
+    private void updateStatistics() {
+        long now = System.nanoTime();
+        double elapsed = (now - lastUpdateTime) / 1e9;
+        lastUpdateTime = now;
+
+        int running = 0;
+        int queued = 0;
+        long work = 0L;
+        long workDone = 0L;  // percent times weight
+        boolean progressKnown = false;
+        Set<TaskGroup> groups = new LinkedHashSet<TaskGroup>();
+        for (Task<?, ?> task : taskQueue.snapshot()) {
+            TaskGroup group = task.getTaskGroup();
+            if (group != null) {
+                groups.add(group);
+            }
+            if (task.isStarted()) {
+                running++;
+            } else if (task.isPending()) {
+                queued++;
+            }
+            long weight = progressWeighted ? task.getWorkUnits() : 1;
+            work += weight;
+            if (task.isProgressPropertyValid()) {
+                progressKnown = true;
+                workDone += weight * task.getProgress();
             }
-            setForegroundTask(last);
         }
+        // LightweightTasks count as Tasks but don't take part in the progress
+        int lightweight = 0;
+        long completedLightweight = 0L;
+        for (TaskService taskService : context.getTaskServices()) {
+            int count = taskService.getLightweightTaskCount();
+            int runningCount = Math.min(count, taskService.getRunningLightweightTaskCount());
+            lightweight += count;
+            running += runningCount;
+            queued += count - runningCount;
+            completedLightweight += taskService.getCompletedLightweightTaskCount();
+        }
+        completedSinceUpdate += (int) (completedLightweight - completedLightweightTaskCount);
+        completedLightweightTaskCount = completedLightweight;
+
+        int progress;
+        if (work + batchCompletedWork == 0L) {
+            progress = 0;
+        } else if (!progressKnown && (batchCompletedWork == 0L)) {
+            progress = -1;
+        } else {
+            progress = (int) ((workDone + 100L * batchCompletedWork) / (work + batchCompletedWork));
+        }
+        if (work == 0L) {
+            // The batch of Tasks is over, the next one starts from 0%
+            batchCompletedWork = 0L;
+        }
+
+        double oldThroughput = throughput;
+        if (elapsed > 0.0) {
+            double rate = completedSinceUpdate / elapsed;
+            throughput += (1.0 - Math.exp(-elapsed / THROUGHPUT_WINDOW)) * (rate - throughput);
+            completedSinceUpdate = 0;
+        }
+        if ((work == 0L) && (lightweight == 0) && (throughput < IDLE_THROUGHPUT)) {
+            throughput = 0.0;
+            statisticsTimer.stop();
+        }
+
+        int oldProgress = aggregateProgress;
+        int oldRunning = runningTaskCount;
+        int oldQueued = queuedTaskCount;
+        aggregateProgress = progress;
+        runningTaskCount = running;
+        queuedTaskCount = queued;
+        firePropertyChange(PROP_AGGREGATE_PROGRESS, oldProgress, aggregateProgress);
+        firePropertyChange(PROP_RUNNING_TASK_COUNT, oldRunning, runningTaskCount);
+        firePropertyChange(PROP_QUEUED_TASK_COUNT, oldQueued, queuedTaskCount);
+        firePropertyChange(PROP_THROUGHPUT, oldThroughput, throughput);
+        List<TaskGroup> oldTaskGroups = taskGroups;
+        taskGroups = Collections.unmodifiableList(new ArrayList<TaskGroup>(groups));
+        firePropertyChange(PROP_TASK_GROUPS, oldTaskGroups, taskGroups);
     }
 
     /* Each time an ApplicationContext TaskService is added or removed, we 
@@ -240,8 +521,10 @@ public class TaskMonitor extends AbstractBean {
                 for (TaskService oldTaskService : oldList) {
                     oldTaskService.removePropertyChangeListener(taskServicePCL);
                 }
+                completedLightweightTaskCount = 0L;
                 for (final TaskService newTaskService : newList) {
                     newTaskService.addPropertyChangeListener(taskServicePCL);
+                    completedLightweightTaskCount += newTaskService.getCompletedLightweightTaskCount();
                 }
             }
         }
@@ -256,11 +539,13 @@ public class TaskMonitor extends AbstractBean {
         @Override
         public void propertyChange(PropertyChangeEvent e) {
             String propertyName = e.getPropertyName();
-            if ("tasks".equals(propertyName)) {
+            if ("lightweightTaskCount".equals(propertyName)) {
+                startStatisticsTimer();
+            } else if ("tasks".equals(propertyName)) {
                 if (e instanceof TaskService.TaskPropertyChangeEvent) {
                     TaskService.TaskPropertyChangeEvent tpce = (TaskService.TaskPropertyChangeEvent) e;
 
-                    updateTasks(tpce.getRemoved(), tpce.getAdded());
+                    updateTasks(tpce.getRemoved(), tpce.getAddedTasks());
                 } else {
                     // I don't expect any non TPCE events to arrive but, should they, handle them
                     // correctly even if inefficiently.
@@ -303,13 +588,7 @@ public class TaskMonitor extends AbstractBean {
                 }
                 if (Task.PROP_COMPLETED.equals(propertyName)) {
                     if (autoUpdateForegroundTask) {
-                        Task last = null;
-                        List<Task<?, ?>> currentTasks = taskQueue.getList();
-
-                        if (!currentTasks.isEmpty()) {
-                            last = currentTasks.get(currentTasks.size() - 1);
-                        }
-                        setForegroundTask(last);
+                        setForegroundTask(taskQueue.last());
                     }
                 }
             }
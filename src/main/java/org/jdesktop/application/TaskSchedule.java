@@ -0,0 +1,328 @@
+package org.jdesktop.application;
+
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JRootPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * A schedule that periodically creates a new Task and executes it on a
+ * {@link TaskService}.  Schedules are created with {@link
+ * TaskService#scheduleAtFixedRate scheduleAtFixedRate} or {@link
+ * TaskService#scheduleWithFixedDelay scheduleWithFixedDelay}:
+ * <pre>
+ * Callable&lt;Task&lt;?, ?&gt;&gt; refresh = new Callable&lt;Task&lt;?, ?&gt;&gt;() {
+ *     public Task&lt;?, ?&gt; call() {
+ *         return new RefreshDashboardTask(getApplication());
+ *     }
+ * };
+ * TaskSchedule schedule = taskService.scheduleAtFixedRate(refresh, 0, 5, TimeUnit.SECONDS,
+ *         TaskSchedule.OverlapPolicy.SKIP);
+ * schedule.cancelWhenClosed(dashboardView);
+ * </pre>
+ * Each run is an ordinary Task executed by the TaskService, so it shows
+ * up in the TaskService's {@code tasks} list and in {@link TaskMonitor}
+ * like any other Task.  The Task factory is called on the EDT.
+ * <p>
+ * With a fixed rate, a run can become due while the previous one is still
+ * running.  The schedule's {@link OverlapPolicy} decides what happens then.
+ * With a fixed delay, the delay is measured from the moment the previous
+ * run is done, so runs never overlap.
+ * <p>
+ * {@link #cancel Cancelling} a schedule stops all future runs and cancels
+ * the current one.
+ *
+ * @see TaskService#scheduleAtFixedRate
+ * @see TaskService#scheduleWithFixedDelay
+ */
+public final class TaskSchedule {
+
+    private static final Logger logger = Logger.getLogger(TaskSchedule.class.getName());
+
+    /**
+     * Specifies what a fixed-rate schedule does when a run becomes due
+     * while the previous run is still in progress.
+     */
+    public enum OverlapPolicy {
+
+        /**
+         * Skip the new run, the previous one keeps running.
+         */
+        SKIP,
+        /**
+         * Cancel the previous run and start the new one.
+         */
+        CANCEL_PREVIOUS,
+        /**
+         * Start the new run, both run concurrently.
+         */
+        ALLOW
+    }
+
+    private final TaskService taskService;
+    private final Callable<? extends Task<?, ?>> taskFactory;
+    private final long period;
+    private final boolean fixedRate;
+    private final OverlapPolicy overlapPolicy;
+    private Future<?> timer = null;
+    private Task<?, ?> currentTask = null;
+    private boolean cancelled = false;
+    private int runCount = 0;
+    private int skippedCount = 0;
+
+    TaskSchedule(TaskService taskService, Callable<? extends Task<?, ?>> taskFactory, long period,
+            TimeUnit unit, boolean fixedRate, OverlapPolicy overlapPolicy) {
+        this.taskService = taskService;
+        this.taskFactory = taskFactory;
+        this.period = unit.toNanos(period);
+        this.fixedRate = fixedRate;
+        this.overlapPolicy = overlapPolicy;
+    }
+
+    void start(long initialDelay, TimeUnit unit) {
+        Runnable doTick = new Runnable() {
+
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        runNow();
+                    }
+                });
+            }
+        };
+        synchronized (this) {
+            if (fixedRate) {
+                timer = taskService.getScheduler().scheduleAtFixedRate(doTick, unit.toNanos(initialDelay), period, TimeUnit.NANOSECONDS);
+            } else {
+                timer = taskService.getScheduler().schedule(doTick, initialDelay, unit);
+            }
+        }
+    }
+
+    /* Runs on the EDT when a run is due. */
+    private void runNow() {
+        Task<?, ?> previous;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            previous = currentTask;
+            if ((previous != null) && !previous.isDone()) {
+                if (overlapPolicy == OverlapPolicy.SKIP) {
+                    skippedCount++;
+                    return;
+                }
+            } else {
+                previous = null;
+            }
+        }
+        if ((previous != null) && (overlapPolicy == OverlapPolicy.CANCEL_PREVIOUS)) {
+            previous.cancel(true);
+        }
+        Task<?, ?> task;
+        try {
+            task = taskFactory.call();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "task factory failed, run skipped", e);
+            task = null;
+        }
+        Task<?, ?> previousRun;
+        synchronized (this) {
+            previousRun = currentTask;
+            if (task == null) {
+                skippedCount++;
+            } else {
+                if (cancelled) {
+                    return;
+                }
+                currentTask = task;
+                runCount++;
+            }
+        }
+        if (task == null) {
+            scheduleNextRun();
+            return;
+        }
+        NextRunPCL nextRunPCL = null;
+        if (!fixedRate) {
+            nextRunPCL = new NextRunPCL();
+            task.addPropertyChangeListener(nextRunPCL);
+        }
+        try {
+            taskService.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (taskService.isShutdown()) {
+                cancel();
+                return;
+            }
+            // The TaskService's queue is full, this run is skipped
+            synchronized (this) {
+                if (currentTask == task) {
+                    currentTask = previousRun;
+                }
+                runCount--;
+                skippedCount++;
+            }
+            if (nextRunPCL != null) {
+                task.removePropertyChangeListener(nextRunPCL);
+                nextRunPCL.scheduleOnce();
+            }
+        }
+    }
+
+    /* With a fixed delay, the next run is scheduled when the previous one is done. */
+    private void scheduleNextRun() {
+        if (fixedRate) {
+            return;
+        }
+        synchronized (this) {
+            if (!cancelled) {
+                try {
+                    start(period, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    cancelled = true;
+                }
+            }
+        }
+    }
+
+    private class NextRunPCL implements PropertyChangeListener {
+
+        private boolean scheduled = false;  // only used on the EDT
+
+        /* A rejected Task may be done before or after runNow gives up on it. */
+        void scheduleOnce() {
+            if (!scheduled) {
+                scheduled = true;
+                scheduleNextRun();
+            }
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            if (Task.PROP_DONE.equals(e.getPropertyName())) {
+                ((Task<?, ?>) e.getSource()).removePropertyChangeListener(this);
+                scheduleOnce();
+            }
+        }
+    }
+
+    /**
+     * Stops all future runs of this schedule and cancels the current run,
+     * with {@code cancel(true)}, if it's still in progress.
+     *
+     * @see #isCancelled
+     */
+    public void cancel() {
+        Future<?> oldTimer;
+        Task<?, ?> task;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            oldTimer = timer;
+            task = currentTask;
+        }
+        if (oldTimer != null) {
+            oldTimer.cancel(false);
+        }
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Cancels this schedule when the view's window is closed, or more
+     * precisely when the view's root pane stops being displayable.
+     *
+     * @param view the View whose lifetime bounds this schedule
+     * @see #cancel
+     */
+    public void cancelWhenClosed(View view) {
+        if (view == null) {
+            throw new IllegalArgumentException("null view");
+        }
+        final JRootPane rootPane = view.getRootPane();
+        HierarchyListener closeListener = new HierarchyListener() {
+
+            @Override
+            public void hierarchyChanged(HierarchyEvent e) {
+                if (((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0) && !rootPane.isDisplayable()) {
+                    rootPane.removeHierarchyListener(this);
+                    cancel();
+                }
+            }
+        };
+        rootPane.addHierarchyListener(closeListener);
+    }
+
+    /**
+     * Returns true if this schedule has been cancelled.
+     *
+     * @return true if no more runs will be started
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the Task of the most recent run.
+     *
+     * @return the most recently started Task, or null
+     */
+    public synchronized Task<?, ?> getCurrentTask() {
+        return currentTask;
+    }
+
+    /**
+     * Returns the number of runs that have been started.
+     *
+     * @return the number of Tasks executed by this schedule
+     */
+    public synchronized int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * Returns the number of runs that were skipped because the previous
+     * run was still in progress, the Task factory didn't provide a Task or
+     * the TaskService's queue was full.
+     *
+     * @return the number of skipped runs
+     * @see OverlapPolicy#SKIP
+     */
+    public synchronized int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Returns the policy for runs that become due while the previous
+     * one is still in progress.
+     *
+     * @return the overlap policy
+     */
+    public OverlapPolicy getOverlapPolicy() {
+        return overlapPolicy;
+    }
+
+    /**
+     * Returns the TaskService that executes the runs of this schedule.
+     *
+     * @return the TaskService
+     */
+    public TaskService getTaskService() {
+        return taskService;
+    }
+}
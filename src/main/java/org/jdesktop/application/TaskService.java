@@ -7,11 +7,34 @@ package org.jdesktop.application;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.SwingUtilities;
 
 /**
@@ -22,11 +45,39 @@ import javax.swing.SwingUtilities;
  */
 public class TaskService extends AbstractBean {
     public static final String DEFAULT_NAME = "default";
+    private static final double THROUGHPUT_WINDOW = 10.0; // seconds
 
     private final String name;
     private final ExecutorService executorService;
     private final Journal tasks;
+    private volatile boolean acceptingTasks = true;
     private final PropertyChangeListener taskPCL;
+    private final PropertyChangeListener attachedTaskPCL;
+    private final Map<Object, SharedTask> sharedTasks;
+    private ResultCache resultCache = null;
+    private final Map<Object, Task<?, ?>> latestTasks;
+    private final Map<Object, Lane> lanes = new HashMap<Object, Lane>();
+    private ScheduledExecutorService scheduler = null;
+    private long defaultTimeout = 0L;
+    private volatile TaskHistory history = null;
+    private final List<TaskContextPropagator<?>> contextPropagators = new CopyOnWriteArrayList<TaskContextPropagator<?>>();
+    private volatile boolean renamingThreads = false;
+    private int activeTaskCount = 0;
+    private int queuedTaskCount = 0;
+    private long completedTaskCount = 0L;
+    private final AtomicInteger lightweightTaskCount = new AtomicInteger(0);
+    private final AtomicInteger runningLightweightTaskCount = new AtomicInteger(0);
+    private final AtomicBoolean lightweightTaskCountUpdatePending = new AtomicBoolean(false);
+    private long completedLightweightTaskCount = 0L; // only accessed on the EDT
+    private int firedLightweightTaskCount = 0; // only accessed on the EDT
+    private final LinkedList<Admission> admissionQueue = new LinkedList<Admission>();
+    private TokenBucket rateLimiter = null;
+    private boolean admissionScheduled = false;
+    private long admittedTaskCount = 0L;
+    private long totalAdmissionWait = 0L;
+    private long maximumAdmissionWait = 0L;
+    private double admissionRate = 0.0;
+    private long admissionRateTime = System.nanoTime();
 
     /**
      * Creates a new {@code TaskService}
@@ -44,6 +95,9 @@ public class TaskService extends AbstractBean {
         this.executorService = executorService;
         this.tasks = new Journal();
         this.taskPCL = new TaskPCL();
+        this.attachedTaskPCL = new AttachedTaskPCL();
+        this.sharedTasks = new HashMap<Object, SharedTask>();
+        this.latestTasks = new HashMap<Object, Task<?, ?>>();
     }
 
     /**
@@ -60,96 +114,1770 @@ public class TaskService extends AbstractBean {
                 new LinkedBlockingQueue<Runnable>()));
     }
 
+    /**
+     * Creates a new {@code TaskService} that runs its Tasks on a pool
+     * shared with other TaskServices, typically the ApplicationContext's
+     * {@link ApplicationContext#getSharedExecutor shared executor}.
+     * At most {@code maxConcurrency} of this service's Tasks run at the
+     * same time and at most {@code maxQueued} wait for their turn.
+     * Tasks executed beyond that are rejected with a
+     * {@code RejectedExecutionException}.
+     * <p>
+     * Shutting this service down doesn't shut the pool down.
+     *
+     * @param name the name of the task service
+     * @param pool the pool that runs the tasks
+     * @param maxConcurrency the maximum number of Tasks that run at the same time
+     * @param maxQueued the maximum number of Tasks waiting to run, or {@code Integer.MAX_VALUE}
+     * @see ApplicationContext#getSharedExecutor
+     */
+    public TaskService(String name, Executor pool, int maxConcurrency, int maxQueued) {
+        this(name, new LimitedExecutorService(pool, maxConcurrency, maxQueued));
+    }
+
     /**
      * Gets the name of this task service
      * @return this task service's name
      */
-    public final String getName() {
-        return name;
+    public final String getName() {
+        return name;
+    }
+
+    private class TaskPCL implements PropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            String propertyName = e.getPropertyName();
+            if (Task.PROP_STARTED.equals(propertyName)) {
+                updateTaskCounts(-1, 1, 0);
+            } else if ("done".equals(propertyName)) {
+                Task task = (Task) e.getSource();
+                if (task.isDone()) {
+                    task.removePropertyChangeListener(taskPCL);
+                    task.stopDeadline();
+
+                    List<Task<?, ?>> oldTaskList, newTaskList;
+                    synchronized (tasks) {
+                        oldTaskList = tasks.getList();
+                        tasks.remove(task);
+                        newTaskList = tasks.getList();
+                    }
+                    firePropertyChange(new TaskPropertyChangeEvent(oldTaskList, newTaskList, task, null));
+                    if (task.hasStarted()) {
+                        updateTaskCounts(0, -1, 1);
+                    } else {
+                        updateTaskCounts(-1, 0, 1);
+                    }
+
+                    Task.InputBlocker inputBlocker = task.getInputBlocker();
+                    if (inputBlocker != null) {
+                        inputBlocker.unblock();
+                    }
+
+                    if (task.getDeduplicationKey() != null) {
+                        releaseSharedTask(task);
+                    }
+                    releaseSupersedingKey(task);
+                    leaveLane(task);
+                    if (!task.getRequiredResources().isEmpty()) {
+                        task.getContext().getResourcePermits().release(task);
+                    }
+                }
+            }
+        }
+    }
+
+    /* Tracks the Tasks that were attached to an identical Task rather
+     * than executed.  They're on the tasks list like executed Tasks, but
+     * they hold no lane, resource permits or deduplication key of their own.
+     */
+    private class AttachedTaskPCL implements PropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            String propertyName = e.getPropertyName();
+            if (Task.PROP_STARTED.equals(propertyName)) {
+                updateTaskCounts(-1, 1, 0);
+            } else if ("done".equals(propertyName)) {
+                Task<?, ?> task = (Task<?, ?>) e.getSource();
+                if (task.isDone()) {
+                    task.removePropertyChangeListener(attachedTaskPCL);
+                    task.stopDeadline();
+
+                    List<Task<?, ?>> oldTaskList, newTaskList;
+                    synchronized (tasks) {
+                        oldTaskList = tasks.getList();
+                        tasks.remove(task);
+                        newTaskList = tasks.getList();
+                    }
+                    firePropertyChange(new TaskPropertyChangeEvent(oldTaskList, newTaskList, task, null));
+                    if (task.hasStarted()) {
+                        updateTaskCounts(0, -1, 1);
+                    } else {
+                        updateTaskCounts(-1, 0, 1);
+                    }
+                    TaskHistory history = TaskService.this.history;
+                    if (history != null) {
+                        // the task's wait for the shared outcome is its queue wait
+                        history.record(task, System.nanoTime() - task.getAttachTime(), 0L,
+                                historyOutcome(task, task.outcome()), Thread.currentThread().getName());
+                    }
+
+                    Task.InputBlocker inputBlocker = task.getInputBlocker();
+                    if (inputBlocker != null) {
+                        inputBlocker.unblock();
+                    }
+                    releaseSupersedingKey(task);
+                }
+            }
+        }
+    }
+
+    /* A Task with a deduplication key that's being executed, and the
+     * identical Tasks that have been attached to it in the meantime.
+     */
+    private static final class SharedTask {
+
+        final Task<?, ?> task;
+        final List<Task<?, ?>> attached = new ArrayList<Task<?, ?>>();
+
+        SharedTask(Task<?, ?> task) {
+            this.task = task;
+        }
+    }
+
+    /* Size and age bounded map of the results of the Tasks that recently
+     * succeeded, in least recently used order.
+     */
+    private static final class ResultCache extends LinkedHashMap<Object, CachedResult> {
+
+        private static final long serialVersionUID = 1L;
+        final int maximumSize;
+        final long timeToLive;
+
+        ResultCache(int maximumSize, long timeToLive) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+            this.timeToLive = timeToLive;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, CachedResult> eldest) {
+            return size() > maximumSize;
+        }
+    }
+
+    /* Only the value is kept, not the Task with its listeners and
+     * properties.
+     */
+    private static final class CachedResult {
+
+        final Object value;
+        final long expirationTime;
+
+        CachedResult(Object value, long expirationTime) {
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    /* Identical Tasks have the same class and equal deduplication keys. */
+    private static Object sharingKey(Task<?, ?> task) {
+        return Arrays.asList(task.getClass(), task.getDeduplicationKey());
+    }
+
+    /* If an identical Task is running or has a cached result, attach
+     * task to it and return true.  Otherwise register task as the one
+     * that identical Tasks will be attached to and return false.
+     */
+    private boolean attachToSharedTask(Task<?, ?> task) {
+        Object key = sharingKey(task);
+        CachedResult cached = null;
+        List<Task<?, ?>> oldTaskList, newTaskList;
+        synchronized (sharedTasks) {
+            SharedTask shared = sharedTasks.get(key);
+            if (shared == null) {
+                if (resultCache != null) {
+                    cached = resultCache.get(key);
+                    if ((cached != null) && (cached.expirationTime - System.nanoTime() <= 0L)) {
+                        resultCache.remove(key);
+                        cached = null;
+                    }
+                }
+                if (cached == null) {
+                    sharedTasks.put(key, new SharedTask(task));
+                    return false;
+                }
+            }
+            /* releaseSharedTask may complete the task on the EDT as soon as
+             * it's in shared.attached, by then it must be on the tasks list
+             * and its input must be blocked.
+             */
+            task.attach();
+            task.addPropertyChangeListener(attachedTaskPCL);
+            synchronized (tasks) {
+                oldTaskList = tasks.getList();
+                tasks.addLast(task);
+                newTaskList = tasks.getList();
+            }
+            maybeBlockTask(task);
+            if (shared != null) {
+                shared.attached.add(task);
+            }
+        }
+        firePropertyChange(new TaskPropertyChangeEvent(oldTaskList, newTaskList, null, task));
+        updateTaskCounts(1, 0, 0);
+        if (cached != null) {
+            FutureTask<Object> source = new FutureTask<Object>(NOTHING, cached.value);
+            source.run();
+            completeAttachedTask(task, source);
+        }
+        return true;
+    }
+
+    private static final Runnable NOTHING = new Runnable() {
+
+        @Override
+        public void run() {
+        }
+    };
+
+    /* Identical Tasks have the same class, so source has the result type
+     * of task.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void completeAttachedTask(Task<T, ?> task, Future<?> source) {
+        task.completeWith((Future<? extends T>) source);
+    }
+
+    /* Called on the EDT when a Task with a deduplication key is done.
+     * Completes the Tasks that were attached to it and caches its result.
+     */
+    private void releaseSharedTask(Task<?, ?> task) {
+        Object key = sharingKey(task);
+        SharedTask shared;
+        synchronized (sharedTasks) {
+            shared = sharedTasks.get(key);
+            if ((shared == null) || (shared.task != task)) {
+                return;
+            }
+            sharedTasks.remove(key);
+            if ((resultCache != null) && !task.isCancelled()) {
+                try {
+                    resultCache.put(key, new CachedResult(task.get(), System.nanoTime() + resultCache.timeToLive));
+                } catch (InterruptedException e) {
+                    // only results are cached
+                } catch (ExecutionException e) {
+                    // only results are cached
+                }
+            }
+        }
+        for (Task<?, ?> attachedTask : shared.attached) {
+            completeAttachedTask(attachedTask, task);
+        }
+    }
+
+    /**
+     * Enables caching of the results of Tasks with a {@link
+     * Task#setDeduplicationKey deduplication key}.  When such a Task
+     * succeeds, its result is kept for {@code timeToLive}.  If an
+     * identical Task is executed within that time it isn't run, instead
+     * its completion methods and TaskListeners are called with the cached
+     * result.  At most {@code maximumSize} results are kept, the least
+     * recently used ones are discarded first.
+     * <p>
+     * Setting the maximum size to zero disables the cache, which is the
+     * default.  Changing the cache settings discards all cached results.
+     *
+     * @param maximumSize the maximum number of cached results, or 0
+     * @param timeToLive how long a result is kept
+     * @param unit the time unit of {@code timeToLive}
+     * @see Task#setDeduplicationKey
+     * @see #clearResultCache
+     */
+    public void setResultCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("negative maximumSize");
+        }
+        if (timeToLive < 0L) {
+            throw new IllegalArgumentException("negative timeToLive");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("null unit");
+        }
+        synchronized (sharedTasks) {
+            resultCache = (maximumSize == 0) ? null : new ResultCache(maximumSize, unit.toNanos(timeToLive));
+        }
+    }
+
+    /**
+     * Discards all cached Task results.
+     *
+     * @see #setResultCache
+     */
+    public void clearResultCache() {
+        synchronized (sharedTasks) {
+            if (resultCache != null) {
+                resultCache.clear();
+            }
+        }
+    }
+
+    private void maybeBlockTask(Task task) {
+        final Task.InputBlocker inputBlocker = task.getInputBlocker();
+        if (inputBlocker == null) {
+            return;
+        }
+        if (inputBlocker.getScope() != Task.BlockingScope.NONE) {
+            if (SwingUtilities.isEventDispatchThread()) {
+                inputBlocker.block();
+            } else {
+                Runnable doBlockTask = new Runnable() {
+
+                    @Override
+                    public void run() {
+                        inputBlocker.block();
+                    }
+                };
+                SwingUtilities.invokeLater(doBlockTask);
+            }
+        }
+    }
+
+    /**
+     * Executes the task.
+     * <p>
+     * To run several Tasks with dependencies between them, add them to a
+     * {@link TaskGraph} and execute the graph.
+     * <p>
+     * If the task has a {@link Task#setDeduplicationKey deduplication key}
+     * and an identical Task is already running, or has a cached result,
+     * the task isn't run but completes with the outcome of the identical Task.
+     * <p>
+     * If the task has a {@link Task#setTimeout timeout}, or this service has
+     * a {@link #setDefaultTimeout default timeout}, the task is cancelled
+     * when it isn't done in time.  If this service has a {@link #setRateLimit
+     * rate limit}, the task may wait for its turn before it's started.
+     *
+     * @param task the task to be executed
+     * @see TaskGraph
+     * @see #execute(Task, Object)
+     */
+    public void execute(Task<?, ?> task) {
+        execute(task, null, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Executes the task, cancelling the previously executed Task with the
+     * same {@code supersedingKey} if it isn't done yet.
+     * <p>
+     * This supports "latest wins" use cases like search-as-you-type, where
+     * each keystroke executes a new Task and the results of older ones are
+     * no longer interesting.  The superseded Task is cancelled with
+     * {@code cancel(true)}, whether it's still waiting for a thread or
+     * already running.  Even if it has already computed its result, its
+     * {@code succeeded} method is not called if the superseding Task was
+     * executed before that happened, it's {@code cancelled} method is
+     * called instead.
+     *
+     * @param task the task to be executed
+     * @param supersedingKey identifies the Tasks that supersede each other, or null
+     * @see #execute(Task, Object, long, TimeUnit)
+     * @see Action#supersede
+     */
+    public void execute(Task<?, ?> task, Object supersedingKey) {
+        execute(task, supersedingKey, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Executes the task after the specified delay, cancelling the previously
+     * executed Task with the same {@code supersedingKey} if it isn't done yet.
+     * <p>
+     * The task is added to the {@link #getTasks tasks} list right away and
+     * stays pending until the delay has elapsed.  Combined with a superseding
+     * key the delay debounces bursts of Tasks: when a new Task is executed
+     * within the delay, the pending one is cancelled before it ever started.
+     *
+     * @param task the task to be executed
+     * @param supersedingKey identifies the Tasks that supersede each other, or null
+     * @param delay how long to wait before starting the task
+     * @param unit the time unit of {@code delay}
+     * @throws java.util.concurrent.RejectedExecutionException if this service has been
+     *         shut down or its queue is full, the task is cancelled in that case
+     * @see #execute(Task, Object)
+     * @see Action#debounce
+     */
+    public void execute(Task<?, ?> task, Object supersedingKey, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new IllegalArgumentException("null task");
+        }
+        if (delay < 0L) {
+            throw new IllegalArgumentException("negative delay");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("null unit");
+        }
+        if (!task.isPending() || (task.getTaskService() != null)) {
+            throw new IllegalArgumentException("task has already been executed");
+        }
+        if (!isAcceptingTasks()) {
+            task.cancel(false);
+            throw new RejectedExecutionException("TaskService doesn't accept new Tasks");
+        }
+        if (!prepare(task, supersedingKey, unit.toMillis(delay))) {
+            return;
+        }
+
+        List<Task<?, ?>> oldTaskList, newTaskList;
+        synchronized (tasks) {
+            oldTaskList = tasks.getList();
+            tasks.addLast(task);
+            newTaskList = tasks.getList();
+        }
+        firePropertyChange(new TaskPropertyChangeEvent(oldTaskList, newTaskList, null, task));
+        updateTaskCounts(1, 0, 0);
+
+        start(task, delay, unit);
+    }
+
+    /**
+     * Executes all of the tasks, in iteration order.
+     * <p>
+     * This is equivalent to calling {@link #execute(Task) execute} for each
+     * task, but the tasks are added to the {@link #getTasks tasks} list
+     * atomically and only one PropertyChangeEvent is fired for the {@code
+     * "tasks"} property, and for each of the task count properties.
+     * Listeners like {@link TaskMonitor} process the whole batch at once,
+     * rather than once per Task.
+     *
+     * @param tasks the tasks to be executed
+     * @throws IllegalArgumentException if {@code tasks} contains null, the
+     *         same Task twice, or a Task that has already been executed;
+     *         none of the tasks is executed in that case
+     * @throws java.util.concurrent.RejectedExecutionException if this service has been
+     *         shut down or its queue is full, the tasks that weren't handed
+     *         over to the executor are cancelled in that case
+     * @see #execute(Task)
+     */
+    public void executeAll(Collection<? extends Task<?, ?>> tasks) {
+        if (tasks == null) {
+            throw new IllegalArgumentException("null tasks");
+        }
+        Set<Task<?, ?>> unique = Collections.newSetFromMap(new IdentityHashMap<Task<?, ?>, Boolean>());
+        for (Task<?, ?> task : tasks) {
+            if (task == null) {
+                throw new IllegalArgumentException("null task");
+            }
+            if (!task.isPending() || (task.getTaskService() != null)) {
+                throw new IllegalArgumentException("task has already been executed");
+            }
+            if (!unique.add(task)) {
+                throw new IllegalArgumentException("task appears more than once");
+            }
+        }
+        if (!isAcceptingTasks()) {
+            for (Task<?, ?> task : tasks) {
+                task.cancel(false);
+            }
+            throw new RejectedExecutionException("TaskService doesn't accept new Tasks");
+        }
+        List<Task<?, ?>> added = new ArrayList<Task<?, ?>>(tasks.size());
+        for (Task<?, ?> task : tasks) {
+            if (prepare(task, null, 0L)) {
+                added.add(task);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+
+        List<Task<?, ?>> oldTaskList, newTaskList;
+        synchronized (this.tasks) {
+            oldTaskList = this.tasks.getList();
+            for (Task<?, ?> task : added) {
+                this.tasks.addLast(task);
+            }
+            newTaskList = this.tasks.getList();
+        }
+        firePropertyChange(new TaskPropertyChangeEvent(oldTaskList, newTaskList, added));
+        updateTaskCounts(added.size(), 0, 0);
+
+        for (int i = 0; i < added.size(); i++) {
+            try {
+                start(added.get(i), 0L, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                for (Task<?, ?> task : added.subList(i + 1, added.size())) {
+                    task.cancel(false);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /* Binds the task to this service and applies its superseding key,
+     * deadline and deduplication key.  Returns false if the task has been
+     * attached to an identical one, it's already on the tasks list then and
+     * mustn't be added again or started.
+     */
+    private boolean prepare(Task<?, ?> task, Object supersedingKey, long delay) {
+        task.setTaskService(this);
+        task.setTaskContext(TaskContext.capture(contextPropagators));
+        if (supersedingKey != null) {
+            supersede(task, supersedingKey);
+        }
+        startDeadline(task, delay);
+        if ((task.getDeduplicationKey() != null) && attachToSharedTask(task)) {
+            return false;
+        }
+        TaskTracer tracer = task.getContext().getTaskTracer();
+        if (tracer != null) {
+            tracer.taskQueued(task);
+        }
+        task.addPropertyChangeListener(taskPCL);
+        return true;
+    }
+
+    /* Starts a task that's been added to the tasks list. */
+    private void start(Task<?, ?> task, long delay, TimeUnit unit) {
+        maybeBlockTask(task);
+        if (delay > 0L) {
+            executeLater(task, delay, unit);
+        } else if (!admitLater(task)) {
+            try {
+                dispatch(task);
+            } catch (RejectedExecutionException e) {
+                // the "done" listener removes the task from the tasks list
+                task.cancel(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Executes a {@link LightweightTask}.
+     * <p>
+     * LightweightTasks are handed straight to this service's executor.
+     * They don't take part in deduplication, superseding, timeouts or the
+     * rate limit, and they aren't added to the {@link #getTasks tasks}
+     * list.  Each one makes a single trip to the EDT when it's complete,
+     * see {@link #getLightweightTaskCount}.
+     *
+     * @param task the lightweight task to be executed
+     * @throws java.util.concurrent.RejectedExecutionException if this service has been
+     *         shut down or its queue is full, the task is cancelled in that case
+     * @see #execute(Task)
+     */
+    public void execute(LightweightTask<?> task) {
+        if (task == null) {
+            throw new IllegalArgumentException("null task");
+        }
+        task.setTaskService(this);
+        lightweightTaskCount.incrementAndGet();
+        updateLightweightTaskCount();
+        try {
+            if (!isAcceptingTasks()) {
+                throw new RejectedExecutionException("TaskService doesn't accept new Tasks");
+            }
+            executorService.execute(task);
+        } catch (RejectedExecutionException e) {
+            // completing the cancelled task decrements the lightweightTaskCount
+            task.cancel(false);
+            throw e;
+        }
+    }
+
+    void lightweightTaskStarted() {
+        runningLightweightTaskCount.incrementAndGet();
+    }
+
+    void lightweightTaskStopped() {
+        runningLightweightTaskCount.decrementAndGet();
+    }
+
+    /* Called on the EDT, after a LightweightTask's finished method. */
+    void lightweightTaskCompleted() {
+        lightweightTaskCount.decrementAndGet();
+        completedLightweightTaskCount++;
+        updateTaskCounts(0, 0, 1);
+        updateLightweightTaskCount();
+    }
+
+    /* Fires the lightweightTaskCount property.  Off the EDT the events are
+     * coalesced, so that executing many LightweightTasks from a background
+     * thread costs one trip to the EDT rather than one per Task.
+     */
+    private void updateLightweightTaskCount() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            fireLightweightTaskCount();
+        } else if (lightweightTaskCountUpdatePending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    lightweightTaskCountUpdatePending.set(false);
+                    fireLightweightTaskCount();
+                }
+            });
+        }
+    }
+
+    private void fireLightweightTaskCount() {
+        int oldValue = firedLightweightTaskCount;
+        firedLightweightTaskCount = lightweightTaskCount.get();
+        firePropertyChange("lightweightTaskCount", oldValue, firedLightweightTaskCount);
+    }
+
+    /**
+     * Returns the number of {@link LightweightTask LightweightTasks} this
+     * service has executed that aren't complete yet, i.e. whose {@code
+     * finished} method hasn't run.
+     * <p>
+     * This is a bound property, but its PropertyChangeEvents are coalesced:
+     * when LightweightTasks are executed off the EDT, one event may cover
+     * several of them.  Completed LightweightTasks are also counted in the
+     * {@link #getCompletedTaskCount completedTaskCount}.
+     *
+     * @return the number of incomplete LightweightTasks
+     * @see #execute(LightweightTask)
+     */
+    public int getLightweightTaskCount() {
+        return lightweightTaskCount.get();
+    }
+
+    /* The number of LightweightTasks whose doInBackground method is running. */
+    int getRunningLightweightTaskCount() {
+        return runningLightweightTaskCount.get();
+    }
+
+    /* The number of LightweightTasks that have completed, only called on the EDT. */
+    long getCompletedLightweightTaskCount() {
+        return completedLightweightTaskCount;
+    }
+
+    /**
+     * Executes the task and calls {@code callback} with its outcome once
+     * it's complete.  The callback runs on {@code executor}, or on the EDT
+     * if {@code executor} is null.
+     * <p>
+     * This lets code that doesn't run on the EDT compose Tasks with other
+     * asynchronous work without blocking a thread on {@code get()}.
+     *
+     * @param <T> the result type of the task
+     * @param task the task to be executed
+     * @param callback receives the result, or the reason the task didn't succeed
+     * @param executor runs the callback, or null for the EDT
+     * @return the task's outcome, as a Future
+     * @throws java.util.concurrent.RejectedExecutionException if this service has been
+     *         shut down or its queue is full, the callback is told that the task
+     *         was cancelled in that case
+     * @see Task#whenCompleted
+     * @see #execute(Task)
+     */
+    public <T> Future<T> submit(Task<T, ?> task, TaskCallback<? super T> callback, Executor executor) {
+        if (task == null) {
+            throw new IllegalArgumentException("null task");
+        }
+        if (callback == null) {
+            throw new IllegalArgumentException("null callback");
+        }
+        task.whenCompleted(callback, executor);
+        execute(task);
+        return task.outcome();
+    }
+
+    /**
+     * Periodically executes a new Task, created by {@code taskFactory}, at a
+     * fixed rate.  The first run starts after {@code initialDelay}, the next
+     * ones {@code period} apart.  If a run becomes due while the previous one
+     * is still in progress, {@code overlapPolicy} decides whether it's skipped,
+     * replaces the previous one or runs concurrently.
+     * <p>
+     * The factory is called on the EDT and each Task it returns is executed
+     * like any other Task, so it appears in the {@link #getTasks tasks} list.
+     * If the factory throws an exception or returns null, that run is skipped.
+     * The schedule ends when it's {@link TaskSchedule#cancel cancelled} or
+     * when this service is shut down.
+     *
+     * @param taskFactory creates the Task for each run
+     * @param initialDelay the delay before the first run
+     * @param period the time between the starts of consecutive runs
+     * @param unit the time unit of {@code initialDelay} and {@code period}
+     * @param overlapPolicy what to do when a run is due while the previous one is in progress
+     * @return the schedule, which can be used to cancel the runs
+     * @throws java.util.concurrent.RejectedExecutionException if this service has been shut down
+     * @see #scheduleWithFixedDelay
+     */
+    public TaskSchedule scheduleAtFixedRate(Callable<? extends Task<?, ?>> taskFactory, long initialDelay, long period,
+            TimeUnit unit, TaskSchedule.OverlapPolicy overlapPolicy) {
+        if (overlapPolicy == null) {
+            throw new IllegalArgumentException("null overlapPolicy");
+        }
+        return schedule(taskFactory, initialDelay, period, unit, true, overlapPolicy);
+    }
+
+    /**
+     * Periodically executes a new Task, created by {@code taskFactory}, with
+     * a fixed delay between the end of one run and the start of the next.
+     * The first run starts after {@code initialDelay}.  Runs never overlap.
+     * <p>
+     * The factory is called on the EDT and each Task it returns is executed
+     * like any other Task, so it appears in the {@link #getTasks tasks} list.
+     * If the factory throws an exception or returns null, that run is skipped.
+     * The schedule ends when it's {@link TaskSchedule#cancel cancelled} or
+     * when this service is shut down.
+     *
+     * @param taskFactory creates the Task for each run
+     * @param initialDelay the delay before the first run
+     * @param delay the time between the end of one run and the start of the next
+     * @param unit the time unit of {@code initialDelay} and {@code delay}
+     * @return the schedule, which can be used to cancel the runs
+     * @throws java.util.concurrent.RejectedExecutionException if this service has been shut down
+     * @see #scheduleAtFixedRate
+     */
+    public TaskSchedule scheduleWithFixedDelay(Callable<? extends Task<?, ?>> taskFactory, long initialDelay, long delay,
+            TimeUnit unit) {
+        return schedule(taskFactory, initialDelay, delay, unit, false, TaskSchedule.OverlapPolicy.SKIP);
+    }
+
+    private TaskSchedule schedule(Callable<? extends Task<?, ?>> taskFactory, long initialDelay, long period,
+            TimeUnit unit, boolean fixedRate, TaskSchedule.OverlapPolicy overlapPolicy) {
+        if (taskFactory == null) {
+            throw new IllegalArgumentException("null taskFactory");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("null unit");
+        }
+        if ((initialDelay < 0L) || (period <= 0L)) {
+            throw new IllegalArgumentException("invalid delays");
+        }
+        if (!isAcceptingTasks()) {
+            throw new RejectedExecutionException("TaskService doesn't accept new Tasks");
+        }
+        TaskSchedule schedule = new TaskSchedule(this, taskFactory, period, unit, fixedRate, overlapPolicy);
+        schedule.start(initialDelay, unit);
+        return schedule;
+    }
+
+    /* The deadline timer is scheduled before the task is handed to the
+     * executor, so a task that never gets a thread still times out.
+     */
+    private void startDeadline(final Task<?, ?> task, long delay) {
+        long timeout = task.getTimeout(TimeUnit.MILLISECONDS);
+        if (timeout == 0L) {
+            timeout = getDefaultTimeout(TimeUnit.MILLISECONDS);
+        }
+        if (timeout > 0L) {
+            Runnable doTimeOut = new Runnable() {
+
+                @Override
+                public void run() {
+                    task.timeOut();
+                }
+            };
+            task.startDeadline(delay, timeout, getScheduler().schedule(doTimeOut, delay + timeout, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void supersede(Task<?, ?> task, Object supersedingKey) {
+        Task<?, ?> previous;
+        task.setSupersedingKey(supersedingKey);
+        synchronized (latestTasks) {
+            previous = latestTasks.put(supersedingKey, task);
+        }
+        if (previous != null) {
+            previous.supersede();
+        }
+    }
+
+    private void releaseSupersedingKey(Task<?, ?> task) {
+        Object supersedingKey = task.getSupersedingKey();
+        if (supersedingKey != null) {
+            synchronized (latestTasks) {
+                if (latestTasks.get(supersedingKey) == task) {
+                    latestTasks.remove(supersedingKey);
+                }
+            }
+        }
+    }
+
+    private void executeLater(final Task<?, ?> task, long delay, TimeUnit unit) {
+        Runnable doExecute = new Runnable() {
+
+            @Override
+            public void run() {
+                if (!task.isDone() && !admitLater(task)) {
+                    try {
+                        dispatch(task);
+                    } catch (RejectedExecutionException e) {
+                        task.cancel(false);
+                    }
+                }
+            }
+        };
+        getScheduler().schedule(doExecute, delay, unit);
+    }
+
+    /* Takes the permits of the resources the task requires and hands it
+     * over, or leaves it waiting for them without occupying a thread.
+     */
+    private void dispatch(final Task<?, ?> task) {
+        if (!task.getRequiredResources().isEmpty()) {
+            Runnable doHandOver = new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!task.isDone()) {
+                        try {
+                            handOver(task);
+                        } catch (RejectedExecutionException e) {
+                            task.cancel(false);
+                        }
+                    }
+                }
+            };
+            if (!task.getContext().getResourcePermits().acquire(task, doHandOver)) {
+                return;
+            }
+        }
+        handOver(task);
+    }
+
+    /* Hands the task over to the executor, or to the lane of its ordering
+     * key.  A RetryingTask runs its attempts on the executor and only runs
+     * itself once they're over.
+     */
+    private void handOver(Task<?, ?> task) {
+        Executor executor = executorService;
+        if (task.getOrderingKey() != null) {
+            executor = enterLane(task);
+        }
+        if (!task.getRequiredResources().isEmpty()) {
+            executor = new PermitExecutor(executor, task);
+        }
+        TaskHistory history = this.history;
+        TaskTracer tracer = task.getContext().getTaskTracer();
+        if ((history != null) || (tracer != null)) {
+            executor = new RecordingExecutor(executor, task, history, tracer);
+        }
+        boolean rename = renamingThreads;
+        if ((task.getTaskContext() != null) || rename) {
+            executor = new ContextExecutor(executor, task, rename);
+        }
+        if (task instanceof RetryingTask) {
+            ((RetryingTask<?, ?>) task).executeAttempts(executor, getScheduler());
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    /* Times the runnables of one Task, i.e. the Task itself or the attempts
+     * of a RetryingTask.  Each run is traced, and the Task is recorded in
+     * the history once a runnable finds it done.  Either may be null.
+     */
+    private static final class RecordingExecutor implements Executor {
+
+        final Executor executor;
+        final Task<?, ?> task;
+        final TaskHistory history;
+        final TaskTracer tracer;
+        final long dispatchTime = System.nanoTime();
+        volatile long startTime = -1L;
+        final AtomicBoolean recorded = new AtomicBoolean(false);
+
+        RecordingExecutor(Executor executor, Task<?, ?> task, TaskHistory history, TaskTracer tracer) {
+            this.executor = executor;
+            this.task = task;
+            this.history = history;
+            this.tracer = tracer;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            executor.execute(new RecordedRun(this, runnable));
+        }
+
+        void ran(boolean first, long runStartTime) {
+            if (tracer != null) {
+                tracer.taskRan(task, first, runStartTime, System.nanoTime());
+            }
+            if (history != null) {
+                recordIfDone();
+            }
+        }
+
+        private void recordIfDone() {
+            if (!task.isDone() || !recorded.compareAndSet(false, true)) {
+                return;
+            }
+            long now = System.nanoTime();
+            history.record(task, startTime - dispatchTime, now - startTime,
+                    historyOutcome(task, task), Thread.currentThread().getName());
+        }
+    }
+
+    /* The outcome of task as recorded in the TaskHistory, which is the
+     * outcome of future: the task itself, or the shared outcome of an
+     * attached task.  The task must be done.
+     */
+    private static TaskHistory.Outcome historyOutcome(Task<?, ?> task, Future<?> future) {
+        if (task.isTimedOut()) {
+            return TaskHistory.Outcome.TIMED_OUT;
+        } else if (future.isCancelled()) {
+            return TaskHistory.Outcome.CANCELLED;
+        }
+        try {
+            future.get();
+            return TaskHistory.Outcome.SUCCEEDED;
+        } catch (ExecutionException e) {
+            return TaskHistory.Outcome.FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return TaskHistory.Outcome.FAILED;
+        }
+    }
+
+    private static final class RecordedRun implements Runnable {
+
+        final RecordingExecutor recorder;
+        final Runnable runnable;
+
+        RecordedRun(RecordingExecutor recorder, Runnable runnable) {
+            this.recorder = recorder;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            long runStartTime = System.nanoTime();
+            boolean first = (recorder.startTime == -1L);
+            if (first) {
+                recorder.startTime = runStartTime;
+            }
+            try {
+                runnable.run();
+            } finally {
+                recorder.ran(first, runStartTime);
+            }
+        }
+    }
+
+    /* Returns the permits of the Task's required resources as soon as one
+     * of its runnables finds it done, so the Tasks that are waiting for
+     * them get them on this thread rather than after a trip to the EDT.
+     * The done handling releases them too, which is harmless.
+     */
+    private static final class PermitExecutor implements Executor {
+
+        final Executor executor;
+        final Task<?, ?> task;
+
+        PermitExecutor(Executor executor, Task<?, ?> task) {
+            this.executor = executor;
+            this.task = task;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            executor.execute(new PermitRun(this, runnable));
+        }
+    }
+
+    private static final class PermitRun implements Runnable {
+
+        final PermitExecutor executor;
+        final Runnable runnable;
+
+        PermitRun(PermitExecutor executor, Runnable runnable) {
+            this.executor = executor;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            try {
+                runnable.run();
+            } finally {
+                Task<?, ?> task = executor.task;
+                if (task.isDone()) {
+                    task.getContext().getResourcePermits().release(task);
+                }
+            }
+        }
+    }
+
+    /* Installs the context the Task was executed in, and renames the
+     * thread after the Task, while one of its runnables runs.
+     */
+    private static final class ContextExecutor implements Executor {
+
+        final Executor executor;
+        final Task<?, ?> task;
+        final boolean rename;
+
+        ContextExecutor(Executor executor, Task<?, ?> task, boolean rename) {
+            this.executor = executor;
+            this.task = task;
+            this.rename = rename;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            executor.execute(new ContextRun(this, runnable));
+        }
+    }
+
+    private static final class ContextRun implements Runnable {
+
+        final ContextExecutor executor;
+        final Runnable runnable;
+
+        ContextRun(ContextExecutor executor, Runnable runnable) {
+            this.executor = executor;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            Task<?, ?> task = executor.task;
+            Thread thread = Thread.currentThread();
+            String threadName = null;
+            if (executor.rename) {
+                threadName = thread.getName();
+                String title = task.getTitle();
+                thread.setName(threadName + " [" + ((title != null) ? title : task.getClass().getName()) + "]");
+            }
+            TaskContext context = task.getTaskContext();
+            try {
+                Object[] previous = (context != null) ? context.install() : null;
+                try {
+                    runnable.run();
+                } finally {
+                    if (previous != null) {
+                        context.uninstall(previous);
+                    }
+                }
+            } finally {
+                if (threadName != null) {
+                    thread.setName(threadName);
+                }
+            }
+        }
+    }
+
+    /* The Tasks with one ordering key that have been dispatched and aren't
+     * done yet.  They run one at a time: the next one is handed to the
+     * executor once the current one is done and none of its runnables is
+     * still running, so a RetryingTask keeps its lane while it backs off.
+     * Guarded by lanes.
+     */
+    private final class Lane {
+
+        final Object orderingKey;
+        final Map<Task<?, ?>, LaneEntry> entries = new IdentityHashMap<Task<?, ?>, LaneEntry>();
+        final LinkedList<LaneEntry> waiting = new LinkedList<LaneEntry>();
+        LaneEntry current = null;
+
+        Lane(Object orderingKey) {
+            this.orderingKey = orderingKey;
+        }
+    }
+
+    /* The executor that one Task of a lane hands its runnables to.  They
+     * are held back until the Task is the current one of its lane.
+     */
+    private final class LaneEntry implements Executor {
+
+        final Lane lane;
+        final Task<?, ?> task;
+        final List<Runnable> held = new ArrayList<Runnable>();   // guarded by lanes
+        int running = 0;                                          // guarded by lanes
+
+        LaneEntry(Lane lane, Task<?, ?> task) {
+            this.lane = lane;
+            this.task = task;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            synchronized (lanes) {
+                if (lane.current != this) {
+                    held.add(runnable);
+                    return;
+                }
+                running++;
+            }
+            try {
+                executorService.execute(new LaneRun(this, runnable));
+            } catch (RuntimeException e) {
+                ran();
+                throw e;
+            }
+        }
+
+        /* Called when one of the Task's runnables has returned. */
+        void ran() {
+            synchronized (lanes) {
+                running--;
+            }
+            advanceLane(this);
+        }
+    }
+
+    private static final class LaneRun implements Runnable {
+
+        final LaneEntry entry;
+        final Runnable runnable;
+
+        LaneRun(LaneEntry entry, Runnable runnable) {
+            this.entry = entry;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            try {
+                runnable.run();
+            } finally {
+                entry.ran();
+            }
+        }
+    }
+
+    private Executor enterLane(Task<?, ?> task) {
+        Object orderingKey = task.getOrderingKey();
+        synchronized (lanes) {
+            Lane lane = lanes.get(orderingKey);
+            if (lane == null) {
+                lane = new Lane(orderingKey);
+                lanes.put(orderingKey, lane);
+            }
+            LaneEntry entry = new LaneEntry(lane, task);
+            lane.entries.put(task, entry);
+            if (lane.current == null) {
+                lane.current = entry;
+            } else {
+                lane.waiting.add(entry);
+            }
+            return entry;
+        }
+    }
+
+    /* Makes the next Task of the lane the current one if the entry's Task
+     * is done and none of its runnables is running anymore.  Called on the
+     * worker thread when a runnable returns and on the EDT when the Task
+     * is done, whichever comes last advances the lane.
+     */
+    private void advanceLane(LaneEntry entry) {
+        LaneEntry next;
+        List<Runnable> runnables;
+        synchronized (lanes) {
+            Lane lane = entry.lane;
+            if ((lane.current != entry) || (entry.running > 0) || !entry.task.isDone()) {
+                return;
+            }
+            next = lane.waiting.poll();
+            lane.current = next;
+            if (next == null) {
+                removeLaneIfEmpty(lane);
+                return;
+            }
+            runnables = new ArrayList<Runnable>(next.held);
+            next.held.clear();
+            next.running += runnables.size();
+        }
+        for (Runnable runnable : runnables) {
+            try {
+                executorService.execute(new LaneRun(next, runnable));
+            } catch (RejectedExecutionException e) {
+                next.task.cancel(false);
+                next.ran();
+            }
+        }
     }
 
-    private class TaskPCL implements PropertyChangeListener {
+    private void removeLaneIfEmpty(Lane lane) {
+        if ((lane.current == null) && lane.entries.isEmpty() && (lanes.get(lane.orderingKey) == lane)) {
+            lanes.remove(lane.orderingKey);
+        }
+    }
 
-        @Override
-        public void propertyChange(PropertyChangeEvent e) {
-            String propertyName = e.getPropertyName();
-            if ("done".equals(propertyName)) {
-                Task task = (Task) e.getSource();
-                if (task.isDone()) {
-                    task.removePropertyChangeListener(taskPCL);
+    /* Called when a Task is done.  The lane is dropped once its last Task
+     * is done, the next Task with the same key starts a new one.  The
+     * runnables of a Task that's done before its turn came, because it was
+     * cancelled, don't have to wait for it anymore: they return right away.
+     */
+    private void leaveLane(Task<?, ?> task) {
+        Object orderingKey = task.getOrderingKey();
+        if (orderingKey == null) {
+            return;
+        }
+        LaneEntry entry;
+        List<Runnable> skipped = null;
+        synchronized (lanes) {
+            Lane lane = lanes.get(orderingKey);
+            entry = (lane != null) ? lane.entries.remove(task) : null;
+            if (entry == null) {
+                return;
+            }
+            if (lane.waiting.remove(entry)) {
+                skipped = new ArrayList<Runnable>(entry.held);
+                entry.held.clear();
+            }
+            removeLaneIfEmpty(lane);
+        }
+        if (skipped != null) {
+            for (Runnable runnable : skipped) {
+                try {
+                    executorService.execute(runnable);
+                } catch (RejectedExecutionException e) {
+                    // the Task is done, nothing is lost
+                }
+            }
+        } else {
+            advanceLane(entry);
+        }
+    }
 
-                    List<Task<?, ?>> oldTaskList, newTaskList;
-                    synchronized (tasks) {
-                        oldTaskList = tasks.getList();
-                        tasks.remove(task);
-                        newTaskList = tasks.getList();
-                    }
-                    firePropertyChange(new TaskPropertyChangeEvent(oldTaskList, newTaskList, task, null));
+    /**
+     * Returns the number of Tasks with the specified {@link
+     * Task#setOrderingKey ordering key} that have been handed to this
+     * service's executor and aren't done yet, i.e. the one that's running
+     * and the ones that are waiting for it.  Tasks that are still waiting
+     * for a delay or for the rate limit aren't included.
+     *
+     * @param orderingKey the ordering key of the lane
+     * @return the number of Tasks in the lane, 0 if there's no such lane
+     * @see #getOrderingKeys
+     */
+    public int getLaneDepth(Object orderingKey) {
+        if (orderingKey == null) {
+            throw new IllegalArgumentException("null orderingKey");
+        }
+        synchronized (lanes) {
+            Lane lane = lanes.get(orderingKey);
+            return (lane == null) ? 0 : lane.entries.size();
+        }
+    }
 
-                    Task.InputBlocker inputBlocker = task.getInputBlocker();
-                    if (inputBlocker != null) {
-                        inputBlocker.unblock();
-                    }
-                }
+    /**
+     * Returns the ordering keys of the lanes that have Tasks which aren't
+     * done yet.
+     *
+     * @return a copy of the set of ordering keys in use
+     * @see #getLaneDepth
+     * @see Task#setOrderingKey
+     */
+    public Set<Object> getOrderingKeys() {
+        synchronized (lanes) {
+            return new HashSet<Object>(lanes.keySet());
+        }
+    }
+
+    /* Returns the Task behind a Runnable that's waiting in the executor's
+     * queue, or null.
+     */
+    private static Task<?, ?> taskOf(Runnable runnable) {
+        if (runnable instanceof LaneRun) {
+            runnable = ((LaneRun) runnable).runnable;
+        }
+        if (runnable instanceof PermitRun) {
+            runnable = ((PermitRun) runnable).runnable;
+        }
+        if (runnable instanceof RecordedRun) {
+            runnable = ((RecordedRun) runnable).runnable;
+        }
+        if (runnable instanceof ContextRun) {
+            runnable = ((ContextRun) runnable).runnable;
+        }
+        if (runnable instanceof Task) {
+            return (Task<?, ?>) runnable;
+        } else if (runnable instanceof RetryingTask.Attempt) {
+            return ((RetryingTask.Attempt) runnable).getTask();
+        }
+        return null;
+    }
+
+    /* A Task waiting for the rate limiter to admit it. */
+    private static final class Admission {
+
+        final Task<?, ?> task;
+        final long enqueueTime;
+
+        Admission(Task<?, ?> task, long enqueueTime) {
+            this.task = task;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    /* Holds up to capacity tokens and gains one every nanosPerToken.
+     * Each Task start takes a token.
+     */
+    private static final class TokenBucket {
+
+        final double nanosPerToken;
+        final double capacity;
+        double tokens;
+        long refillTime;
+
+        TokenBucket(double tasksPerSecond, int burst) {
+            this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / tasksPerSecond;
+            this.capacity = burst;
+            this.tokens = burst;
+            this.refillTime = System.nanoTime();
+        }
+
+        /* Takes a token and returns 0 or, if there isn't one, returns
+         * the number of nanoseconds until there will be.
+         */
+        long tryAcquire(long now) {
+            tokens = Math.min(capacity, tokens + ((now - refillTime) / nanosPerToken));
+            refillTime = now;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return 0L;
             }
+            return (long) Math.ceil((1.0 - tokens) * nanosPerToken);
         }
     }
 
-    private void maybeBlockTask(Task task) {
-        final Task.InputBlocker inputBlocker = task.getInputBlocker();
-        if (inputBlocker == null) {
-            return;
+    /* Returns false if the task may be handed to the executor right away.
+     * Otherwise the task is queued until the rate limiter admits it.
+     */
+    private boolean admitLater(Task<?, ?> task) {
+        long now = System.nanoTime();
+        synchronized (admissionQueue) {
+            if ((rateLimiter == null) || (admissionQueue.isEmpty() && (rateLimiter.tryAcquire(now) == 0L))) {
+                recordAdmission(0L, now);
+                return false;
+            }
+            admissionQueue.addLast(new Admission(task, now));
         }
-        if (inputBlocker.getScope() != Task.BlockingScope.NONE) {
-            if (SwingUtilities.isEventDispatchThread()) {
-                inputBlocker.block();
-            } else {
-                Runnable doBlockTask = new Runnable() {
+        admitQueuedTasks();
+        return true;
+    }
 
-                    @Override
-                    public void run() {
-                        inputBlocker.block();
+    /* Hands the queued Tasks that the rate limiter admits now to the
+     * executor, in FIFO order, and schedules another run for when the
+     * next token is available.  Cancelled Tasks are simply dropped.
+     */
+    private void admitQueuedTasks() {
+        List<Task<?, ?>> admitted = new ArrayList<Task<?, ?>>();
+        List<Task<?, ?>> orphans = null;
+        synchronized (admissionQueue) {
+            long now = System.nanoTime();
+            while (!admissionQueue.isEmpty()) {
+                Admission admission = admissionQueue.getFirst();
+                if (admission.task.isDone()) {
+                    admissionQueue.removeFirst();
+                    continue;
+                }
+                long wait = (rateLimiter == null) ? 0L : rateLimiter.tryAcquire(now);
+                if (wait > 0L) {
+                    if (!admissionScheduled) {
+                        Runnable doAdmit = new Runnable() {
+
+                            @Override
+                            public void run() {
+                                synchronized (admissionQueue) {
+                                    admissionScheduled = false;
+                                }
+                                admitQueuedTasks();
+                            }
+                        };
+                        try {
+                            getScheduler().schedule(doAdmit, wait, TimeUnit.NANOSECONDS);
+                            admissionScheduled = true;
+                        } catch (RejectedExecutionException e) {
+                            // This service has been shut down
+                            orphans = new ArrayList<Task<?, ?>>();
+                            for (Admission orphan : admissionQueue) {
+                                orphans.add(orphan.task);
+                            }
+                            admissionQueue.clear();
+                        }
                     }
-                };
-                SwingUtilities.invokeLater(doBlockTask);
+                    break;
+                }
+                admissionQueue.removeFirst();
+                recordAdmission(now - admission.enqueueTime, now);
+                admitted.add(admission.task);
+            }
+        }
+        for (Task<?, ?> task : admitted) {
+            try {
+                dispatch(task);
+            } catch (RejectedExecutionException e) {
+                task.cancel(false);
+            }
+        }
+        if (orphans != null) {
+            for (Task<?, ?> task : orphans) {
+                task.cancel(false);
             }
         }
     }
 
+    /* Must be called with the admissionQueue lock held.  The throughput
+     * is an exponentially weighted moving average with a time constant
+     * of THROUGHPUT_WINDOW.
+     */
+    private void recordAdmission(long wait, long now) {
+        admittedTaskCount++;
+        totalAdmissionWait += wait;
+        maximumAdmissionWait = Math.max(maximumAdmissionWait, wait);
+        admissionRate = decayedAdmissionRate(now) + (1.0 / THROUGHPUT_WINDOW);
+        admissionRateTime = now;
+    }
+
+    /* Must be called with the admissionQueue lock held. */
+    private double decayedAdmissionRate(long now) {
+        double dt = (now - admissionRateTime) / (double) TimeUnit.SECONDS.toNanos(1);
+        return admissionRate * Math.exp(-dt / THROUGHPUT_WINDOW);
+    }
+
     /**
-     * Executes the task.
+     * Limits the rate at which this service starts Tasks.  The limiter
+     * is a token bucket: up to {@code burst} Tasks may start at once,
+     * after that Tasks start at a rate of {@code tasksPerSecond}.
+     * <p>
+     * Tasks that wait for the rate limiter are in the {@link #getTasks
+     * tasks} list, so a TaskMonitor shows them, and they can be cancelled
+     * like any other pending Task.  They don't hold a thread while waiting.
+     * Tasks start in the order they were executed.
+     * <p>
+     * A rate of 0 removes the limit, which is the default.  The Tasks that
+     * are waiting at that point start right away.
      *
-     * @param task the task to be executed
+     * @param tasksPerSecond the sustained rate at which Tasks may start, or 0
+     * @param burst the number of Tasks that may start at once
+     * @see #getThroughput
+     * @see #getAverageAdmissionWait
      */
-    public void execute(Task<?, ?> task) {
-        if (task == null) {
-            throw new IllegalArgumentException("null task");
+    public void setRateLimit(double tasksPerSecond, int burst) {
+        if (tasksPerSecond < 0.0 || Double.isNaN(tasksPerSecond) || Double.isInfinite(tasksPerSecond)) {
+            throw new IllegalArgumentException("invalid tasksPerSecond");
         }
-        if (!task.isPending() || (task.getTaskService() != null)) {
-            throw new IllegalArgumentException("task has already been executed");
+        if ((tasksPerSecond > 0.0) && (burst < 1)) {
+            throw new IllegalArgumentException("burst < 1");
         }
-        task.setTaskService(this);
-        // TBD: what if task has already been submitted?
-        task.addPropertyChangeListener(taskPCL);
+        synchronized (admissionQueue) {
+            rateLimiter = (tasksPerSecond == 0.0) ? null : new TokenBucket(tasksPerSecond, burst);
+        }
+        admitQueuedTasks();
+    }
 
-        List<Task<?, ?>> oldTaskList, newTaskList;
-        synchronized (tasks) {
-            oldTaskList = tasks.getList();
-            tasks.addLast(task);
-            newTaskList = tasks.getList();
+    /**
+     * Returns the number of Tasks this service has started per second,
+     * averaged over roughly the last 10 seconds.
+     *
+     * @return the recent Task start rate
+     * @see #setRateLimit
+     */
+    public double getThroughput() {
+        synchronized (admissionQueue) {
+            return decayedAdmissionRate(System.nanoTime());
         }
-        firePropertyChange(new TaskPropertyChangeEvent(oldTaskList, newTaskList, null, task));
+    }
 
-        maybeBlockTask(task);
-        executorService.execute(task);
+    /**
+     * Returns the number of Tasks this service has handed over to its
+     * executor.  Tasks that were cancelled while waiting for their
+     * start delay or for the rate limiter aren't included.
+     *
+     * @return the number of started Tasks
+     * @see #getAverageAdmissionWait
+     */
+    public long getAdmittedTaskCount() {
+        synchronized (admissionQueue) {
+            return admittedTaskCount;
+        }
+    }
+
+    /**
+     * Returns the average time that Tasks waited for the
+     * {@link #setRateLimit rate limiter} before they were handed over to
+     * the executor.  Tasks that didn't have to wait count as 0.
+     *
+     * @param unit the time unit of the return value
+     * @return the average admission wait time
+     * @see #getMaximumAdmissionWait
+     */
+    public long getAverageAdmissionWait(TimeUnit unit) {
+        synchronized (admissionQueue) {
+            long average = (admittedTaskCount == 0L) ? 0L : totalAdmissionWait / admittedTaskCount;
+            return unit.convert(average, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns the longest time a Task waited for the
+     * {@link #setRateLimit rate limiter}.
+     *
+     * @param unit the time unit of the return value
+     * @return the maximum admission wait time
+     * @see #getAverageAdmissionWait
+     */
+    public long getMaximumAdmissionWait(TimeUnit unit) {
+        synchronized (admissionQueue) {
+            return unit.convert(maximumAdmissionWait, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns the history in which this service records its completed
+     * Tasks.
+     *
+     * @return the history, or null if completed Tasks aren't recorded
+     * @see #setHistory
+     */
+    public TaskHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Sets the history in which this service records each Task it
+     * executes, once the Task is done.  It applies to the Tasks handed
+     * over to the executor afterwards, and it can be shared with other
+     * TaskServices.  LightweightTasks and Tasks that were cancelled before
+     * they were handed over to the executor aren't recorded.
+     * <p>
+     * The default is null, no history.
+     *
+     * @param history the history of this service's Tasks, or null
+     * @see TaskHistory
+     */
+    public void setHistory(TaskHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Adds a propagator of thread-bound context to this service.  The
+     * context is captured when a Task is executed, and installed while
+     * the Task runs in the background and while its callbacks run on the
+     * EDT.  It applies to the Tasks executed afterwards.
+     *
+     * @param propagator the propagator to add
+     * @see #removeContextPropagator
+     * @see TaskContextPropagator
+     */
+    public void addContextPropagator(TaskContextPropagator<?> propagator) {
+        if (propagator == null) {
+            throw new IllegalArgumentException("null propagator");
+        }
+        contextPropagators.add(propagator);
+    }
+
+    /**
+     * Removes a propagator of thread-bound context from this service.
+     *
+     * @param propagator the propagator to remove
+     * @see #addContextPropagator
+     */
+    public void removeContextPropagator(TaskContextPropagator<?> propagator) {
+        contextPropagators.remove(propagator);
+    }
+
+    /**
+     * Returns the propagators of thread-bound context of this service.
+     *
+     * @return a copy of the list of propagators
+     * @see #addContextPropagator
+     */
+    public List<TaskContextPropagator<?>> getContextPropagators() {
+        return new ArrayList<TaskContextPropagator<?>>(contextPropagators);
+    }
+
+    /**
+     * Returns true if the threads that run this service's Tasks are
+     * renamed after the Task while it runs.
+     *
+     * @return the value of the {@code renamingThreads} property
+     * @see #setRenamingThreads
+     */
+    public boolean isRenamingThreads() {
+        return renamingThreads;
+    }
+
+    /**
+     * If true, the thread that runs one of this service's Tasks has the
+     * Task's title, or its class name if it has none, appended to its
+     * name while the Task runs, e.g. {@code "pool-1-thread-2 [Saving
+     * report]"}.  This makes thread dumps and the logs of the executor's
+     * threads easier to attribute.  It applies to the Tasks handed over to
+     * the executor afterwards.
+     * <p>
+     * The default is false.
+     * <p>
+     * This is a bound property.
+     *
+     * @param renamingThreads true if threads are renamed after their Tasks
+     * @see #isRenamingThreads
+     */
+    public void setRenamingThreads(boolean renamingThreads) {
+        boolean oldValue = this.renamingThreads;
+        this.renamingThreads = renamingThreads;
+        firePropertyChange("renamingThreads", oldValue, renamingThreads);
+    }
+
+    /**
+     * Returns the value of the {@code defaultTimeout} property.
+     * The default value of this property is 0, i.e. no timeout.
+     *
+     * @param unit the time unit of the return value
+     * @return the timeout that applies to Tasks that don't specify one, or 0
+     * @see #setDefaultTimeout
+     */
+    public long getDefaultTimeout(TimeUnit unit) {
+        long timeout;
+        synchronized (this) {
+            timeout = defaultTimeout;
+        }
+        return unit.convert(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the {@code defaultTimeout} property.  It applies to the Tasks
+     * executed afterwards whose own {@link Task#setTimeout timeout} is 0.
+     * When such a Task isn't done within the timeout, it's cancelled with
+     * interruption and its {@link Task#timedOut timedOut} method is called.
+     * <p>
+     * This is a bound property, its values are in milliseconds.
+     *
+     * @param timeout the timeout for Tasks that don't specify one, or 0 for none
+     * @param unit the time unit of {@code timeout}
+     * @see #getDefaultTimeout
+     * @see Task#setTimeout
+     */
+    public void setDefaultTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0L) {
+            throw new IllegalArgumentException("negative timeout");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("null unit");
+        }
+        long oldValue, newValue;
+        synchronized (this) {
+            oldValue = defaultTimeout;
+            defaultTimeout = unit.toMillis(timeout);
+            newValue = defaultTimeout;
+        }
+        firePropertyChange("defaultTimeout", oldValue, newValue);
+    }
+
+    /* The scheduler only hands Tasks over to the executorService and
+     * cancels the ones that time out, so a single daemon thread is
+     * enough.  It's created on demand.
+     */
+    synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TaskService " + name + " scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    private synchronized void shutdownScheduler() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /* Runs part of a composite Task, e.g. a TaskGraph node, on this
+     * service's executor.  The runnable isn't added to the tasks list,
+     * the composite Task that's responsible for it already is.
+     */
+    void executeSubtask(Runnable runnable) {
+        executorService.execute(runnable);
     }
 
     /**
-     * Returns the list of tasks which are executing by this service
+     * Returns the list of tasks which are executing by this service.
+     * <p>
+     * The list is an immutable snapshot with constant-time indexed access.
+     * It's shared by all callers until the list of tasks changes.
+     *
      * @return the list of tasks which are executing by this service
      */
     public List<Task<?, ?>> getTasks() {
-        return tasks.getList();
+        return tasks.snapshot();
+    }
+
+    /* Applies the changes to the activeTaskCount, queuedTaskCount and
+     * completedTaskCount properties.  Tasks are queued when they're added
+     * to the tasks list, active once they've started and completed when
+     * they're removed from the list.
+     */
+    private void updateTaskCounts(int queuedDelta, int activeDelta, int completedDelta) {
+        int oldActive, newActive, oldQueued, newQueued;
+        long oldCompleted, newCompleted;
+        synchronized (this) {
+            oldActive = activeTaskCount;
+            oldQueued = queuedTaskCount;
+            oldCompleted = completedTaskCount;
+            activeTaskCount += activeDelta;
+            queuedTaskCount += queuedDelta;
+            completedTaskCount += completedDelta;
+            newActive = activeTaskCount;
+            newQueued = queuedTaskCount;
+            newCompleted = completedTaskCount;
+        }
+        if (activeDelta != 0) {
+            firePropertyChange("activeTaskCount", oldActive, newActive);
+        }
+        if (queuedDelta != 0) {
+            firePropertyChange("queuedTaskCount", oldQueued, newQueued);
+        }
+        if (completedDelta != 0) {
+            firePropertyChange("completedTaskCount", oldCompleted, newCompleted);
+        }
+    }
+
+    /**
+     * Returns the number of this service's Tasks that are running.
+     * <p>
+     * This is a bound property.
+     *
+     * @return the number of running Tasks
+     * @see #getQueuedTaskCount
+     * @see #getCompletedTaskCount
+     */
+    public synchronized int getActiveTaskCount() {
+        return activeTaskCount;
+    }
+
+    /**
+     * Returns the number of this service's Tasks that have been executed
+     * but haven't started running yet, e.g. because all of the threads
+     * this service may use are busy.
+     * <p>
+     * This is a bound property.
+     *
+     * @return the number of Tasks waiting to run
+     * @see #getActiveTaskCount
+     */
+    public synchronized int getQueuedTaskCount() {
+        return queuedTaskCount;
+    }
+
+    /**
+     * Returns the number of this service's Tasks that are done,
+     * whether they succeeded, failed or were cancelled.  This includes
+     * the {@link LightweightTask LightweightTasks} that have completed.
+     * <p>
+     * This is a bound property.
+     *
+     * @return the number of completed Tasks
+     * @see #getActiveTaskCount
+     */
+    public synchronized long getCompletedTaskCount() {
+        return completedTaskCount;
     }
 
     /**
@@ -167,6 +1895,33 @@ public class TaskService extends AbstractBean {
      */
     public final void shutdown() {
         executorService.shutdown();
+        shutdownScheduler();
+    }
+
+    /* Called by the drain phase of Application.exit.  New Tasks are
+     * rejected from now on, while the ones that are delayed or waiting
+     * for the rate limiter, for resource permits or for their lane are
+     * still handed over to the executor.
+     */
+    void stopAcceptingTasks() {
+        acceptingTasks = false;
+    }
+
+    private boolean isAcceptingTasks() {
+        return acceptingTasks && !isShutdown();
+    }
+
+    /* Returns true if all of this service's Tasks are done, including the
+     * ones that haven't been handed over to the executor yet.  Doesn't
+     * depend on the EDT, the Tasks are removed from the tasks list there.
+     */
+    boolean isIdle() {
+        for (Task<?, ?> task : tasks.getList()) {
+            if (!task.isDone()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -179,6 +1934,9 @@ public class TaskService extends AbstractBean {
      * implementations will cancel via {@link Thread#interrupt}, so any
      * task that fails to respond to interrupts may never terminate.
      *
+     * <p>{@link LightweightTask LightweightTasks} that never commenced
+     * execution are cancelled.
+     *
      * @return list of tasks that never commenced execution
      * @throws SecurityException if a security manager exists and
      *         shutting down this ExecutorService may manipulate
@@ -189,22 +1947,44 @@ public class TaskService extends AbstractBean {
      *         denies access.
      */
     public final List<Runnable> shutdownNow() {
-        final List<Runnable> tasksAwaitingExecution = executorService.shutdownNow();
+        final List<Runnable> tasksAwaitingExecution = new ArrayList<Runnable>(executorService.shutdownNow());
+        shutdownScheduler();
+        synchronized (lanes) {
+            for (Lane lane : lanes.values()) {
+                for (LaneEntry entry : lane.waiting) {
+                    tasksAwaitingExecution.addAll(entry.held);
+                }
+            }
+            lanes.clear();
+        }
+        synchronized (admissionQueue) {
+            for (Admission admission : admissionQueue) {
+                tasksAwaitingExecution.add(admission.task);
+            }
+            admissionQueue.clear();
+        }
+        for (Task<?, ?> task : tasks.getList()) {
+            if (!task.getRequiredResources().isEmpty() && task.getContext().getResourcePermits().removeWaiter(task)) {
+                tasksAwaitingExecution.add(task);
+            }
+        }
 
         // Tasks that are cancelled are never run by the executorService so they 
         // are never removed from the TaskService or TaskMonitor.
 
         List<Task<?, ?>> oldTaskList, newTaskList;
+        int removed = 0;
         synchronized (tasks) {
             // Remove all of the unexecuted runnables from tasks so that
             // TaskMonitor is brought up to date
             oldTaskList = tasks.getList();
 
             for (Runnable runnable : tasksAwaitingExecution) {
-                if (runnable instanceof Task) {
-                    Task task = (Task) runnable;
-
-                    tasks.remove(task);
+                Task task = taskOf(runnable);
+                if (task != null) {
+                    if (tasks.remove(task)) {
+                        removed++;
+                    }
 
                     task.removePropertyChangeListener(taskPCL);
                 }
@@ -213,7 +1993,35 @@ public class TaskService extends AbstractBean {
             newTaskList = tasks.getList();
         }
 
+        // Tasks attached to the ones that will never run must not wait forever.
+        List<Task<?, ?>> orphans = new ArrayList<Task<?, ?>>();
+        synchronized (sharedTasks) {
+            for (Runnable runnable : tasksAwaitingExecution) {
+                Task<?, ?> task = taskOf(runnable);
+                if (task != null) {
+                    if (task.getDeduplicationKey() != null) {
+                        Object key = sharingKey(task);
+                        SharedTask shared = sharedTasks.get(key);
+                        if ((shared != null) && (shared.task == task)) {
+                            sharedTasks.remove(key);
+                            orphans.addAll(shared.attached);
+                        }
+                    }
+                }
+            }
+        }
+        for (Task<?, ?> orphan : orphans) {
+            orphan.cancel(false);
+        }
+        // LightweightTasks that will never run complete as cancelled
+        for (Runnable runnable : tasksAwaitingExecution) {
+            if (runnable instanceof LightweightTask) {
+                ((LightweightTask<?>) runnable).cancel(false);
+            }
+        }
+
         firePropertyChange("tasks", oldTaskList, newTaskList);
+        updateTaskCounts(-removed, 0, 0);
 
         return tasksAwaitingExecution;
     }
@@ -262,12 +2070,23 @@ public class TaskService extends AbstractBean {
         boolean armed = false;
         final Task<?, ?> removed;
         final Task<?, ?> added;
+        final List<Task<?, ?>> addedTasks;
 
         public TaskPropertyChangeEvent(List<Task<?, ?>> oldList, List<Task<?, ?>> newList, Task<?, ?> removed, Task<?, ?> added) {
             super(TaskService.this, "tasks", oldList, newList);
 
             this.removed = removed;
             this.added = added;
+            this.addedTasks = (added == null) ? Collections.<Task<?, ?>>emptyList() : Collections.<Task<?, ?>>singletonList(added);
+        }
+
+        /* The event for a batch of Tasks added by executeAll. */
+        public TaskPropertyChangeEvent(List<Task<?, ?>> oldList, List<Task<?, ?>> newList, List<Task<?, ?>> addedTasks) {
+            super(TaskService.this, "tasks", oldList, newList);
+
+            this.removed = null;
+            this.added = addedTasks.isEmpty() ? null : addedTasks.get(addedTasks.size() - 1);
+            this.addedTasks = Collections.unmodifiableList(addedTasks);
         }
 
         @Override
@@ -287,5 +2106,10 @@ public class TaskService extends AbstractBean {
         public Task getAdded() {
             return added;
         }
+
+        /* All of the added Tasks, in the order they were added. */
+        public List<Task<?, ?>> getAddedTasks() {
+            return addedTasks;
+        }
     }
 }
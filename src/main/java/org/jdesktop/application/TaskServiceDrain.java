@@ -0,0 +1,189 @@
+package org.jdesktop.application;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * The drain phase of {@link Application#exit}: stops all of the
+ * context's TaskServices from accepting new Tasks, shuts each one down
+ * once all of its Tasks are done, waits in parallel until they have all
+ * terminated or the timeout has elapsed, and then cancels the Tasks that
+ * are still running.  The Tasks that are delayed, or waiting for the rate
+ * limiter, for resource permits or for their lane, still run.
+ * <p>
+ * If the TaskServices haven't terminated after half a second, a modal
+ * dialog with the number of remaining Tasks is shown, unless the
+ * environment is headless.  While the dialog is up the EDT keeps
+ * dispatching events, so Tasks that are waiting for the EDT can finish.
+ * The dialog's resources are:
+ * <pre>
+ * ShutdownDialog.title
+ * ShutdownDialog.message (formatted with the number of remaining Tasks)
+ * ShutdownDialog.exitNowButton.text
+ * </pre>
+ *
+ * @see Application#setShutdownTimeout
+ */
+final class TaskServiceDrain {
+
+    private static final Logger logger = Logger.getLogger(TaskServiceDrain.class.getName());
+    private static final long DIALOG_DELAY = 500L;       // milliseconds
+    private static final int DIALOG_UPDATE_DELAY = 250;  // milliseconds
+    private static final long POLL_INTERVAL = 20L;       // milliseconds
+    private final ApplicationContext context;
+    private final long timeout;                          // nanoseconds
+    private volatile boolean exitNow = false;            // only written on the EDT
+
+    TaskServiceDrain(ApplicationContext context, long timeout, TimeUnit unit) {
+        this.context = context;
+        this.timeout = unit.toNanos(timeout);
+    }
+
+    /* Returns the number of Tasks that had to be cancelled. */
+    int drain() {
+        List<TaskService> services = new ArrayList<TaskService>(context.getTaskServices());
+        for (TaskService service : services) {
+            service.stopAcceptingTasks();
+        }
+        long deadline = System.nanoTime() + timeout;
+        try {
+            long dialogDelay = Math.min(TimeUnit.MILLISECONDS.toNanos(DIALOG_DELAY), timeout);
+            if (!awaitTermination(services, System.nanoTime() + dialogDelay)
+                    && !GraphicsEnvironment.isHeadless() && SwingUtilities.isEventDispatchThread()) {
+                showDialog(services, deadline);
+            }
+            if (!exitNow) {
+                awaitTermination(services, deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return cancelStragglers(services);
+    }
+
+    /* Shuts the TaskServices down once they're idle, and waits until they
+     * have terminated or the deadline has passed.  The TaskServices are
+     * awaited one after the other, but they all drain at the same time.
+     * Returns true if they have all terminated.
+     */
+    private static boolean awaitTermination(List<TaskService> services, long deadline) throws InterruptedException {
+        for (TaskService service : services) {
+            while (!shutdownIfIdle(service)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    return false;
+                }
+                Thread.sleep(Math.min(TimeUnit.NANOSECONDS.toMillis(remaining) + 1L, POLL_INTERVAL));
+            }
+            if (!service.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Returns true if the service has been shut down. */
+    private static boolean shutdownIfIdle(TaskService service) {
+        if (!service.isShutdown() && service.isIdle()) {
+            service.shutdown();
+        }
+        return service.isShutdown();
+    }
+
+    /* Called by the dialog's timer, shuts the idle TaskServices down. */
+    private static boolean isTerminated(List<TaskService> services) {
+        boolean terminated = true;
+        for (TaskService service : services) {
+            if (!shutdownIfIdle(service) || !service.isTerminated()) {
+                terminated = false;
+            }
+        }
+        return terminated;
+    }
+
+    private static int remainingTaskCount(List<TaskService> services) {
+        int count = 0;
+        for (TaskService service : services) {
+            count += service.getTasks().size();
+        }
+        return count;
+    }
+
+    /* Only returns when the dialog has been disposed: once the TaskServices
+     * have terminated, the deadline has passed or the user pressed the
+     * "exit now" button.
+     */
+    private void showDialog(final List<TaskService> services, final long deadline) {
+        final ResourceMap resourceMap = context.getResourceMap();
+        final JLabel messageLabel = new JLabel(resourceMap.getString("ShutdownDialog.message", remainingTaskCount(services)));
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        JButton exitNowButton = new JButton();
+        exitNowButton.setName("ShutdownDialog.exitNowButton");
+        resourceMap.injectComponent(exitNowButton);
+        JOptionPane optionPane = new JOptionPane(new Object[]{messageLabel, progressBar},
+                JOptionPane.INFORMATION_MESSAGE, JOptionPane.DEFAULT_OPTION, null, new Object[]{exitNowButton});
+        final JDialog dialog = optionPane.createDialog(null, resourceMap.getString("ShutdownDialog.title"));
+        dialog.setName("ShutdownDialog");
+        dialog.setModal(true);
+        dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        exitNowButton.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exitNow = true;
+                dialog.dispose();
+            }
+        });
+        final Timer timer = new Timer(DIALOG_UPDATE_DELAY, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (isTerminated(services) || (deadline - System.nanoTime() <= 0L)) {
+                    dialog.dispose();
+                } else {
+                    messageLabel.setText(resourceMap.getString("ShutdownDialog.message", remainingTaskCount(services)));
+                }
+            }
+        });
+        timer.start();
+        try {
+            dialog.setVisible(true);
+        } finally {
+            timer.stop();
+            dialog.dispose();
+        }
+    }
+
+    private int cancelStragglers(List<TaskService> services) {
+        int cancelled = 0;
+        for (TaskService service : services) {
+            if (!service.isTerminated()) {
+                // cancel before shutdownNow interrupts the running Tasks
+                for (Task<?, ?> task : service.getTasks()) {
+                    if (task.cancel(true)) {
+                        cancelled++;
+                    }
+                }
+                service.shutdownNow();
+            }
+        }
+        if (cancelled > 0) {
+            logger.log(Level.WARNING, "cancelled {0} Tasks that were still running at exit", cancelled);
+        }
+        return cancelled;
+    }
+}
@@ -0,0 +1,23 @@
+package org.jdesktop.application;
+
+import java.util.List;
+
+/**
+ * A {@link TaskCallback} that also receives the intermediate results a
+ * Task {@link Task#publish publishes}.  The chunks and then the outcome are
+ * delivered in order, one call at a time, on a thread of the caller's
+ * choosing, so that a pipeline can consume a Task's output as it's produced.
+ *
+ * @param <T> the result type of the Task
+ * @param <V> the type of the intermediate results
+ * @see Task#subscribe
+ */
+public interface TaskSubscriber<T, V> extends TaskCallback<T> {
+
+    /**
+     * Called with the values the Task has published since the previous call.
+     *
+     * @param chunks the published values, in the order they were published
+     */
+    void process(List<V> chunks);
+}
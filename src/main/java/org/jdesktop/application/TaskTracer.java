@@ -0,0 +1,337 @@
+package org.jdesktop.application;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.EventObject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records a timeline of the application's Tasks that can be written in
+ * the Chrome trace event format and opened in any trace viewer, like
+ * {@code chrome://tracing} or Perfetto.  For each Task the timeline shows:
+ * <ul>
+ * <li>how long it waited after it was executed, as an asynchronous
+ * "queued" span</li>
+ * <li>the span in which it ran, on the thread that ran it, if it was
+ * executed by a {@link TaskService}</li>
+ * <li>the "started" and "done" state changes, when the EDT got them</li>
+ * <li>the EDT callbacks: {@code succeeded}, {@code failed}, {@code
+ * cancelled}, {@code interrupted} or {@code timedOut}, {@code finished}
+ * and {@code process}.  Only the {@code process} calls that reach
+ * {@code Task.process} are traced, i.e. subclasses that override it
+ * must call {@code super.process}.</li>
+ * </ul>
+ * Tracing is off by default.  It's turned on by setting the {@link
+ * ApplicationContext#setTaskTracer taskTracer} property:
+ * <pre>
+ * TaskTracer tracer = new TaskTracer(getContext(), 100000);
+ * getContext().setTaskTracer(tracer);
+ * tracer.writeAtExit("tasks.trace.json");
+ * </pre>
+ * The tracer keeps at most {@code capacity} events, once it's full the
+ * oldest ones are dropped.
+ *
+ * @see ApplicationContext#setTaskTracer
+ */
+public final class TaskTracer {
+
+    private static final Logger logger = Logger.getLogger(TaskTracer.class.getName());
+    private final ApplicationContext context;
+    private final int capacity;
+    private final long origin = System.nanoTime();
+    private final AtomicLong nextId = new AtomicLong(1L);
+    private final ArrayDeque<Event> events;              // guarded by this
+    private final Map<Long, String> threadNames = new LinkedHashMap<Long, String>();  // guarded by this
+    private long droppedEventCount = 0L;                 // guarded by this
+    private Application.ExitListener exitListener = null; // guarded by this
+
+    /* One trace event.  ph is the event's phase: X (complete), i
+     * (instant), b and e (begin and end of an asynchronous span).
+     */
+    private static final class Event {
+
+        final char ph;
+        final String name;
+        final String cat;
+        final long ts;
+        final long dur;
+        final long tid;
+        final long id;
+
+        Event(char ph, String name, String cat, long ts, long dur, long tid, long id) {
+            this.ph = ph;
+            this.name = name;
+            this.cat = cat;
+            this.ts = ts;
+            this.dur = dur;
+            this.tid = tid;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Creates a TaskTracer that keeps up to {@code capacity} events.
+     *
+     * @param context the context whose LocalStorage the trace is written to
+     * @param capacity the maximum number of events
+     */
+    public TaskTracer(ApplicationContext context, int capacity) {
+        if (context == null) {
+            throw new IllegalArgumentException("null context");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        this.context = context;
+        this.capacity = capacity;
+        events = new ArrayDeque<Event>(Math.min(capacity, 1024));
+    }
+
+    /**
+     * Returns the maximum number of events this TaskTracer keeps.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of events this TaskTracer holds.
+     *
+     * @return the number of events
+     */
+    public synchronized int getEventCount() {
+        return events.size();
+    }
+
+    /**
+     * Returns the number of events that were dropped because the
+     * TaskTracer was full.
+     *
+     * @return the number of dropped events
+     */
+    public synchronized long getDroppedEventCount() {
+        return droppedEventCount;
+    }
+
+    /**
+     * Discards all events.
+     */
+    public synchronized void clear() {
+        events.clear();
+        threadNames.clear();
+        droppedEventCount = 0L;
+    }
+
+    /* The name of a Task on the timeline. */
+    private static String nameOf(Task<?, ?> task) {
+        String title = task.getTitle();
+        return (title != null) ? title : task.getClass().getName();
+    }
+
+    /* The id that ties the queued span of a Task together, assigned when
+     * the Task is queued.  It's kept in the Task's properties.
+     */
+    private long idOf(Task<?, ?> task) {
+        Long id = (Long) task.getProperty(this);
+        if (id == null) {
+            Long newId = Long.valueOf(nextId.getAndIncrement());
+            id = (Long) task.putPropertyIfAbsent(this, newId);
+            if (id == null) {
+                id = newId;
+            }
+        }
+        return id.longValue();
+    }
+
+    private long micros(long nanoTime) {
+        return (nanoTime - origin) / 1000L;
+    }
+
+    private synchronized void add(char ph, String name, String cat, long startTime, long endTime, long id) {
+        Thread thread = Thread.currentThread();
+        Long tid = Long.valueOf(thread.getId());
+        if (!threadNames.containsKey(tid)) {
+            threadNames.put(tid, thread.getName());
+        }
+        if (events.size() == capacity) {
+            events.removeFirst();
+            droppedEventCount++;
+        }
+        long ts = micros(startTime);
+        events.addLast(new Event(ph, name, cat, ts, micros(endTime) - ts, tid.longValue(), id));
+    }
+
+    /* Called by the TaskService when a Task is executed. */
+    void taskQueued(Task<?, ?> task) {
+        long now = System.nanoTime();
+        add('b', nameOf(task), "queued", now, now, idOf(task));
+    }
+
+    /* Called on the thread that ran the Task, or an attempt of a
+     * RetryingTask.  The first run ends the queued span.
+     */
+    void taskRan(Task<?, ?> task, boolean first, long startTime, long endTime) {
+        String name = nameOf(task);
+        if (first) {
+            add('e', name, "queued", startTime, startTime, idOf(task));
+        }
+        add('X', name, "run", startTime, endTime, 0L);
+    }
+
+    /* Called on the EDT when it learns that the Task's state has changed. */
+    void taskStateChanged(Task<?, ?> task, String state) {
+        long now = System.nanoTime();
+        add('i', state + " " + nameOf(task), "state", now, now, 0L);
+    }
+
+    /* Called on the EDT after one of the Task's callbacks has returned. */
+    void taskCallback(Task<?, ?> task, String callback, long startTime) {
+        add('X', callback + " " + nameOf(task), "edt", startTime, System.nanoTime(), 0L);
+    }
+
+    /**
+     * Writes the events in the Chrome trace event format, i.e. a JSON
+     * object with a {@code traceEvents} array.
+     *
+     * @param writer the destination of the trace
+     * @throws IOException if the trace can't be written
+     * @see #write(String)
+     */
+    public void write(Writer writer) throws IOException {
+        if (writer == null) {
+            throw new IllegalArgumentException("null writer");
+        }
+        Event[] snapshot;
+        Map<Long, String> names;
+        synchronized (this) {
+            snapshot = events.toArray(new Event[events.size()]);
+            names = new LinkedHashMap<Long, String>(threadNames);
+        }
+        writer.write("{\"traceEvents\":[\n");
+        boolean first = true;
+        for (Map.Entry<Long, String> entry : names.entrySet()) {
+            if (!first) {
+                writer.write(",\n");
+            }
+            first = false;
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + entry.getKey()
+                    + ",\"args\":{\"name\":" + quote(entry.getValue()) + "}}");
+        }
+        for (Event event : snapshot) {
+            if (!first) {
+                writer.write(",\n");
+            }
+            first = false;
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("{\"name\":").append(quote(event.name));
+            sb.append(",\"cat\":").append(quote(event.cat));
+            sb.append(",\"ph\":\"").append(event.ph).append('"');
+            sb.append(",\"ts\":").append(event.ts);
+            if (event.ph == 'X') {
+                sb.append(",\"dur\":").append(event.dur);
+            } else if (event.ph == 'i') {
+                sb.append(",\"s\":\"t\"");
+            } else {
+                sb.append(",\"id\":").append(event.id);
+            }
+            sb.append(",\"pid\":1,\"tid\":").append(event.tid).append('}');
+            writer.write(sb.toString());
+        }
+        writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        writer.flush();
+    }
+
+    /**
+     * Writes the events in the Chrome trace event format to a file in
+     * the application's {@link ApplicationContext#getLocalStorage
+     * LocalStorage}.
+     *
+     * @param fileName the name of the file in LocalStorage
+     * @throws IOException if the trace can't be written
+     * @see #writeAtExit
+     */
+    public void write(String fileName) throws IOException {
+        OutputStream out = context.getLocalStorage().openOutputFile(fileName);
+        try {
+            write(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the trace to a file in LocalStorage when the application
+     * exits.  Calling this method again replaces the file name.
+     *
+     * @param fileName the name of the file in LocalStorage
+     * @see #write(String)
+     */
+    public synchronized void writeAtExit(final String fileName) {
+        if (fileName == null) {
+            throw new IllegalArgumentException("null fileName");
+        }
+        Application application = context.getApplication();
+        if (exitListener != null) {
+            application.removeExitListener(exitListener);
+        }
+        exitListener = new Application.ExitListener() {
+
+            @Override
+            public boolean canExit(EventObject event) {
+                return true;
+            }
+
+            @Override
+            public void willExit(EventObject event) {
+                try {
+                    write(fileName);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "couldn't write the task trace " + fileName, e);
+                }
+            }
+        };
+        application.addExitListener(exitListener);
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
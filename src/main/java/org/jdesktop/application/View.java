@@ -141,6 +141,21 @@ public class View extends AbstractBean {
         return rootPane;
     }
 
+    /**
+     * Returns the {@link TaskGroup} of this View's {@code rootPane}.
+     * Tasks started by the View's {@code @Actions} join this group, and
+     * {@code SingleFrameApplication} cancels it when the View's window is
+     * closed.
+     * <p>
+     * This method must be called on the EDT.
+     *
+     * @return this View's TaskGroup
+     * @see ApplicationContext#getTaskGroup
+     */
+    public TaskGroup getTaskGroup() {
+        return getContext().getTaskGroup(getRootPane());
+    }
+
     private void replaceContentPaneChild(JComponent oldChild, JComponent newChild, String constraint) {
         Container contentPane = getRootPane().getContentPane();
         if (oldChild != null) {
@@ -187,6 +187,30 @@ public class ApplicationActionMapTest
         NoActions(String s) {} // ApplicationActionMap can't auto-construct this one
     }
 
+    public static class NegativeDebounceActions
+    {
+        @Action(debounce = -1L)
+        public void negativeDebounce() { }
+    }
+
+    public static class NegativeTimeoutActions
+    {
+        @Action(timeout = -1L)
+        public void negativeTimeout() { }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDebounce()
+    {
+        new ApplicationActionMap(new ApplicationContext(), NegativeDebounceActions.class, new NegativeDebounceActions(), emptyResourceMap());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTimeout()
+    {
+        new ApplicationActionMap(new ApplicationContext(), NegativeTimeoutActions.class, new NegativeTimeoutActions(), emptyResourceMap());
+    }
+
     @Test
     public void testTrivialAction()
     {
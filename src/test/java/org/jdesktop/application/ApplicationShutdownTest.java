@@ -0,0 +1,214 @@
+package org.jdesktop.application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the drain phase of Application#exit.
+ */
+public class ApplicationShutdownTest {
+
+    public static class DrainApplication extends WaitForStartupApplication {
+
+        volatile boolean endCalled = false;
+
+        @Override
+        protected void end() {
+            endCalled = true;  // default was System.exit(0);
+        }
+    }
+
+    private DrainApplication application;
+
+    @Before
+    public void methodSetup() {
+        DrainApplication.launchAndWait(DrainApplication.class);
+        application = Application.getInstance(DrainApplication.class);
+        application.endCalled = false;
+    }
+
+    private static class SleepTask extends Task<Void, Void> {
+
+        final long sleep;
+
+        SleepTask(Application application, long sleep) {
+            super(application);
+            this.sleep = sleep;
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            Thread.sleep(sleep);
+            return null;
+        }
+    }
+
+    private static class ResourceTask extends SleepTask {
+
+        ResourceTask(Application application, long sleep, String resource) {
+            super(application, sleep);
+            setRequiredResources(resource);
+        }
+    }
+
+    private TaskService newTaskService(String name) {
+        TaskService taskService = new TaskService(name);
+        application.getContext().addTaskService(taskService);
+        return taskService;
+    }
+
+    @Test
+    public void testShutdownTimeoutProperty() throws Exception {
+        final AtomicReference<PropertyChangeEvent> event = new AtomicReference<PropertyChangeEvent>();
+        PropertyChangeListener listener = new PropertyChangeListener() {
+
+            @Override
+            public void propertyChange(PropertyChangeEvent e) {
+                event.set(e);
+            }
+        };
+        application.addPropertyChangeListener("shutdownTimeout", listener);
+        assertEquals(0L, application.getShutdownTimeout(TimeUnit.MILLISECONDS));
+        application.setShutdownTimeout(2L, TimeUnit.SECONDS);
+        // property changes are fired on the EDT
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        });
+        assertEquals(2000L, application.getShutdownTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(2000L, event.get().getNewValue());
+        application.setShutdownTimeout(0L, TimeUnit.SECONDS);
+        application.removePropertyChangeListener("shutdownTimeout", listener);
+        try {
+            application.setShutdownTimeout(-1L, TimeUnit.SECONDS);
+            fail("negative timeouts aren't allowed");
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testDrainWaitsForTasks() throws Exception {
+        TaskService first = newTaskService("first");
+        TaskService second = newTaskService("second");
+        SleepTask firstTask = new SleepTask(application, 300L);
+        SleepTask secondTask = new SleepTask(application, 300L);
+        first.execute(firstTask);
+        second.execute(secondTask);
+        application.setShutdownTimeout(10L, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        application.exit();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(application.endCalled);
+        assertTrue("the services are drained in parallel: " + elapsed + " ms", elapsed < 5000L);
+        assertTrue(first.isTerminated());
+        assertTrue(second.isTerminated());
+        assertTrue(firstTask.isDone());
+        assertFalse(firstTask.isCancelled());
+        assertFalse(secondTask.isCancelled());
+        try {
+            first.execute(new SleepTask(application, 0L));
+            fail("a drained TaskService doesn't accept new Tasks");
+        } catch (Exception ignore) {
+        }
+    }
+
+    @Test
+    public void testDrainCancelsStragglers() throws Exception {
+        TaskService taskService = newTaskService("stragglers");
+        SleepTask task = new SleepTask(application, 60000L);
+        taskService.execute(task);
+        application.setShutdownTimeout(200L, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        application.exit();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(application.endCalled);
+        assertTrue("exit waited for " + elapsed + " ms", elapsed < 5000L);
+        assertTrue(task.isCancelled());
+        assertTrue(taskService.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwaitTerminationOnEDT() throws Exception {
+        final TaskService taskService = new TaskService("edt");
+        SleepTask task = new SleepTask(application, 200L);
+        taskService.execute(task);
+        final AtomicBoolean terminated = new AtomicBoolean(false);
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                taskService.shutdown();
+                try {
+                    terminated.set(taskService.awaitTermination(5L, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(terminated.get());
+        assertTrue(taskService.isShutdown());
+        assertTrue(taskService.isTerminated());
+        assertTrue(task.isDone());
+        assertFalse(task.isCancelled());
+        SleepTask rejected = new SleepTask(application, 0L);
+        try {
+            taskService.execute(rejected);
+            fail("a TaskService that has been shut down doesn't accept new Tasks");
+        } catch (RejectedExecutionException ignore) {
+        }
+        assertTrue(rejected.isCancelled());
+    }
+
+    @Test
+    public void testDrainDispatchesParkedTasks() throws Exception {
+        TaskService limited = newTaskService("limited");
+        limited.setRateLimit(5.0, 1);
+        List<SleepTask> tasks = new ArrayList<SleepTask>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new SleepTask(application, 0L));
+        }
+        limited.executeAll(tasks);
+        TaskService delayed = newTaskService("delayed");
+        SleepTask delayedTask = new SleepTask(application, 0L);
+        delayed.execute(delayedTask, null, 300L, TimeUnit.MILLISECONDS);
+        tasks.add(delayedTask);
+        TaskService lane = newTaskService("lane");
+        for (int i = 0; i < 2; i++) {
+            SleepTask task = new SleepTask(application, 100L);
+            task.setOrderingKey("drain");
+            lane.execute(task);
+            tasks.add(task);
+        }
+        TaskService waiting = newTaskService("waiting");
+        for (int i = 0; i < 2; i++) {
+            SleepTask task = new ResourceTask(application, 200L, "drain");
+            waiting.execute(task);
+            tasks.add(task);
+        }
+        assertEquals(1, application.getContext().getResourcePermits().getWaitingTaskCount());
+
+        application.setShutdownTimeout(10L, TimeUnit.SECONDS);
+        application.exit();
+        assertTrue(application.endCalled);
+        for (SleepTask task : tasks) {
+            assertTrue(task.isDone());
+            assertFalse(task.isCancelled());
+        }
+        assertTrue(limited.isTerminated());
+        assertTrue(delayed.isTerminated());
+        assertTrue(lane.isTerminated());
+        assertTrue(waiting.isTerminated());
+    }
+}
@@ -0,0 +1,135 @@
+package org.jdesktop.application;
+
+import java.awt.event.ActionEvent;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.ActionMap;
+import javax.swing.SwingUtilities;
+import org.jdesktop.application.utils.Polling;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test EDTWatchdog.
+ */
+public class EDTWatchdogTest {
+
+    private Application application;
+    private ApplicationContext context;
+    private EDTWatchdog watchdog;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        context = application.getContext();
+        watchdog = new EDTWatchdog(100, TimeUnit.MILLISECONDS);
+        context.setEDTWatchdog(watchdog);
+        assertTrue(watchdog.isRunning());
+    }
+
+    @After
+    public void methodTeardown() {
+        context.setEDTWatchdog(null);
+        assertFalse(watchdog.isRunning());
+    }
+
+    public static class BlockingActions {
+
+        @Action
+        public void block() throws InterruptedException {
+            Thread.sleep(400L);
+        }
+    }
+
+    private static class BlockingTask extends Task<Void, Void> {
+
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        BlockingTask(Application application) {
+            super(application);
+        }
+
+        @Override
+        protected Void doInBackground() {
+            return null;
+        }
+
+        @Override
+        protected void succeeded(Void result) {
+            try {
+                Thread.sleep(400L);
+            } catch (InterruptedException ignore) {
+            }
+        }
+
+        @Override
+        protected void finished() {
+            finished.countDown();
+        }
+    }
+
+    private void awaitStallCount(long expected) throws Exception {
+        Polling.awaitValue(expected, new Callable<Long>() {
+
+            @Override
+            public Long call() {
+                return watchdog.getStallCount();
+            }
+        });
+    }
+
+    @Test
+    public void testBlockingAction() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                ResourceMap resourceMap = context.getResourceMap(BlockingActions.class);
+                ActionMap actionMap = new ApplicationActionMap(context, BlockingActions.class, new BlockingActions(), resourceMap);
+                actionMap.get("block").actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "block"));
+            }
+        });
+        awaitStallCount(1L);
+
+        List<EDTWatchdog.Stall> stalls = watchdog.getStalls();
+        EDTWatchdog.Stall stall = stalls.get(0);
+        assertEquals("action block", stall.getActivity());
+        assertTrue(stall.getDuration(TimeUnit.MILLISECONDS) >= 100L);
+        boolean inBlock = false;
+        for (StackTraceElement element : stall.getStackTrace()) {
+            inBlock |= "block".equals(element.getMethodName());
+        }
+        assertTrue("the stack shows the @Action method", inBlock);
+
+        Map<String, long[]> histograms = watchdog.getHistograms();
+        long[] histogram = histograms.get("action block");
+        assertNotNull(histogram);
+        assertEquals(EDTWatchdog.getBucketBounds(TimeUnit.MILLISECONDS).length, histogram.length);
+        long total = 0L;
+        for (long count : histogram) {
+            total += count;
+        }
+        assertEquals(1L, total);
+
+        watchdog.clear();
+        assertEquals(0L, watchdog.getStallCount());
+        assertTrue(watchdog.getHistograms().isEmpty());
+    }
+
+    @Test
+    public void testBlockingTaskCallback() throws Exception {
+        BlockingTask task = new BlockingTask(application);
+        TaskService taskService = new TaskService("watched");
+        taskService.execute(task);
+        assertTrue(task.finished.await(5, TimeUnit.SECONDS));
+        awaitStallCount(1L);
+        assertEquals("task " + BlockingTask.class.getName(), watchdog.getStalls().get(0).getActivity());
+        taskService.shutdown();
+    }
+}
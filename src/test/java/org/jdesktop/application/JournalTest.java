@@ -18,9 +18,14 @@
  */
 package org.jdesktop.application;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -395,4 +400,219 @@ public class JournalTest {
         assertEquals("view.size() == 0", 0, view.size());
         assertEquals("view.toString().equals(\"[]\")", "[]", view.toString());
     }
+
+    @Test
+    public void containsAndLast() {
+        Journal j = new Journal();
+        final IdentifiedTask t0 = new IdentifiedTask(0);
+        final IdentifiedTask t1 = new IdentifiedTask(1);
+        final IdentifiedTask t2 = new IdentifiedTask(2);
+
+        assertNull("j.last() == null", j.last());
+        j.addLast(t0);
+        j.addLast(t1);
+        List view = j.getList();
+        j.addLast(t2);
+
+        assertTrue("j.contains(t1)", j.contains(t1));
+        assertEquals("j.last() == 2", t2, j.last());
+
+        j.remove(t2);
+        assertFalse("!j.contains(t2)", j.contains(t2));
+        assertEquals("j.last() == 1", t1, j.last());
+
+        j.remove(t0);
+        assertFalse("!j.contains(t0)", j.contains(t0));
+        assertEquals("j.last() == 1", t1, j.last());
+
+        j.remove(t1);
+        assertNull("j.last() == null", j.last());
+        // Views that still show removed tasks are unaffected
+        assertEquals("view.toString().equals(\"[0, 1]\")", "[0, 1]", view.toString());
+    }
+
+    @Test
+    public void snapshot() {
+        Journal j = new Journal();
+        final IdentifiedTask t0 = new IdentifiedTask(0);
+        final IdentifiedTask t1 = new IdentifiedTask(1);
+        final IdentifiedTask t2 = new IdentifiedTask(2);
+        final IdentifiedTask t3 = new IdentifiedTask(3);
+
+        Journal.Snapshot empty = j.snapshot();
+        assertEquals("empty.size() == 0", 0, empty.size());
+        assertNull("empty.last() == null", empty.last());
+
+        j.addLast(t0);
+        j.addLast(t1);
+        j.addLast(t2);
+        Journal.Snapshot s1 = j.snapshot();
+        assertSame("unchanged journal, same snapshot", s1, j.snapshot());
+        assertEquals("s1.toString().equals(\"[0, 1, 2]\")", "[0, 1, 2]", s1.toString());
+        assertEquals("s1.getVersion() == j.modCount()", j.modCount(), s1.getVersion());
+
+        j.remove(t1);
+        j.addLast(t3);
+        j.remove(t3);
+        Journal.Snapshot s2 = j.snapshot();
+        assertTrue("s2.getVersion() > s1.getVersion()", s2.getVersion() > s1.getVersion());
+        assertEquals("s2.toString().equals(\"[0, 2]\")", "[0, 2]", s2.toString());
+        assertEquals("s2.get(1) == 2", t2, s2.get(1));
+        assertEquals("s2.last() == 2", t2, s2.last());
+        assertTrue("s2.equals(j.getList())", s2.equals(j.getList()));
+        // Older snapshots are immutable
+        assertEquals("s1.toString().equals(\"[0, 1, 2]\")", "[0, 1, 2]", s1.toString());
+
+        j.remove(t0);
+        j.remove(t2);
+        assertEquals("j.snapshot().size() == 0", 0, j.snapshot().size());
+    }
+
+    /* Runs each Runnable on its own thread, all of them starting at once. */
+    private static void runConcurrently(Runnable... runnables) throws Throwable {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final Runnable runnable : runnables) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        runnable.run();
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(30000L);
+            assertFalse("thread finished", thread.isAlive());
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @Test
+    public void concurrentAddsAndRemoves() throws Throwable {
+        final Journal j = new Journal();
+        final int threadCount = 8;
+        final int perThread = 2000;
+        Runnable[] writers = new Runnable[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int first = t * perThread;
+            writers[t] = new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = first; i < first + perThread; i++) {
+                        IdentifiedTask task = new IdentifiedTask(i);
+                        j.addLast(task);
+                        assertTrue("j.contains(task)", j.contains(task));
+                        // Keep every fourth task
+                        if (i % 4 != 0) {
+                            assertTrue("j.remove(task)", j.remove(task));
+                            assertFalse("j.contains(task)", j.contains(task));
+                        }
+                    }
+                }
+            };
+        }
+        runConcurrently(writers);
+
+        assertEquals("j.length()", threadCount * perThread / 4, j.length());
+        Journal.Snapshot snapshot = j.snapshot();
+        assertEquals("snapshot.size()", j.length(), snapshot.size());
+        boolean[] seen = new boolean[threadCount * perThread];
+        int[] lastOfThread = new int[threadCount];
+        Arrays.fill(lastOfThread, -1);
+        for (Task<?, ?> task : snapshot) {
+            int id = ((IdentifiedTask) task).id;
+            assertEquals("only kept tasks", 0, id % 4);
+            assertFalse("no duplicates", seen[id]);
+            seen[id] = true;
+            // Each thread's tasks are in the order that thread added them
+            int thread = id / perThread;
+            assertTrue("per thread order", id > lastOfThread[thread]);
+            lastOfThread[thread] = id;
+        }
+        j.compressJournalLink(j.modCount());
+        assertEquals("j.size()", j.length(), j.size());
+        assertEquals("compressed snapshot", snapshot, j.snapshot());
+    }
+
+    @Test
+    public void concurrentRemovesOfTheSameTask() throws Throwable {
+        final Journal j = new Journal();
+        final List<IdentifiedTask> tasks = new ArrayList<IdentifiedTask>();
+        for (int i = 0; i < 1000; i++) {
+            IdentifiedTask task = new IdentifiedTask(i);
+            tasks.add(task);
+            j.addLast(task);
+        }
+        final AtomicInteger removed = new AtomicInteger(0);
+        Runnable remover = new Runnable() {
+            @Override
+            public void run() {
+                for (IdentifiedTask task : tasks) {
+                    if (j.remove(task)) {
+                        removed.incrementAndGet();
+                    }
+                }
+            }
+        };
+        runConcurrently(remover, remover, remover, remover);
+
+        assertEquals("each task is removed once", 1000, removed.get());
+        assertEquals("j.length()", 0, j.length());
+        assertTrue("j.getList().isEmpty()", j.getList().isEmpty());
+        assertNull("j.last()", j.last());
+    }
+
+    @Test
+    public void snapshotsDontChangeUnderConcurrentChurn() throws Throwable {
+        final Journal j = new Journal();
+        for (int i = 0; i < 100; i++) {
+            j.addLast(new IdentifiedTask(i));
+        }
+        final AtomicInteger running = new AtomicInteger(2);
+        Runnable writer = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 5000; i++) {
+                        IdentifiedTask task = new IdentifiedTask(1000 + i);
+                        j.addLast(task);
+                        j.remove(task);
+                    }
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+        Runnable reader = new Runnable() {
+            @Override
+            public void run() {
+                while (running.get() > 0) {
+                    Journal.Snapshot snapshot = j.snapshot();
+                    List<Task<?, ?>> copy = new ArrayList<Task<?, ?>>(snapshot);
+                    Thread.yield();
+                    assertEquals("snapshot is immutable", copy, new ArrayList<Task<?, ?>>(snapshot));
+                    assertTrue("snapshot.getVersion() <= j.modCount()", snapshot.getVersion() <= j.modCount());
+                    if (!snapshot.isEmpty()) {
+                        assertSame("snapshot.last()", copy.get(copy.size() - 1), snapshot.last());
+                    }
+                }
+            }
+        };
+        runConcurrently(writer, writer, reader, reader);
+
+        // Every writer iteration adds and removes one task
+        assertEquals("j.length()", 100, j.length());
+        assertTrue("tombstones are compressed", j.size() < 100 + 2 * 5000);
+    }
 }
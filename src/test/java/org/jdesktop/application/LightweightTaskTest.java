@@ -0,0 +1,187 @@
+package org.jdesktop.application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.jdesktop.application.utils.Polling;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test LightweightTask and TaskService.execute(LightweightTask).
+ */
+public class LightweightTaskTest {
+
+    private Application application;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        taskService = new TaskService("lightweight", Executors.newFixedThreadPool(2));
+    }
+
+    @After
+    public void methodTeardown() {
+        taskService.shutdownNow();
+    }
+
+    private static <T> T onEDT(Callable<T> callable) throws Exception {
+        FutureTask<T> future = new FutureTask<T>(callable);
+        SwingUtilities.invokeAndWait(future);
+        return future.get();
+    }
+
+    private static class RecordingTask extends LightweightTask<Integer> {
+
+        final int value;
+        final CountDownLatch gate;
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile String outcome = null;
+        volatile boolean onEDT = false;
+
+        RecordingTask(int value, CountDownLatch gate) {
+            this.value = value;
+            this.gate = gate;
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            gate.await();
+            if (value < 0) {
+                throw new IllegalArgumentException("negative value");
+            }
+            return value;
+        }
+
+        @Override
+        protected void succeeded(Integer result) {
+            outcome = "succeeded " + result;
+        }
+
+        @Override
+        protected void failed(Throwable cause) {
+            outcome = "failed " + cause.getMessage();
+        }
+
+        @Override
+        protected void cancelled() {
+            outcome = "cancelled";
+        }
+
+        @Override
+        protected void finished() {
+            onEDT = SwingUtilities.isEventDispatchThread();
+            finished.countDown();
+        }
+    }
+
+    @Test
+    public void testSucceededAndFailed() throws Exception {
+        CountDownLatch open = new CountDownLatch(0);
+        RecordingTask good = new RecordingTask(42, open);
+        RecordingTask bad = new RecordingTask(-1, open);
+        taskService.execute(good);
+        taskService.execute(bad);
+        assertSame(taskService, good.getTaskService());
+
+        assertTrue(good.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(bad.finished.await(5, TimeUnit.SECONDS));
+        assertEquals("succeeded 42", good.outcome);
+        assertEquals("failed negative value", bad.outcome);
+        assertTrue(good.onEDT);
+        assertEquals(Integer.valueOf(42), good.get());
+        try {
+            bad.get();
+            fail("get() should throw the exception thrown by doInBackground");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertTrue(taskService.getTasks().isEmpty());
+        try {
+            taskService.execute(good);
+            fail("a LightweightTask can only be executed once");
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        final RecordingTask running = new RecordingTask(1, gate);
+        taskService.execute(running);
+        Polling.awaitTrue("the task started", new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                return running.isStarted();
+            }
+        });
+        assertTrue(running.cancel(true));
+        assertFalse(running.cancel(true));
+        assertTrue(running.finished.await(5, TimeUnit.SECONDS));
+        assertEquals("cancelled", running.outcome);
+        assertTrue(running.isCancelled());
+        try {
+            running.get();
+            fail("get() of a cancelled LightweightTask should throw");
+        } catch (CancellationException ignore) {
+        }
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        final AtomicInteger maxCount = new AtomicInteger(0);
+        taskService.addPropertyChangeListener("lightweightTaskCount", new PropertyChangeListener() {
+
+            @Override
+            public void propertyChange(PropertyChangeEvent e) {
+                int count = (Integer) e.getNewValue();
+                if (count > maxCount.get()) {
+                    maxCount.set(count);
+                }
+            }
+        });
+        final CountDownLatch gate = new CountDownLatch(1);
+        final RecordingTask[] tasks = new RecordingTask[100];
+        onEDT(new Callable<Void>() {
+
+            @Override
+            public Void call() {
+                for (int i = 0; i < tasks.length; i++) {
+                    tasks[i] = new RecordingTask(i, gate);
+                    taskService.execute(tasks[i]);
+                }
+                return null;
+            }
+        });
+        assertEquals(100, taskService.getLightweightTaskCount());
+        assertEquals(100, maxCount.get());
+
+        gate.countDown();
+        for (RecordingTask task : tasks) {
+            assertTrue(task.finished.await(5, TimeUnit.SECONDS));
+        }
+        int count = onEDT(new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return taskService.getLightweightTaskCount();
+            }
+        });
+        assertEquals(0, count);
+        assertEquals(100L, taskService.getCompletedTaskCount());
+        assertEquals(0, taskService.getRunningLightweightTaskCount());
+    }
+}
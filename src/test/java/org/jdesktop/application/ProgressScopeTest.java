@@ -0,0 +1,106 @@
+package org.jdesktop.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test Task.ProgressScope.
+ */
+public class ProgressScopeTest {
+
+    private Application application;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+    }
+
+    /* A reusable step that only knows its own scope. */
+    private static void step(Task.ProgressScope scope, int records, List<Integer> progress, Task<?, ?> task) {
+        for (int i = 1; i <= records; i++) {
+            scope.setProgress(i, records);
+            progress.add(task.getProgress());
+        }
+    }
+
+    private static class StepsTask extends Task<List<Integer>, Void> {
+
+        StepsTask(Application application) {
+            super(application);
+        }
+
+        @Override
+        protected List<Integer> doInBackground() {
+            List<Integer> progress = new ArrayList<Integer>();
+            ProgressScope scope = getProgressScope();
+            assertSame(scope, getProgressScope());
+            step(scope.open(0.2f), 2, progress, this);               // 10, 20
+            ProgressScope validate = scope.open(0.5f);
+            validate.open(0.5f).setProgress(1.0f);                    // 45
+            progress.add(getProgress());
+            ProgressScope load = scope.open(0.3f);                    // closes validate: 70
+            progress.add(getProgress());
+            load.setProgress(0.5f);                                   // 85
+            progress.add(getProgress());
+            assertEquals(0.5f, load.getProgress(), 0.0001f);
+            assertTrue(validate.isClosed());
+            try {
+                validate.setProgress(0.5f);
+                fail("a closed scope can't report progress");
+            } catch (IllegalStateException ignore) {
+            }
+            try {
+                scope.open(0.0f);
+                fail("a child scope's weight must be positive");
+            } catch (IllegalArgumentException ignore) {
+            }
+            scope.close();                                            // 100
+            progress.add(getProgress());
+            assertTrue(load.isClosed());
+            assertEquals(1.0f, scope.getProgress(), 0.0001f);
+            return progress;
+        }
+    }
+
+    @Test
+    public void testNestedScopes() throws Exception {
+        StepsTask task = new StepsTask(application);
+        TaskService taskService = new TaskService("progress");
+        taskService.execute(task);
+        List<Integer> progress = task.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(10, 20, 45, 70, 85, 100), progress);
+        taskService.shutdown();
+    }
+
+    private static class OverflowTask extends Task<Integer, Void> {
+
+        OverflowTask(Application application) {
+            super(application);
+        }
+
+        @Override
+        protected Integer doInBackground() {
+            ProgressScope scope = getProgressScope();
+            scope.open(0.75f).close();
+            // only a quarter is left, the child is clipped to it
+            ProgressScope last = scope.open(0.5f);
+            last.setProgress(0.5f);
+            return getProgress();
+        }
+    }
+
+    @Test
+    public void testChildIsClippedToParent() throws Exception {
+        OverflowTask task = new OverflowTask(application);
+        TaskService taskService = new TaskService("progress");
+        taskService.execute(task);
+        assertEquals(Integer.valueOf(88), task.get(5, TimeUnit.SECONDS));
+        taskService.shutdown();
+    }
+}
@@ -0,0 +1,99 @@
+package org.jdesktop.application;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the TaskService rate limiter.
+ */
+public class RateLimitTest {
+
+    private Application application;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        taskService = new TaskService("network");
+    }
+
+    private static class RequestTask extends Task<Void, Void> {
+
+        final CountDownLatch finishedSignal;
+        final AtomicInteger runs;
+
+        RequestTask(Application application, CountDownLatch finishedSignal, AtomicInteger runs) {
+            super(application);
+            this.finishedSignal = finishedSignal;
+            this.runs = runs;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            runs.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        protected void finished() {
+            finishedSignal.countDown();
+        }
+    }
+
+    @Test
+    public void testRateLimit() throws InterruptedException {
+        taskService.setRateLimit(20.0, 2);
+        CountDownLatch finishedSignal = new CountDownLatch(6);
+        AtomicInteger runs = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            taskService.execute(new RequestTask(application, finishedSignal, runs));
+        }
+        assertTrue(finishedSignal.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 2 Tasks start right away, the other 4 one every 50 milliseconds
+        assertTrue("elapsed " + elapsed, elapsed >= 180L);
+        assertEquals(6, runs.get());
+        assertEquals(6L, taskService.getAdmittedTaskCount());
+        assertTrue(taskService.getAverageAdmissionWait(TimeUnit.MILLISECONDS) > 0L);
+        assertTrue(taskService.getMaximumAdmissionWait(TimeUnit.MILLISECONDS) >= 150L);
+        assertTrue(taskService.getThroughput() > 0.0);
+    }
+
+    @Test
+    public void testCancelWaitingTask() throws InterruptedException {
+        taskService.setRateLimit(1.0, 1);
+        CountDownLatch finishedSignal = new CountDownLatch(2);
+        AtomicInteger runs = new AtomicInteger();
+        RequestTask first = new RequestTask(application, finishedSignal, runs);
+        RequestTask second = new RequestTask(application, finishedSignal, runs);
+        taskService.execute(first);
+        taskService.execute(second);
+        assertTrue(taskService.getTasks().contains(second));
+        assertTrue(second.isPending());
+
+        second.cancel(false);
+        assertTrue(finishedSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals(1L, taskService.getAdmittedTaskCount());
+    }
+
+    @Test
+    public void testRemoveRateLimit() throws InterruptedException {
+        taskService.setRateLimit(0.1, 1);
+        CountDownLatch finishedSignal = new CountDownLatch(3);
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            taskService.execute(new RequestTask(application, finishedSignal, runs));
+        }
+        taskService.setRateLimit(0.0, 0);
+        assertTrue(finishedSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(3, runs.get());
+    }
+}
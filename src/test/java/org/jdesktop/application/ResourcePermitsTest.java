@@ -0,0 +1,193 @@
+package org.jdesktop.application;
+
+import java.awt.event.ActionEvent;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.swing.ActionMap;
+import javax.swing.SwingUtilities;
+import org.jdesktop.application.utils.Polling;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test ResourcePermits, Task.setRequiredResources and the resources
+ * parameter of &#064;Action.
+ */
+public class ResourcePermitsTest {
+
+    private Application application;
+    private ResourcePermits permits;
+    private ThreadPoolExecutor secondExecutor;
+    private TaskService first;
+    private TaskService second;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        permits = application.getContext().getResourcePermits();
+        secondExecutor = new ThreadPoolExecutor(2, 2, 1L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        first = new TaskService("first");
+        second = new TaskService("second", secondExecutor);
+    }
+
+    @After
+    public void methodTeardown() {
+        first.shutdownNow();
+        second.shutdownNow();
+    }
+
+    private static class BlockingTask extends Task<Void, Void> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        BlockingTask(Application application, String... resources) {
+            super(application);
+            setRequiredResources(resources);
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            started.countDown();
+            release.await();
+            return null;
+        }
+
+        @Override
+        protected void finished() {
+            finished.countDown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitWaitingTaskCount(int expected) throws Exception {
+        Polling.awaitValue(expected, new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return permits.getWaitingTaskCount();
+            }
+        });
+    }
+
+    @Test
+    public void testPermitsAcrossServices() throws Exception {
+        BlockingTask scanning = new BlockingTask(application, "scanner");
+        BlockingTask waiting = new BlockingTask(application, "scanner", "scanner");
+        assertEquals(Arrays.asList("scanner"), waiting.getRequiredResources());
+        first.execute(scanning);
+        await(scanning.started);
+        second.execute(waiting);
+        assertEquals(1, permits.getWaitingTaskCount());
+        assertEquals(0, permits.getAvailablePermits("scanner"));
+        assertEquals("waiting for scanner", waiting.getMessage());
+        assertEquals("no thread is held while waiting", 0, secondExecutor.getActiveCount());
+        assertFalse(waiting.started.await(100, TimeUnit.MILLISECONDS));
+        try {
+            waiting.setRequiredResources("printer");
+            fail("the resources can't change once the task has been executed");
+        } catch (IllegalStateException ignore) {
+        }
+
+        scanning.release.countDown();
+        await(waiting.started);
+        assertNull(waiting.getMessage());
+        waiting.release.countDown();
+        await(waiting.finished);
+        awaitWaitingTaskCount(0);
+        Polling.awaitValue(1, new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return permits.getAvailablePermits("scanner");
+            }
+        });
+    }
+
+    @Test
+    public void testFairness() throws Exception {
+        permits.setPermits("encoder", 2);
+        assertEquals(2, permits.getPermits("encoder"));
+        BlockingTask writing = new BlockingTask(application, "db");
+        BlockingTask exporting = new BlockingTask(application, "db", "encoder");
+        BlockingTask encoding = new BlockingTask(application, "encoder");
+        first.execute(writing);
+        await(writing.started);
+        first.execute(exporting);
+        second.execute(encoding);
+        // encoding needs an encoder permit and there are two, but the
+        // waiting export task comes first
+        assertEquals(2, permits.getWaitingTaskCount());
+        assertFalse(encoding.started.await(100, TimeUnit.MILLISECONDS));
+
+        writing.release.countDown();
+        await(exporting.started);
+        await(encoding.started);
+        exporting.release.countDown();
+        encoding.release.countDown();
+        await(encoding.finished);
+        await(exporting.finished);
+
+        try {
+            permits.setPermits("encoder", 0);
+            fail("a resource has at least one permit");
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testCancelWhileWaiting() throws Exception {
+        BlockingTask scanning = new BlockingTask(application, "scanner");
+        BlockingTask waiting = new BlockingTask(application, "scanner");
+        first.execute(scanning);
+        await(scanning.started);
+        first.execute(waiting);
+        assertEquals(1, permits.getWaitingTaskCount());
+        waiting.cancel(false);
+        awaitWaitingTaskCount(0);
+        scanning.release.countDown();
+        await(scanning.finished);
+        assertTrue(waiting.isCancelled());
+        assertEquals("the cancelled task never ran", 1L, waiting.started.getCount());
+    }
+
+    public class ScannerActions {
+
+        volatile BlockingTask task;
+
+        @Action(resources = {"scanner"})
+        public Task<Void, Void> scan() {
+            task = new BlockingTask(application);
+            task.release.countDown();
+            return task;
+        }
+    }
+
+    @Test
+    public void testActionResources() throws Exception {
+        final ScannerActions actions = new ScannerActions();
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                ApplicationContext context = application.getContext();
+                ResourceMap resourceMap = context.getResourceMap(ScannerActions.class);
+                ActionMap actionMap = new ApplicationActionMap(context, ScannerActions.class, actions, resourceMap);
+                actionMap.get("scan").actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "scan"));
+            }
+        });
+        await(actions.task.finished);
+        assertEquals(Arrays.asList("scanner"), actions.task.getRequiredResources());
+    }
+}
@@ -0,0 +1,152 @@
+package org.jdesktop.application;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test RetryingTask and RetryPolicy.
+ */
+public class RetryingTaskTest {
+
+    private Application application;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+    }
+
+    private static class FlakyTask extends RetryingTask<String, Void> {
+
+        final int failures;
+        final Exception exception;
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch finishedSignal = new CountDownLatch(1);
+        volatile Throwable failedCause = null;
+
+        FlakyTask(Application application, RetryPolicy retryPolicy, int failures, Exception exception) {
+            super(application, retryPolicy);
+            this.failures = failures;
+            this.exception = exception;
+        }
+
+        @Override
+        protected String attempt() throws Exception {
+            if (attempts.incrementAndGet() <= failures) {
+                throw exception;
+            }
+            return "done";
+        }
+
+        @Override
+        protected void failed(Throwable cause) {
+            failedCause = cause;
+        }
+
+        @Override
+        protected void finished() {
+            finishedSignal.countDown();
+        }
+    }
+
+    private static RetryPolicy ioPolicy(int maxAttempts, long initialDelay) {
+        return new RetryPolicy(maxAttempts, initialDelay, initialDelay * 4, TimeUnit.MILLISECONDS, 2.0, 0.0) {
+
+            @Override
+            public boolean isRetryable(Throwable cause) {
+                return cause instanceof IOException;
+            }
+        };
+    }
+
+    @Test
+    public void testRetryUntilSuccess() throws Exception {
+        FlakyTask task = new FlakyTask(application, ioPolicy(5, 20L), 2, new IOException("transient"));
+        final List<Integer> retries = new CopyOnWriteArrayList<Integer>();
+        task.addTaskListener(new TaskListener.Adapter<String, Void>() {
+
+            @Override
+            public void retrying(TaskEvent<Integer> event) {
+                retries.add(event.getValue());
+            }
+        });
+        TaskService taskService = new TaskService("retry");
+        taskService.execute(task);
+
+        assertEquals("done", task.get(5, TimeUnit.SECONDS));
+        assertTrue(task.finishedSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(3, task.getAttempt());
+        assertEquals(3, task.attempts.get());
+        assertTrue(task.getLastFailure() instanceof IOException);
+        assertTrue(task.getMessage().startsWith("Attempt 2 of 5"));
+        assertEquals(2, retries.size());
+        assertEquals(Integer.valueOf(2), retries.get(0));
+        assertEquals(Integer.valueOf(3), retries.get(1));
+    }
+
+    @Test
+    public void testNotRetryable() throws Exception {
+        FlakyTask task = new FlakyTask(application, ioPolicy(5, 20L), 2, new IllegalStateException("bug"));
+        new TaskService("retry").execute(task);
+
+        try {
+            task.get(5, TimeUnit.SECONDS);
+            fail("task should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(1, task.getAttempt());
+    }
+
+    @Test
+    public void testGiveUp() throws Exception {
+        FlakyTask task = new FlakyTask(application, ioPolicy(3, 10L), 10, new IOException("down"));
+        new TaskService("retry").execute(task);
+
+        assertTrue(task.finishedSignal.await(5, TimeUnit.SECONDS));
+        assertTrue(task.failedCause instanceof IOException);
+        assertEquals(3, task.attempts.get());
+    }
+
+    @Test
+    public void testThreadFreedBetweenAttempts() throws Exception {
+        TaskService taskService = new TaskService("retry", Executors.newSingleThreadExecutor());
+        FlakyTask flaky = new FlakyTask(application, ioPolicy(2, 500L), 1, new IOException("busy"));
+        FlakyTask other = new FlakyTask(application, null, 0, null);
+        taskService.execute(flaky);
+        Thread.sleep(100L);
+        taskService.execute(other);
+
+        assertEquals("done", other.get(300, TimeUnit.MILLISECONDS));
+        assertFalse(flaky.isDone());
+        assertEquals("done", flaky.get(5, TimeUnit.SECONDS));
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testPolicyDelays() {
+        RetryPolicy policy = new RetryPolicy(10, 100L, 1000L, TimeUnit.MILLISECONDS, 2.0, 0.0);
+        assertEquals(100L, policy.getDelay(1, TimeUnit.MILLISECONDS));
+        assertEquals(400L, policy.getDelay(3, TimeUnit.MILLISECONDS));
+        assertEquals(1000L, policy.getDelay(9, TimeUnit.MILLISECONDS));
+
+        RetryPolicy jittered = new RetryPolicy(10, 100L, 1000L, TimeUnit.MILLISECONDS, 2.0, 0.5);
+        for (int i = 0; i < 20; i++) {
+            long delay = jittered.getDelay(2, TimeUnit.MILLISECONDS);
+            assertTrue(delay >= 100L && delay <= 200L);
+        }
+
+        RetryPolicy seconds = new RetryPolicy(3, 2L, TimeUnit.SECONDS);
+        assertEquals(2000L, seconds.getInitialDelay(TimeUnit.MILLISECONDS));
+        assertEquals(60000L, seconds.getMaxDelay(TimeUnit.MILLISECONDS));
+    }
+}
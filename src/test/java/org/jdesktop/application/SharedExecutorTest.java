@@ -0,0 +1,140 @@
+package org.jdesktop.application;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jdesktop.application.utils.Polling;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskServices that share the ApplicationContext's thread pool.
+ */
+public class SharedExecutorTest {
+
+    private Application application;
+    private ApplicationContext context;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        context = application.getContext();
+    }
+
+    private static class CountingTask extends Task<Void, Void> {
+
+        final CountDownLatch startSignal;
+        final CountDownLatch finishedSignal;
+        final AtomicInteger running;
+        final AtomicInteger maxRunning;
+
+        CountingTask(Application application, CountDownLatch startSignal, CountDownLatch finishedSignal,
+                AtomicInteger running, AtomicInteger maxRunning) {
+            super(application);
+            this.startSignal = startSignal;
+            this.finishedSignal = finishedSignal;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        protected Void doInBackground() throws Exception {
+            int n = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), n));
+            }
+            try {
+                startSignal.await();
+            } finally {
+                running.decrementAndGet();
+            }
+            return null;
+        }
+
+        @Override
+        protected void finished() {
+            finishedSignal.countDown();
+        }
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws InterruptedException {
+        TaskService taskService = new TaskService("db", context.getSharedExecutor(), 2, 100);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch finishedSignal = new CountDownLatch(6);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            taskService.execute(new CountingTask(application, startSignal, finishedSignal, running, maxRunning));
+        }
+        Thread.sleep(200L);
+        assertEquals(2, running.get());
+
+        startSignal.countDown();
+        assertTrue(finishedSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+        taskService.shutdown();
+        assertTrue(taskService.awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(context.getSharedExecutor().isShutdown());
+    }
+
+    @Test
+    public void testQueueLimit() throws InterruptedException {
+        TaskService taskService = new TaskService("network", context.getSharedExecutor(), 1, 1);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch finishedSignal = new CountDownLatch(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        taskService.execute(new CountingTask(application, startSignal, finishedSignal, running, maxRunning));
+        taskService.execute(new CountingTask(application, startSignal, finishedSignal, running, maxRunning));
+        CountingTask rejected = new CountingTask(application, startSignal, finishedSignal, running, maxRunning);
+        try {
+            taskService.execute(rejected);
+            fail("queue should be full");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertTrue(rejected.isCancelled());
+        startSignal.countDown();
+        assertTrue(finishedSignal.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTaskCounts() throws Exception {
+        final TaskService taskService = new TaskService("io", context.getSharedExecutor(), 1, 10);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch finishedSignal = new CountDownLatch(3);
+        final AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            taskService.execute(new CountingTask(application, startSignal, finishedSignal, running, maxRunning));
+        }
+        Polling.awaitTrue("a task is running", new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                return running.get() > 0;
+            }
+        });
+        // The counts are updated on the EDT when the Tasks' state changes
+        awaitCounts(taskService, 1, 2);
+
+        startSignal.countDown();
+        assertTrue(finishedSignal.await(5, TimeUnit.SECONDS));
+        awaitCounts(taskService, 0, 0);
+        assertEquals(3L, taskService.getCompletedTaskCount());
+    }
+
+    private static void awaitCounts(final TaskService taskService, int active, int queued) throws Exception {
+        Polling.awaitValue(active + "/" + queued, new Callable<String>() {
+
+            @Override
+            public String call() {
+                return taskService.getActiveTaskCount() + "/" + taskService.getQueuedTaskCount();
+            }
+        });
+    }
+}
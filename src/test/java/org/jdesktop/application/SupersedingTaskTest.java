@@ -0,0 +1,100 @@
+package org.jdesktop.application;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskService.execute with a superseding key and a start delay.
+ */
+public class SupersedingTaskTest {
+
+    private static final String SEARCH = "search";
+    private Application application;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        taskService = new TaskService("search");
+    }
+
+    private static class SearchTask extends Task<String, Void> {
+
+        final String query;
+        final CountDownLatch startSignal;
+        final CountDownLatch completedSignal;
+        final AtomicInteger runs;
+        final AtomicInteger succeeded;
+
+        SearchTask(Application application, String query, CountDownLatch startSignal,
+                CountDownLatch completedSignal, AtomicInteger runs, AtomicInteger succeeded) {
+            super(application);
+            this.query = query;
+            this.startSignal = startSignal;
+            this.completedSignal = completedSignal;
+            this.runs = runs;
+            this.succeeded = succeeded;
+        }
+
+        @Override
+        protected String doInBackground() throws Exception {
+            runs.incrementAndGet();
+            startSignal.await();
+            return query;
+        }
+
+        @Override
+        protected void succeeded(String result) {
+            succeeded.incrementAndGet();
+        }
+
+        @Override
+        protected void finished() {
+            completedSignal.countDown();
+        }
+    }
+
+    @Test
+    public void testLatestWins() throws InterruptedException {
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch completedSignal = new CountDownLatch(3);
+        AtomicInteger runs = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+
+        SearchTask a = new SearchTask(application, "a", startSignal, completedSignal, runs, succeeded);
+        SearchTask ab = new SearchTask(application, "ab", startSignal, completedSignal, runs, succeeded);
+        SearchTask abc = new SearchTask(application, "abc", startSignal, completedSignal, runs, succeeded);
+        taskService.execute(a, SEARCH);
+        taskService.execute(ab, SEARCH);
+        taskService.execute(abc, SEARCH);
+        assertTrue(a.isCancelled());
+        assertTrue(ab.isCancelled());
+
+        startSignal.countDown();
+        assertTrue(completedSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(1, succeeded.get());
+        assertFalse(abc.isCancelled());
+    }
+
+    @Test
+    public void testDebounce() throws InterruptedException {
+        CountDownLatch startSignal = new CountDownLatch(0);
+        CountDownLatch completedSignal = new CountDownLatch(5);
+        AtomicInteger runs = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            SearchTask task = new SearchTask(application, "q" + i, startSignal, completedSignal, runs, succeeded);
+            taskService.execute(task, SEARCH, 500L, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(completedSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals(1, succeeded.get());
+    }
+}
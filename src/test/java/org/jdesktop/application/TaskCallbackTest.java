@@ -0,0 +1,224 @@
+package org.jdesktop.application;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test Task.whenCompleted, Task.subscribe and TaskService.submit.
+ */
+public class TaskCallbackTest {
+
+    private Application application;
+    private ExecutorService callbackExecutor;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        callbackExecutor = Executors.newFixedThreadPool(4, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "callback");
+            }
+        });
+    }
+
+    @After
+    public void methodTeardown() {
+        callbackExecutor.shutdown();
+    }
+
+    private static class RecordingCallback<T> implements TaskSubscriber<T, Integer> {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Integer> chunks = new CopyOnWriteArrayList<Integer>();
+        volatile T result = null;
+        volatile Throwable cause = null;
+        volatile String threadName = null;
+        volatile boolean onEDT = false;
+
+        @Override
+        public void process(List<Integer> values) {
+            chunks.addAll(values);
+        }
+
+        @Override
+        public void succeeded(T result) {
+            this.result = result;
+            threadName = Thread.currentThread().getName();
+            onEDT = SwingUtilities.isEventDispatchThread();
+            done.countDown();
+        }
+
+        @Override
+        public void failed(Throwable cause) {
+            this.cause = cause;
+            threadName = Thread.currentThread().getName();
+            onEDT = SwingUtilities.isEventDispatchThread();
+            done.countDown();
+        }
+    }
+
+    private class CountingTask extends Task<String, Integer> {
+
+        final int count;
+        final CountDownLatch go;
+
+        CountingTask(int count, CountDownLatch go) {
+            super(application);
+            this.count = count;
+            this.go = go;
+        }
+
+        @Override
+        protected String doInBackground() throws Exception {
+            go.await();
+            for (int i = 0; i < count; i++) {
+                publish(i);
+                Thread.sleep(1L);
+            }
+            if (count < 0) {
+                throw new IllegalStateException("negative count");
+            }
+            return "counted " + count;
+        }
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        RecordingCallback<String> callback = new RecordingCallback<String>();
+        CountingTask task = new CountingTask(3, new CountDownLatch(0));
+        new TaskService("callback").submit(task, callback, callbackExecutor);
+
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals("counted 3", callback.result);
+        assertNull(callback.cause);
+        assertEquals("callback", callback.threadName);
+    }
+
+    @Test
+    public void testFailureAndCancellation() throws Exception {
+        TaskService taskService = new TaskService("callback");
+        RecordingCallback<String> failed = new RecordingCallback<String>();
+        taskService.submit(new CountingTask(-1, new CountDownLatch(0)), failed, callbackExecutor);
+        assertTrue(failed.done.await(5, TimeUnit.SECONDS));
+        assertTrue(failed.cause instanceof IllegalStateException);
+
+        RecordingCallback<String> cancelled = new RecordingCallback<String>();
+        CountingTask task = new CountingTask(1, new CountDownLatch(1));
+        taskService.submit(task, cancelled, null);
+        task.cancel(true);
+        assertTrue(cancelled.done.await(5, TimeUnit.SECONDS));
+        assertTrue(cancelled.cause instanceof CancellationException);
+        assertTrue(cancelled.onEDT);
+    }
+
+    @Test
+    public void testSubscribeDeliversChunksInOrder() throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        CountingTask task = new CountingTask(200, go);
+        RecordingCallback<String> subscriber = new RecordingCallback<String>();
+        task.subscribe(subscriber, callbackExecutor);
+        new TaskService("callback").execute(task);
+        go.countDown();
+
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertEquals(200, subscriber.chunks.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(Integer.valueOf(i), subscriber.chunks.get(i));
+        }
+        assertEquals("counted 200", subscriber.result);
+    }
+
+    @Test
+    public void testSubscriptionsArentTaskListeners() throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        final CountingTask task = new CountingTask(1, go);
+        final List<String> events = new CopyOnWriteArrayList<String>();
+        task.addTaskListener(new TaskListener.Adapter<String, Integer>() {
+
+            @Override
+            public void finished(TaskEvent<Void> event) {
+                events.add("listener");
+            }
+        });
+        RecordingCallback<String> callback = new RecordingCallback<String>() {
+
+            @Override
+            public void succeeded(String result) {
+                events.add("callback");
+                super.succeeded(result);
+            }
+        };
+        task.whenCompleted(callback, null);
+        task.subscribe(new RecordingCallback<String>(), null);
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                assertEquals(1, task.getTaskListeners().length);
+                for (TaskListener<String, Integer> listener : task.getTaskListeners()) {
+                    task.removeTaskListener(listener);
+                }
+            }
+        });
+        new TaskService("callback").execute(task);
+        go.countDown();
+
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals("counted 1", callback.result);
+        assertEquals(Arrays.asList("callback"), events);
+    }
+
+    @Test
+    public void testSubscriptionsFollowTaskListeners() throws Exception {
+        CountingTask task = new CountingTask(0, new CountDownLatch(0));
+        final List<String> events = new CopyOnWriteArrayList<String>();
+        RecordingCallback<String> callback = new RecordingCallback<String>() {
+
+            @Override
+            public void succeeded(String result) {
+                events.add("callback");
+                super.succeeded(result);
+            }
+        };
+        task.whenCompleted(callback, null);
+        task.addTaskListener(new TaskListener.Adapter<String, Integer>() {
+
+            @Override
+            public void finished(TaskEvent<Void> event) {
+                events.add("listener");
+            }
+        });
+        new TaskService("callback").execute(task);
+
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("listener", "callback"), events);
+    }
+
+    @Test
+    public void testAlreadyCompleted() throws Exception {
+        RecordingCallback<String> first = new RecordingCallback<String>();
+        CountingTask task = new CountingTask(0, new CountDownLatch(0));
+        new TaskService("callback").submit(task, first, null);
+        assertTrue(first.done.await(5, TimeUnit.SECONDS));
+
+        RecordingCallback<String> late = new RecordingCallback<String>();
+        task.whenCompleted(late, callbackExecutor);
+        assertTrue(late.done.await(5, TimeUnit.SECONDS));
+        assertEquals("counted 0", late.result);
+    }
+}
@@ -0,0 +1,182 @@
+package org.jdesktop.application;
+
+import java.awt.event.ActionEvent;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import javax.swing.ActionMap;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskContextPropagator, Task.getActionName and
+ * TaskService.setRenamingThreads.
+ */
+public class TaskContextTest {
+
+    private static final ThreadLocal<String> currentUser = new ThreadLocal<String>();
+    private Application application;
+    private ExecutorService executor;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        executor = Executors.newSingleThreadExecutor();
+        taskService = new TaskService("context", executor);
+    }
+
+    @After
+    public void methodTeardown() {
+        taskService.shutdownNow();
+    }
+
+    private static class UserPropagator implements TaskContextPropagator<String> {
+
+        @Override
+        public String capture() {
+            return currentUser.get();
+        }
+
+        @Override
+        public String install(String user) {
+            String previous = currentUser.get();
+            currentUser.set(user);
+            return previous;
+        }
+    }
+
+    private static class ContextTask extends Task<Void, Void> {
+
+        final CountDownLatch finished = new CountDownLatch(1);
+        final boolean executeChild;
+        volatile ContextTask child;
+        volatile String backgroundUser;
+        volatile String backgroundThreadName;
+        volatile String succeededUser;
+
+        ContextTask(Application application, boolean executeChild) {
+            super(application);
+            this.executeChild = executeChild;
+            setTitle("Saving report");
+        }
+
+        @Override
+        protected Void doInBackground() {
+            backgroundUser = currentUser.get();
+            backgroundThreadName = Thread.currentThread().getName();
+            if (executeChild) {
+                child = new ContextTask(getApplication(), false);
+                getTaskService().execute(child);
+            }
+            return null;
+        }
+
+        @Override
+        protected void succeeded(Void result) {
+            succeededUser = currentUser.get();
+        }
+
+        @Override
+        protected void finished() {
+            finished.countDown();
+        }
+    }
+
+    private static <T> T onEDT(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<T>(callable);
+        SwingUtilities.invokeAndWait(task);
+        return task.get();
+    }
+
+    private String[] poolThreadState() throws Exception {
+        return executor.submit(new Callable<String[]>() {
+
+            @Override
+            public String[] call() {
+                return new String[]{currentUser.get(), Thread.currentThread().getName()};
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPropagation() throws Exception {
+        String poolThreadName = poolThreadState()[1];
+        UserPropagator propagator = new UserPropagator();
+        taskService.addContextPropagator(propagator);
+        assertEquals(1, taskService.getContextPropagators().size());
+        taskService.setRenamingThreads(true);
+        assertTrue(taskService.isRenamingThreads());
+        final ContextTask task = new ContextTask(application, false);
+        onEDT(new Callable<Void>() {
+
+            @Override
+            public Void call() {
+                currentUser.set("alice");
+                taskService.execute(task);
+                currentUser.remove();
+                return null;
+            }
+        });
+        assertTrue(task.finished.await(5, TimeUnit.SECONDS));
+        assertEquals("alice", task.backgroundUser);
+        assertEquals("alice", task.succeededUser);
+        assertEquals(poolThreadName + " [Saving report]", task.backgroundThreadName);
+        assertNull(task.getActionName());
+
+        // the pool thread and the EDT get their own state back
+        String[] state = poolThreadState();
+        assertNull(state[0]);
+        assertEquals(poolThreadName, state[1]);
+        assertNull(onEDT(new Callable<String>() {
+
+            @Override
+            public String call() {
+                return currentUser.get();
+            }
+        }));
+
+        taskService.removeContextPropagator(propagator);
+        assertTrue(taskService.getContextPropagators().isEmpty());
+    }
+
+    public class ContextActions {
+
+        volatile ContextTask task;
+
+        @Action
+        public Task<Void, Void> save() {
+            task = new ContextTask(application, true);
+            return task;
+        }
+    }
+
+    @Test
+    public void testActionName() throws Exception {
+        final ContextActions actions = new ContextActions();
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                ApplicationContext context = application.getContext();
+                ResourceMap resourceMap = context.getResourceMap(ContextActions.class);
+                ActionMap actionMap = new ApplicationActionMap(context, ContextActions.class, actions, resourceMap);
+                actionMap.get("save").actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "save"));
+            }
+        });
+        ContextTask task = actions.task;
+        assertTrue(task.finished.await(5, TimeUnit.SECONDS));
+        assertEquals("save", task.getActionName());
+        assertNull(task.backgroundUser);
+        // Tasks executed by the action's Tasks are attributed to the action too
+        assertTrue(task.child.finished.await(5, TimeUnit.SECONDS));
+        assertEquals("save", task.child.getActionName());
+    }
+}
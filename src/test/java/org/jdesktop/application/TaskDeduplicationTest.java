@@ -0,0 +1,250 @@
+package org.jdesktop.application;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.jdesktop.application.utils.Polling.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test Task deduplication and result caching in TaskService.
+ */
+public class TaskDeduplicationTest {
+
+    private Application application;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        taskService = new TaskService("dedup");
+    }
+
+    private static class LoadTask extends Task<String, Void> {
+
+        final CountDownLatch startSignal;
+        final CountDownLatch succeededSignal;
+        final AtomicInteger runs;
+        volatile String result = null;
+
+        LoadTask(Application application, Object key, CountDownLatch startSignal,
+                CountDownLatch succeededSignal, AtomicInteger runs) {
+            super(application);
+            this.startSignal = startSignal;
+            this.succeededSignal = succeededSignal;
+            this.runs = runs;
+            setDeduplicationKey(key);
+        }
+
+        @Override
+        protected String doInBackground() throws Exception {
+            runs.incrementAndGet();
+            startSignal.await();
+            return "customer";
+        }
+
+        @Override
+        protected void succeeded(String result) {
+            assertTrue(javax.swing.SwingUtilities.isEventDispatchThread());
+            this.result = result;
+            succeededSignal.countDown();
+        }
+    }
+
+    @Test
+    public void testInFlightDeduplication() throws InterruptedException {
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch succeededSignal = new CountDownLatch(3);
+        AtomicInteger runs = new AtomicInteger();
+
+        LoadTask first = new LoadTask(application, "42", startSignal, succeededSignal, runs);
+        LoadTask second = new LoadTask(application, "42", startSignal, succeededSignal, runs);
+        LoadTask third = new LoadTask(application, "42", startSignal, succeededSignal, runs);
+        taskService.execute(first);
+        taskService.execute(second);
+        taskService.execute(third);
+        assertEquals(3, taskService.getTasks().size());
+
+        startSignal.countDown();
+        assertTrue(succeededSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals("customer", second.result);
+        assertEquals("customer", third.result);
+    }
+
+    @Test
+    public void testSubmitReportsSharedResult() throws Exception {
+        taskService.setResultCache(10, 1, TimeUnit.MINUTES);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch succeededSignal = new CountDownLatch(3);
+        AtomicInteger runs = new AtomicInteger();
+        TaskCallback<String> callback = new TaskCallback<String>() {
+
+            @Override
+            public void succeeded(String result) {
+            }
+
+            @Override
+            public void failed(Throwable cause) {
+            }
+        };
+
+        LoadTask first = new LoadTask(application, "9", startSignal, succeededSignal, runs);
+        LoadTask second = new LoadTask(application, "9", startSignal, succeededSignal, runs);
+        taskService.execute(first);
+        Future<String> attached = taskService.submit(second, callback, null);
+        startSignal.countDown();
+        assertEquals("customer", attached.get(5, TimeUnit.SECONDS));
+        assertFalse(attached.isCancelled());
+        assertTrue(attached.isDone());
+
+        // a cache hit
+        LoadTask third = new LoadTask(application, "9", startSignal, succeededSignal, runs);
+        Future<String> cached = taskService.submit(third, callback, null);
+        assertEquals("customer", cached.get(5, TimeUnit.SECONDS));
+        assertFalse(cached.isCancelled());
+        assertTrue(succeededSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testAttachedTasksAreListedAndRecorded() throws Exception {
+        TaskHistory history = new TaskHistory(10);
+        taskService.setHistory(history);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch succeededSignal = new CountDownLatch(2);
+        AtomicInteger runs = new AtomicInteger();
+
+        LoadTask first = new LoadTask(application, "5", startSignal, succeededSignal, runs);
+        LoadTask second = new LoadTask(application, "5", startSignal, succeededSignal, runs);
+        taskService.execute(first);
+        taskService.execute(second);
+        assertTrue(taskService.getTasks().contains(second));
+
+        startSignal.countDown();
+        assertTrue(succeededSignal.await(5, TimeUnit.SECONDS));
+        awaitValue(0, new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return taskService.getTasks().size();
+            }
+        });
+        awaitValue(2L, new Callable<Long>() {
+
+            @Override
+            public Long call() {
+                return taskService.getCompletedTaskCount();
+            }
+        });
+        List<TaskHistory.Record> records = history.getRecords();
+        assertEquals(2, records.size());
+        for (TaskHistory.Record record : records) {
+            assertEquals(TaskHistory.Outcome.SUCCEEDED, record.getOutcome());
+        }
+    }
+
+    private static class RetryingLoadTask extends RetryingTask<String, Void> {
+
+        final CountDownLatch startSignal;
+        final AtomicInteger runs;
+
+        RetryingLoadTask(Application application, Object key, CountDownLatch startSignal, AtomicInteger runs) {
+            super(application, new RetryPolicy(1, 10, TimeUnit.MILLISECONDS));
+            this.startSignal = startSignal;
+            this.runs = runs;
+            setDeduplicationKey(key);
+        }
+
+        @Override
+        protected String attempt() throws Exception {
+            runs.incrementAndGet();
+            startSignal.await();
+            if ("bad".equals(getDeduplicationKey())) {
+                throw new IllegalStateException("no customer");
+            }
+            return "customer";
+        }
+    }
+
+    @Test
+    public void testAttachedRetryingTaskSucceeds() throws Exception {
+        CountDownLatch startSignal = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        RetryingLoadTask first = new RetryingLoadTask(application, "3", startSignal, runs);
+        RetryingLoadTask second = new RetryingLoadTask(application, "3", startSignal, runs);
+        taskService.execute(first);
+        taskService.execute(second);
+        startSignal.countDown();
+        assertEquals("customer", second.get(5, TimeUnit.SECONDS));
+        assertFalse(second.isCancelled());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testAttachedRetryingTaskFails() throws Exception {
+        CountDownLatch startSignal = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        RetryingLoadTask first = new RetryingLoadTask(application, "bad", startSignal, runs);
+        RetryingLoadTask second = new RetryingLoadTask(application, "bad", startSignal, runs);
+        taskService.execute(first);
+        taskService.execute(second);
+        startSignal.countDown();
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            fail("the attached task should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertFalse(second.isCancelled());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testDifferentKeysAreNotShared() throws InterruptedException {
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch succeededSignal = new CountDownLatch(2);
+        AtomicInteger runs = new AtomicInteger();
+
+        taskService.execute(new LoadTask(application, "1", startSignal, succeededSignal, runs));
+        taskService.execute(new LoadTask(application, "2", startSignal, succeededSignal, runs));
+        assertEquals(2, taskService.getTasks().size());
+
+        startSignal.countDown();
+        assertTrue(succeededSignal.await(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testResultCache() throws InterruptedException {
+        taskService.setResultCache(10, 1, TimeUnit.MINUTES);
+        CountDownLatch startSignal = new CountDownLatch(0);
+        AtomicInteger runs = new AtomicInteger();
+
+        CountDownLatch firstSucceeded = new CountDownLatch(1);
+        taskService.execute(new LoadTask(application, "7", startSignal, firstSucceeded, runs));
+        assertTrue(firstSucceeded.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch secondSucceeded = new CountDownLatch(1);
+        LoadTask second = new LoadTask(application, "7", startSignal, secondSucceeded, runs);
+        taskService.execute(second);
+        assertTrue(secondSucceeded.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals("customer", second.result);
+
+        taskService.clearResultCache();
+        CountDownLatch thirdSucceeded = new CountDownLatch(1);
+        taskService.execute(new LoadTask(application, "7", startSignal, thirdSucceeded, runs));
+        assertTrue(thirdSucceeded.await(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+}
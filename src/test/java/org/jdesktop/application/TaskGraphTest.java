@@ -0,0 +1,148 @@
+package org.jdesktop.application;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the TaskGraph class.
+ */
+public class TaskGraphTest {
+
+    private Application application;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+    }
+
+    private static class ConstantTask extends Task<Integer, Void> {
+
+        private final int value;
+
+        ConstantTask(Application application, int value) {
+            super(application);
+            this.value = value;
+        }
+
+        @Override
+        protected Integer doInBackground() {
+            return value;
+        }
+    }
+
+    private static class SumTask extends Task<Integer, Void> {
+
+        private final TaskGraph graph;
+        private final Task<Integer, ?>[] inputs;
+
+        SumTask(Application application, TaskGraph graph, Task<Integer, ?>... inputs) {
+            super(application);
+            this.graph = graph;
+            this.inputs = inputs;
+        }
+
+        @Override
+        protected Integer doInBackground() {
+            int sum = 0;
+            for (Task<Integer, ?> input : inputs) {
+                sum += graph.getResult(input);
+            }
+            return sum;
+        }
+    }
+
+    private static class FailingTask extends Task<Integer, Void> {
+
+        FailingTask(Application application) {
+            super(application);
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            throw new IllegalStateException("failed on purpose");
+        }
+
+        @Override
+        protected void failed(Throwable cause) {
+        }
+    }
+
+    @Test
+    public void testResultsPassAlongEdges() throws Exception {
+        TaskGraph graph = new TaskGraph(application);
+        ConstantTask a = new ConstantTask(application, 2);
+        ConstantTask b = new ConstantTask(application, 3);
+        SumTask c = new SumTask(application, graph, a);
+        SumTask d = new SumTask(application, graph, a, b);
+        SumTask e = new SumTask(application, graph, c, d);
+        graph.add(a);
+        graph.add(b);
+        graph.add(c, a);
+        graph.add(d, a, b);
+        graph.add(e, c, d);
+
+        TaskService taskService = new TaskService("graph");
+        taskService.execute(graph);
+        graph.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Integer.valueOf(7), e.get());
+        assertEquals(100, graph.getProgress());
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testFailurePropagatesDownstream() throws Exception {
+        TaskGraph graph = new TaskGraph(application);
+        FailingTask a = new FailingTask(application);
+        ConstantTask b = new ConstantTask(application, 1);
+        SumTask c = new SumTask(application, graph, a);
+        SumTask d = new SumTask(application, graph, c);
+        graph.add(a);
+        graph.add(b);
+        graph.add(c, a);
+        graph.add(d, c);
+
+        TaskService taskService = new TaskService("graph");
+        taskService.execute(graph);
+        try {
+            graph.get(5, TimeUnit.SECONDS);
+            fail("graph should have failed");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals(Integer.valueOf(1), b.get());
+        assertTrue(c.isCancelled());
+        assertTrue(d.isCancelled());
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testSingleThreadExecutor() throws Exception {
+        TaskGraph graph = new TaskGraph(application);
+        ConstantTask a = new ConstantTask(application, 4);
+        ConstantTask b = new ConstantTask(application, 5);
+        SumTask c = new SumTask(application, graph, a, b);
+        graph.add(a);
+        graph.add(b);
+        graph.add(c, a, b);
+
+        TaskService taskService = new TaskService("graph", Executors.newSingleThreadExecutor());
+        taskService.execute(graph);
+        graph.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Integer.valueOf(9), c.get());
+        taskService.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDependency() {
+        TaskGraph graph = new TaskGraph(application);
+        graph.add(new ConstantTask(application, 1), new ConstantTask(application, 2));
+    }
+}
@@ -0,0 +1,156 @@
+package org.jdesktop.application;
+
+import java.awt.event.ActionEvent;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import javax.swing.ActionMap;
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import javax.swing.JRootPane;
+import javax.swing.SwingUtilities;
+import org.jdesktop.application.utils.Polling;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskGroup and the TaskGroups of windows.
+ */
+public class TaskGroupTest {
+
+    private Application application;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+    }
+
+    private static <T> T onEDT(Callable<T> callable) throws Exception {
+        FutureTask<T> future = new FutureTask<T>(callable);
+        SwingUtilities.invokeAndWait(future);
+        return future.get();
+    }
+
+    private static class BlockedTask extends Task<Void, Void> {
+
+        final CountDownLatch gate;
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        BlockedTask(Application application, CountDownLatch gate) {
+            super(application);
+            this.gate = gate;
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            gate.await();
+            return null;
+        }
+
+        @Override
+        protected void finished() {
+            finished.countDown();
+        }
+    }
+
+    public static class GroupActions {
+
+        final CountDownLatch gate = new CountDownLatch(1);
+        volatile BlockedTask lastTask = null;
+
+        @Action
+        public Task<Void, Void> load() {
+            lastTask = new BlockedTask(Application.getInstance(), gate);
+            return lastTask;
+        }
+    }
+
+    private static void awaitTaskCount(final TaskGroup group, int expected) throws Exception {
+        Polling.awaitValue(expected, new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return group.getTaskCount();
+            }
+        });
+    }
+
+    @Test
+    public void testCancelGroup() throws Exception {
+        TaskGroup group = new TaskGroup("editor");
+        CountDownLatch gate = new CountDownLatch(1);
+        BlockedTask a = new BlockedTask(application, gate);
+        BlockedTask b = new BlockedTask(application, gate);
+        group.add(a);
+        group.add(b);
+        assertSame(group, a.getTaskGroup());
+        try {
+            new TaskGroup("other").add(a);
+            fail("a task can only belong to one group");
+        } catch (IllegalStateException ignore) {
+        }
+        TaskService taskService = new TaskService("group");
+        taskService.execute(a);
+        taskService.execute(b);
+        assertEquals(2, group.getTasks().size());
+
+        group.cancel();
+        assertTrue(a.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(b.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(a.isCancelled());
+        assertTrue(b.isCancelled());
+        awaitTaskCount(group, 0);
+        assertNull(a.getTaskGroup());
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testWindowGroup() throws Exception {
+        final ApplicationContext context = application.getContext();
+        onEDT(new Callable<Void>() {
+
+            @Override
+            public Void call() {
+                JRootPane rootPane = new JRootPane();
+                JPanel panel = new JPanel();
+                rootPane.getContentPane().add(panel);
+                TaskGroup group = context.getTaskGroup(panel);
+                assertNotNull(group);
+                assertSame(group, context.getTaskGroup(rootPane));
+                assertNull(context.getTaskGroup(new JPanel()));
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testActionTaskJoinsWindowGroup() throws Exception {
+        final ApplicationContext context = application.getContext();
+        final GroupActions actions = new GroupActions();
+        TaskGroup group = onEDT(new Callable<TaskGroup>() {
+
+            @Override
+            public TaskGroup call() {
+                JRootPane rootPane = new JRootPane();
+                JButton button = new JButton();
+                rootPane.getContentPane().add(button);
+                ResourceMap resourceMap = context.getResourceMap(GroupActions.class);
+                ActionMap actionMap = new ApplicationActionMap(context, GroupActions.class, actions, resourceMap);
+                actionMap.get("load").actionPerformed(new ActionEvent(button, ActionEvent.ACTION_PERFORMED, "load"));
+                return context.getTaskGroup(button);
+            }
+        });
+        BlockedTask task = actions.lastTask;
+        assertNotNull(task);
+        assertSame(group, task.getTaskGroup());
+        awaitTaskCount(group, 1);
+
+        group.cancel();
+        assertTrue(task.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(task.isCancelled());
+        awaitTaskCount(group, 0);
+    }
+}
@@ -0,0 +1,141 @@
+package org.jdesktop.application;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.jdesktop.application.utils.Polling;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskHistory and TaskService.setHistory.
+ */
+public class TaskHistoryTest {
+
+    private Application application;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        taskService = new TaskService("history", Executors.newFixedThreadPool(2));
+    }
+
+    @After
+    public void methodTeardown() {
+        taskService.shutdownNow();
+    }
+
+    private static class SleepTask extends Task<Integer, Void> {
+
+        final int id;
+        final long sleep;
+
+        SleepTask(Application application, int id, long sleep) {
+            super(application);
+            this.id = id;
+            this.sleep = sleep;
+            setTitle("sleep " + id);
+        }
+
+        @Override
+        protected Integer doInBackground() throws InterruptedException {
+            Thread.sleep(sleep);
+            if (id < 0) {
+                throw new IllegalStateException("negative id");
+            }
+            return id;
+        }
+    }
+
+    private static class OtherTask extends SleepTask {
+
+        OtherTask(Application application, int id) {
+            super(application, id, 0L);
+        }
+    }
+
+    private static void awaitRecordedCount(final TaskHistory history, long expected) throws Exception {
+        Polling.awaitValue(expected, new Callable<Long>() {
+
+            @Override
+            public Long call() {
+                return history.getRecordedCount();
+            }
+        });
+    }
+
+    @Test
+    public void testRingBuffer() throws Exception {
+        TaskHistory history = new TaskHistory(3);
+        taskService.setHistory(history);
+        assertSame(history, taskService.getHistory());
+        for (int id = 0; id < 4; id++) {
+            SleepTask task = new SleepTask(application, id, 20L);
+            taskService.execute(task);
+            task.get(5, TimeUnit.SECONDS);
+            awaitRecordedCount(history, id + 1);
+        }
+        SleepTask failing = new SleepTask(application, -1, 0L);
+        taskService.execute(failing);
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("the task should have failed");
+        } catch (ExecutionException ignore) {
+        }
+        awaitRecordedCount(history, 5L);
+
+        assertEquals(3, history.size());
+        List<TaskHistory.Record> records = history.getRecords();
+        assertEquals(3, records.size());
+        assertEquals("sleep 2", records.get(0).getTitle());
+        assertEquals("sleep 3", records.get(1).getTitle());
+        assertEquals("sleep -1", records.get(2).getTitle());
+        assertEquals(TaskHistory.Outcome.SUCCEEDED, records.get(0).getOutcome());
+        assertEquals(TaskHistory.Outcome.FAILED, records.get(2).getOutcome());
+        assertSame(SleepTask.class, records.get(0).getTaskClass());
+        assertNotNull(records.get(0).getThreadName());
+        assertTrue(records.get(0).getRunTime(TimeUnit.MILLISECONDS) >= 15L);
+        assertTrue(records.get(0).getQueueWait(TimeUnit.NANOSECONDS) >= 0L);
+
+        history.clear();
+        assertEquals(0, history.size());
+        assertTrue(history.getRecords().isEmpty());
+        assertEquals(-1L, history.getSummary().getRunTimePercentile(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testSummary() throws Exception {
+        TaskHistory history = new TaskHistory(200);
+        for (int i = 1; i <= 100; i++) {
+            history.record(new SleepTask(application, i, 0L), i * 1000L, i * 1000000L, TaskHistory.Outcome.SUCCEEDED, "worker");
+        }
+        history.record(new OtherTask(application, 0), 0L, 5000000000L, TaskHistory.Outcome.CANCELLED, "worker");
+
+        TaskHistory.Summary summary = history.getSummary(SleepTask.class);
+        assertEquals(100, summary.getCount());
+        assertEquals(50L, summary.getRunTimePercentile(50, TimeUnit.MILLISECONDS));
+        assertEquals(90L, summary.getRunTimePercentile(90, TimeUnit.MILLISECONDS));
+        assertEquals(100L, summary.getRunTimePercentile(100, TimeUnit.MILLISECONDS));
+        assertEquals(1L, summary.getRunTimePercentile(0, TimeUnit.MILLISECONDS));
+        assertEquals(99L, summary.getQueueWaitPercentile(99, TimeUnit.MICROSECONDS));
+        assertEquals(100, summary.getOutcomeCount(TaskHistory.Outcome.SUCCEEDED));
+
+        TaskHistory.Summary all = history.getSummary();
+        assertEquals(101, all.getCount());
+        assertEquals(1, all.getOutcomeCount(TaskHistory.Outcome.CANCELLED));
+        assertEquals(5L, all.getRunTimePercentile(100, TimeUnit.SECONDS));
+        assertEquals(2, history.getTaskClasses().size());
+        assertTrue(history.getTaskClasses().contains(OtherTask.class));
+        try {
+            all.getRunTimePercentile(101, TimeUnit.MILLISECONDS);
+            fail("percentiles are between 0 and 100");
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+}
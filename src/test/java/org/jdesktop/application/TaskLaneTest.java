@@ -0,0 +1,149 @@
+package org.jdesktop.application;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.jdesktop.application.utils.Polling;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the serial lanes of Tasks with an ordering key.
+ */
+public class TaskLaneTest {
+
+    private Application application;
+    private TaskService taskService;
+    private final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        taskService = new TaskService("lanes", Executors.newFixedThreadPool(4));
+    }
+
+    @After
+    public void methodTeardown() {
+        taskService.shutdownNow();
+    }
+
+    private class LoggingTask extends Task<Void, Void> {
+
+        final String name;
+        final CountDownLatch gate;
+        final CountDownLatch running = new CountDownLatch(1);
+
+        LoggingTask(String name, Object orderingKey, CountDownLatch gate) {
+            super(application);
+            this.name = name;
+            this.gate = gate;
+            setOrderingKey(orderingKey);
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            log.add("start " + name);
+            running.countDown();
+            gate.await();
+            Thread.sleep(5L);
+            log.add("end " + name);
+            return null;
+        }
+    }
+
+    @Test
+    public void testSerialWithinKey() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        LoggingTask load = new LoggingTask("load", "x", gate);
+        LoggingTask save = new LoggingTask("save", "x", new CountDownLatch(0));
+        LoggingTask other = new LoggingTask("other", "y", new CountDownLatch(0));
+        taskService.execute(load);
+        taskService.execute(save);
+        taskService.execute(other);
+
+        assertTrue(load.running.await(5, TimeUnit.SECONDS));
+        other.get(5, TimeUnit.SECONDS);
+        // "save" waits for "load" while "other" runs in parallel
+        assertFalse(save.running.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, taskService.getLaneDepth("x"));
+        assertTrue(taskService.getOrderingKeys().contains("x"));
+        try {
+            save.setOrderingKey("y");
+            fail("the ordering key can't change once the task has been executed");
+        } catch (IllegalStateException ignore) {
+        }
+
+        gate.countDown();
+        save.get(5, TimeUnit.SECONDS);
+        List<String> lane = new ArrayList<String>();
+        for (String entry : log) {
+            if (!entry.endsWith("other")) {
+                lane.add(entry);
+            }
+        }
+        assertEquals(4, lane.size());
+        assertEquals("start load", lane.get(0));
+        assertEquals("end load", lane.get(1));
+        assertEquals("start save", lane.get(2));
+        assertEquals("end save", lane.get(3));
+    }
+
+    private class FlakyTask extends RetryingTask<Void, Void> {
+
+        int failures = 1;
+
+        FlakyTask(Object orderingKey) {
+            super(application, new RetryPolicy(3, 200, TimeUnit.MILLISECONDS));
+            setOrderingKey(orderingKey);
+        }
+
+        @Override
+        protected Void attempt() throws Exception {
+            log.add("attempt " + getAttempt());
+            if (failures-- > 0) {
+                throw new IOException("flaky");
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void testRetryingTaskKeepsItsLane() throws Exception {
+        FlakyTask flaky = new FlakyTask("r");
+        LoggingTask next = new LoggingTask("next", "r", new CountDownLatch(0));
+        taskService.execute(flaky);
+        taskService.execute(next);
+
+        next.get(5, TimeUnit.SECONDS);
+        flaky.get(5, TimeUnit.SECONDS);
+        // "next" waits while the first attempt backs off
+        assertEquals(4, log.size());
+        assertEquals("attempt 1", log.get(0));
+        assertEquals("attempt 2", log.get(1));
+        assertEquals("start next", log.get(2));
+        assertEquals("end next", log.get(3));
+    }
+
+    @Test
+    public void testLaneIsDroppedWhenDone() throws Exception {
+        LoggingTask task = new LoggingTask("only", "z", new CountDownLatch(0));
+        taskService.execute(task);
+        task.get(5, TimeUnit.SECONDS);
+        Polling.awaitValue(0, new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return taskService.getLaneDepth("z");
+            }
+        });
+        assertFalse(taskService.getOrderingKeys().contains("z"));
+    }
+}
@@ -0,0 +1,211 @@
+package org.jdesktop.application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.jdesktop.application.utils.Polling;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskMonitor's aggregateProgress, runningTaskCount, queuedTaskCount
+ * and throughput properties.
+ */
+public class TaskMonitorStatisticsTest {
+
+    private Application application;
+    private ApplicationContext context;
+    private TaskService taskService;
+    private TaskMonitor taskMonitor;
+    private volatile int maxProgress = -1;
+    private volatile double maxThroughput = 0.0;
+
+    @Before
+    public void methodSetup() throws Exception {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        context = application.getContext();
+        taskService = new TaskService("statistics", Executors.newFixedThreadPool(2));
+        context.addTaskService(taskService);
+        taskMonitor = onEDT(new Callable<TaskMonitor>() {
+
+            @Override
+            public TaskMonitor call() {
+                TaskMonitor monitor = new TaskMonitor(context);
+                monitor.setUpdateInterval(20);
+                monitor.addPropertyChangeListener(new PropertyChangeListener() {
+
+                    @Override
+                    public void propertyChange(PropertyChangeEvent e) {
+                        if (TaskMonitor.PROP_AGGREGATE_PROGRESS.equals(e.getPropertyName())) {
+                            maxProgress = Math.max(maxProgress, (Integer) e.getNewValue());
+                        } else if (TaskMonitor.PROP_THROUGHPUT.equals(e.getPropertyName())) {
+                            maxThroughput = Math.max(maxThroughput, (Double) e.getNewValue());
+                        }
+                    }
+                });
+                return monitor;
+            }
+        });
+    }
+
+    @After
+    public void methodTeardown() {
+        taskService.shutdownNow();
+        context.removeTaskService(taskService);
+    }
+
+    private static <T> T onEDT(Callable<T> callable) throws Exception {
+        FutureTask<T> future = new FutureTask<T>(callable);
+        SwingUtilities.invokeAndWait(future);
+        return future.get();
+    }
+
+    private class GatedTask extends Task<Void, Void> {
+
+        final int progress;
+        final CountDownLatch gate;
+
+        GatedTask(int workUnits, int progress, CountDownLatch gate) {
+            super(application);
+            this.progress = progress;
+            this.gate = gate;
+            setWorkUnits(workUnits);
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            if (progress >= 0) {
+                setProgress(progress);
+            }
+            gate.await();
+            return null;
+        }
+    }
+
+    /* Polls until the monitor reports the expected values. */
+    private void awaitStatistics(int progress, int running, int queued) throws Exception {
+        final Callable<String> statistics = new Callable<String>() {
+
+            @Override
+            public String call() {
+                return taskMonitor.getAggregateProgress() + "/" + taskMonitor.getRunningTaskCount()
+                        + "/" + taskMonitor.getQueuedTaskCount();
+            }
+        };
+        Polling.awaitValue(progress + "/" + running + "/" + queued, new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                return onEDT(statistics);
+            }
+        });
+    }
+
+    @Test
+    public void testWeightedProgress() throws Exception {
+        onEDT(new Callable<Void>() {
+
+            @Override
+            public Void call() {
+                taskMonitor.setProgressWeighted(true);
+                return null;
+            }
+        });
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedTask big = new GatedTask(3, 50, gate);
+        GatedTask small = new GatedTask(1, 0, gate);
+        GatedTask waiting = new GatedTask(1, -1, gate);
+        taskService.execute(big);
+        taskService.execute(small);
+        taskService.execute(waiting);
+
+        // (3 * 50 + 1 * 0 + 1 * 0) / 5
+        awaitStatistics(30, 2, 1);
+
+        gate.countDown();
+        waiting.get(5, TimeUnit.SECONDS);
+        awaitStatistics(0, 0, 0);
+        assertEquals(100, maxProgress);
+        assertTrue(maxThroughput > 0.0);
+    }
+
+    @Test
+    public void testUnweightedAndIndeterminateProgress() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedTask first = new GatedTask(3, -1, gate);
+        taskService.execute(first);
+        awaitStatistics(-1, 1, 0);
+
+        GatedTask second = new GatedTask(1, 60, gate);
+        taskService.execute(second);
+        // (0 + 60) / 2, work units are ignored
+        awaitStatistics(30, 2, 0);
+
+        gate.countDown();
+        second.get(5, TimeUnit.SECONDS);
+        first.get(5, TimeUnit.SECONDS);
+        awaitStatistics(0, 0, 0);
+    }
+
+    private class BackingOffTask extends RetryingTask<Void, Void> {
+
+        final CountDownLatch gate;
+
+        BackingOffTask(CountDownLatch gate) {
+            super(application, new RetryPolicy(2, 60, TimeUnit.SECONDS));
+            this.gate = gate;
+        }
+
+        @Override
+        protected Void attempt() throws Exception {
+            if (getAttempt() == 1) {
+                throw new IOException("retry later");
+            }
+            gate.await();
+            return null;
+        }
+    }
+
+    @Test
+    public void testRetryingTaskCountsAsRunning() throws Exception {
+        final BackingOffTask task = new BackingOffTask(new CountDownLatch(0));
+        final AtomicInteger started = new AtomicInteger();
+        task.addPropertyChangeListener(new PropertyChangeListener() {
+
+            @Override
+            public void propertyChange(PropertyChangeEvent e) {
+                if (Task.PROP_STARTED.equals(e.getPropertyName())) {
+                    started.incrementAndGet();
+                }
+            }
+        });
+        taskService.execute(task);
+
+        // The first attempt failed, the Task backs off for a minute
+        awaitStatistics(-1, 1, 0);
+        Polling.awaitValue("1/0", new Callable<String>() {
+
+            @Override
+            public String call() {
+                return taskService.getActiveTaskCount() + "/" + taskService.getQueuedTaskCount();
+            }
+        });
+        assertTrue(task.isStarted());
+        assertFalse(task.isPending());
+        assertEquals(1, started.get());
+
+        task.cancel(true);
+        awaitStatistics(0, 0, 0);
+        assertEquals(1, started.get());
+    }
+}
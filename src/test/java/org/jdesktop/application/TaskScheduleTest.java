@@ -0,0 +1,194 @@
+package org.jdesktop.application;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.jdesktop.application.utils.Polling;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskService.scheduleAtFixedRate, scheduleWithFixedDelay and TaskSchedule.
+ */
+public class TaskScheduleTest {
+
+    private Application application;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+    }
+
+    private class SleepTask extends Task<Void, Void> {
+
+        final long millis;
+        final AtomicInteger runs;
+
+        SleepTask(long millis, AtomicInteger runs) {
+            super(application);
+            this.millis = millis;
+            this.runs = runs;
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            runs.incrementAndGet();
+            Thread.sleep(millis);
+            return null;
+        }
+    }
+
+    private class SleepTaskFactory implements Callable<Task<?, ?>> {
+
+        final long millis;
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger created = new AtomicInteger();
+        final CountDownLatch enough;
+
+        SleepTaskFactory(long millis, int enough) {
+            this.millis = millis;
+            this.enough = new CountDownLatch(enough);
+        }
+
+        @Override
+        public Task<?, ?> call() {
+            created.incrementAndGet();
+            enough.countDown();
+            return new SleepTask(millis, runs);
+        }
+    }
+
+    /* The factory is called by the schedule on the EDT, let it finish the run. */
+    private static void flushEDT() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void testFixedRateSkipsOverlappingRuns() throws Exception {
+        TaskService taskService = new TaskService("schedule");
+        SleepTaskFactory factory = new SleepTaskFactory(250L, 3);
+        TaskSchedule schedule = taskService.scheduleAtFixedRate(factory, 0L, 100L, TimeUnit.MILLISECONDS,
+                TaskSchedule.OverlapPolicy.SKIP);
+
+        assertTrue(factory.enough.await(5, TimeUnit.SECONDS));
+        flushEDT();
+        schedule.cancel();
+        assertTrue(schedule.isCancelled());
+        assertTrue(schedule.getSkippedCount() > 0);
+        assertTrue(schedule.getRunCount() >= 3);
+        assertTrue(schedule.getCurrentTask().isCancelled());
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testFixedRateCancelsPreviousRun() throws Exception {
+        TaskService taskService = new TaskService("schedule");
+        SleepTaskFactory factory = new SleepTaskFactory(10000L, 1);
+        final TaskSchedule schedule = taskService.scheduleAtFixedRate(factory, 0L, 150L, TimeUnit.MILLISECONDS,
+                TaskSchedule.OverlapPolicy.CANCEL_PREVIOUS);
+
+        assertTrue(factory.enough.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100L);
+        final Task<?, ?> first = schedule.getCurrentTask();
+        Polling.awaitTrue("the next run started", new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                return schedule.getCurrentTask() != first;
+            }
+        });
+        schedule.cancel();
+        assertTrue(first.isCancelled());
+        assertTrue(schedule.getCurrentTask().isCancelled());
+        assertEquals(0, schedule.getSkippedCount());
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testFixedDelayNeverOverlaps() throws Exception {
+        TaskService taskService = new TaskService("schedule");
+        SleepTaskFactory factory = new SleepTaskFactory(100L, 3);
+        long start = System.currentTimeMillis();
+        TaskSchedule schedule = taskService.scheduleWithFixedDelay(factory, 0L, 50L, TimeUnit.MILLISECONDS);
+
+        assertTrue(factory.enough.await(5, TimeUnit.SECONDS));
+        // two runs of 100ms, each followed by a 50ms delay, precede the third one
+        assertTrue(System.currentTimeMillis() - start >= 300L);
+        flushEDT();
+        schedule.cancel();
+        assertEquals(0, schedule.getSkippedCount());
+        assertEquals(3, schedule.getRunCount());
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testScheduledRunsAreVisible() throws Exception {
+        TaskService taskService = new TaskService("schedule");
+        SleepTaskFactory factory = new SleepTaskFactory(5000L, 1);
+        TaskSchedule schedule = taskService.scheduleWithFixedDelay(factory, 0L, 1L, TimeUnit.SECONDS);
+
+        assertTrue(factory.enough.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50L);
+        assertTrue(taskService.getTasks().contains(schedule.getCurrentTask()));
+        schedule.cancel();
+        assertTrue(schedule.getCurrentTask().isCancelled());
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testFullQueueSkipsRun() throws Exception {
+        TaskService taskService = new TaskService("schedule", Executors.newCachedThreadPool(), 1, 0);
+        final CountDownLatch release = new CountDownLatch(1);
+        Task<Void, Void> blocker = new Task<Void, Void>(application) {
+
+            @Override
+            protected Void doInBackground() throws InterruptedException {
+                release.await();
+                return null;
+            }
+        };
+        taskService.execute(blocker);
+        final SleepTaskFactory factory = new SleepTaskFactory(0L, 3);
+        TaskSchedule schedule = taskService.scheduleWithFixedDelay(factory, 0L, 50L, TimeUnit.MILLISECONDS);
+
+        // the queue is full, the runs are skipped but the schedule goes on
+        assertTrue(factory.enough.await(5, TimeUnit.SECONDS));
+        flushEDT();
+        assertFalse(schedule.isCancelled());
+        assertTrue(schedule.getSkippedCount() >= 2);
+        assertEquals(0, factory.runs.get());
+
+        release.countDown();
+        Polling.awaitTrue("a run executed", new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                return factory.runs.get() > 0;
+            }
+        });
+        schedule.cancel();
+        taskService.shutdown();
+    }
+
+    @Test
+    public void testShutdown() {
+        TaskService taskService = new TaskService("schedule");
+        taskService.shutdown();
+        try {
+            taskService.scheduleWithFixedDelay(new SleepTaskFactory(0L, 1), 0L, 1L, TimeUnit.SECONDS);
+            fail("shut down TaskService should reject schedules");
+        } catch (RejectedExecutionException ignore) {
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.jdesktop.application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskService.executeAll.
+ */
+public class TaskServiceBatchTest {
+
+    private Application application;
+    private ApplicationContext context;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        context = application.getContext();
+        taskService = new TaskService("batch");
+        context.addTaskService(taskService);
+    }
+
+    @After
+    public void methodTeardown() {
+        taskService.shutdownNow();
+        context.removeTaskService(taskService);
+    }
+
+    private static <T> T onEDT(Callable<T> callable) throws Exception {
+        FutureTask<T> future = new FutureTask<T>(callable);
+        SwingUtilities.invokeAndWait(future);
+        return future.get();
+    }
+
+    private class GatedTask extends Task<Void, Void> {
+
+        final CountDownLatch gate;
+
+        GatedTask(CountDownLatch gate) {
+            super(application);
+            this.gate = gate;
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            gate.await();
+            return null;
+        }
+    }
+
+    private static class EventCounter implements PropertyChangeListener {
+
+        final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            count.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testSingleEvent() throws Exception {
+        final EventCounter serviceEvents = new EventCounter();
+        final EventCounter monitorEvents = new EventCounter();
+        final TaskMonitor monitor = onEDT(new Callable<TaskMonitor>() {
+
+            @Override
+            public TaskMonitor call() {
+                TaskMonitor monitor = new TaskMonitor(context);
+                monitor.addPropertyChangeListener("tasks", monitorEvents);
+                taskService.addPropertyChangeListener("tasks", serviceEvents);
+                return monitor;
+            }
+        });
+        CountDownLatch gate = new CountDownLatch(1);
+        final List<GatedTask> tasks = new ArrayList<GatedTask>();
+        for (int i = 0; i < 50; i++) {
+            tasks.add(new GatedTask(gate));
+        }
+        onEDT(new Callable<Void>() {
+
+            @Override
+            public Void call() {
+                taskService.executeAll(tasks);
+                return null;
+            }
+        });
+        assertEquals(1, serviceEvents.count.get());
+        assertEquals(1, monitorEvents.count.get());
+        assertEquals(tasks, taskService.getTasks());
+        List<Task<?, ?>> monitored = onEDT(new Callable<List<Task<?, ?>>>() {
+
+            @Override
+            public List<Task<?, ?>> call() {
+                return new ArrayList<Task<?, ?>>(monitor.getTasks());
+            }
+        });
+        assertEquals(tasks, monitored);
+
+        gate.countDown();
+        for (GatedTask task : tasks) {
+            task.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testInvalidBatch() throws Exception {
+        CountDownLatch gate = new CountDownLatch(0);
+        GatedTask task = new GatedTask(gate);
+        try {
+            taskService.executeAll(Arrays.asList(task, task));
+            fail("the same task twice should be rejected");
+        } catch (IllegalArgumentException ignore) {
+        }
+        try {
+            taskService.executeAll(Arrays.asList(task, null));
+            fail("a null task should be rejected");
+        } catch (IllegalArgumentException ignore) {
+        }
+        assertNull(task.getTaskService());
+        assertTrue(taskService.getTasks().isEmpty());
+
+        taskService.executeAll(Arrays.asList(task));
+        task.get(5, TimeUnit.SECONDS);
+    }
+}
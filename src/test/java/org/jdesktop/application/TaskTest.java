@@ -5,7 +5,15 @@
 
 package org.jdesktop.application;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.*;
+import org.jdesktop.application.utils.Polling;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -240,6 +248,61 @@ public class TaskTest
       assertNull(stl.getTaskEvent().getValue());
       */
     }
-}
-
 
+    /* Each message event's old value must be the previous event's new
+     * value, even when several threads set the message at once.
+     */
+    @Test
+    public void testConcurrentMessages() throws Exception
+    {
+        final Task task = new DoNothingTask();
+        final Map<Object, Object> chain = Collections.synchronizedMap(new HashMap<Object, Object>());
+        task.addPropertyChangeListener(new PropertyChangeListener()
+        {
+            public void propertyChange(PropertyChangeEvent e)
+            {
+                if (Task.PROP_MESSAGE.equals(e.getPropertyName()))
+                {
+                    assertNull("each message replaced once", chain.put(e.getOldValue(), e.getNewValue()));
+                }
+            }
+        });
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int id = t;
+            threads[t] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < 500; i++)
+                    {
+                        task.setMessage(id + "-" + i);
+                        task.getMessageDuration(TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        // The events are delivered on the EDT, in batches
+        Polling.awaitValue(2000, new Callable<Integer>()
+        {
+            public Integer call()
+            {
+                return chain.size();
+            }
+        });
+        Object message = "the initial message";
+        for (int i = 0; i < 2000; i++)
+        {
+            message = chain.get(message);
+            assertNotNull("unbroken chain of messages", message);
+        }
+        assertEquals(task.getMessage(), message);
+        assertTrue(task.getMessageDuration(TimeUnit.MILLISECONDS) >= 0L);
+    }
+}
@@ -0,0 +1,172 @@
+package org.jdesktop.application;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test Task timeouts and the TaskService default timeout.
+ */
+public class TaskTimeoutTest {
+
+    private Application application;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        taskService = new TaskService("timeout");
+    }
+
+    private static class SleepTask extends Task<Void, Void> {
+
+        final long sleepMillis;
+        final CountDownLatch finishedSignal = new CountDownLatch(1);
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        volatile boolean interrupted = false;
+
+        SleepTask(Application application, long sleepMillis) {
+            super(application);
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            return null;
+        }
+
+        @Override
+        protected void timedOut() {
+            timedOut.set(true);
+        }
+
+        @Override
+        protected void cancelled() {
+            cancelled.set(true);
+        }
+
+        @Override
+        protected void finished() {
+            finishedSignal.countDown();
+        }
+    }
+
+    @Test
+    public void testTaskTimeout() throws InterruptedException {
+        SleepTask task = new SleepTask(application, 10000L);
+        task.setTimeout(200L, TimeUnit.MILLISECONDS);
+        final AtomicLong eventValue = new AtomicLong();
+        final AtomicBoolean listenerCancelled = new AtomicBoolean(false);
+        final CountDownLatch listenerFinished = new CountDownLatch(1);
+        task.addTaskListener(new TaskListener.Adapter<Void, Void>() {
+
+            @Override
+            public void timedOut(TaskEvent<Long> event) {
+                eventValue.set(event.getValue());
+                super.timedOut(event);
+            }
+
+            @Override
+            public void cancelled(TaskEvent<Void> event) {
+                listenerCancelled.set(true);
+            }
+
+            @Override
+            public void finished(TaskEvent<Void> event) {
+                listenerFinished.countDown();
+            }
+        });
+        assertEquals(-1L, task.getRemainingTime(TimeUnit.MILLISECONDS));
+        taskService.execute(task);
+        assertTrue(task.getRemainingTime(TimeUnit.MILLISECONDS) > 0L);
+
+        assertTrue(listenerFinished.await(5, TimeUnit.SECONDS));
+        assertTrue(task.isTimedOut());
+        assertTrue(task.timedOut.get());
+        assertFalse(task.cancelled.get());
+        assertEquals(200L, eventValue.get());
+        assertTrue(listenerCancelled.get());
+        assertEquals(0L, task.getRemainingTime(TimeUnit.MILLISECONDS));
+    }
+
+    /* A TaskListener that isn't a TimeoutListener. */
+    private static class PlainListener implements TaskListener<Void, Void> {
+
+        final AtomicBoolean cancelledTimedOut = new AtomicBoolean(false);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        public void doInBackground(TaskEvent<Void> event) {
+        }
+
+        @Override
+        public void process(TaskEvent<List<Void>> event) {
+        }
+
+        @Override
+        public void succeeded(TaskEvent<Void> event) {
+        }
+
+        @Override
+        public void failed(TaskEvent<Throwable> event) {
+        }
+
+        @Override
+        public void cancelled(TaskEvent<Void> event) {
+            cancelledTimedOut.set(((Task<?, ?>) event.getSource()).isTimedOut());
+        }
+
+        @Override
+        public void interrupted(TaskEvent<InterruptedException> event) {
+        }
+
+        @Override
+        public void finished(TaskEvent<Void> event) {
+            finished.countDown();
+        }
+    }
+
+    @Test
+    public void testDefaultTimeout() throws InterruptedException {
+        taskService.setDefaultTimeout(200L, TimeUnit.MILLISECONDS);
+        SleepTask task = new SleepTask(application, 10000L);
+        PlainListener listener = new PlainListener();
+        task.addTaskListener(listener);
+        taskService.execute(task);
+        assertTrue(task.finishedSignal.await(5, TimeUnit.SECONDS));
+        assertTrue(task.isTimedOut());
+        assertTrue(task.timedOut.get());
+        assertTrue(listener.finished.await(5, TimeUnit.SECONDS));
+        assertTrue("plain listeners are told by cancelled", listener.cancelledTimedOut.get());
+    }
+
+    @Test
+    public void testCompletesBeforeDeadline() throws InterruptedException {
+        SleepTask task = new SleepTask(application, 10L);
+        task.setTimeout(5L, TimeUnit.SECONDS);
+        taskService.execute(task);
+        assertTrue(task.finishedSignal.await(5, TimeUnit.SECONDS));
+        assertFalse(task.isTimedOut());
+        assertFalse(task.timedOut.get());
+        assertFalse(task.interrupted);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTimeoutAfterExecute() {
+        SleepTask task = new SleepTask(application, 1000L);
+        taskService.execute(task);
+        task.setTimeout(1L, TimeUnit.SECONDS);
+    }
+}
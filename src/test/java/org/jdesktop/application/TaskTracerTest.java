@@ -0,0 +1,110 @@
+package org.jdesktop.application;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test TaskTracer.
+ */
+public class TaskTracerTest {
+
+    private Application application;
+    private ApplicationContext context;
+    private TaskService taskService;
+
+    @Before
+    public void methodSetup() {
+        WaitForStartupApplication.launchAndWait(WaitForStartupApplication.class);
+        application = Application.getInstance(WaitForStartupApplication.class);
+        context = application.getContext();
+        taskService = new TaskService("traced");
+    }
+
+    @After
+    public void methodTeardown() {
+        context.setTaskTracer(null);
+        taskService.shutdownNow();
+    }
+
+    private static class PublishingTask extends Task<Void, String> {
+
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        PublishingTask(Application application) {
+            super(application);
+            setTitle("publish \"quoted\"");
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            publish("chunk");
+            Thread.sleep(50L);
+            return null;
+        }
+
+        @Override
+        protected void finished() {
+            finished.countDown();
+        }
+    }
+
+    @Test
+    public void testTrace() throws Exception {
+        TaskTracer tracer = new TaskTracer(context, 1000);
+        context.setTaskTracer(tracer);
+        assertSame(tracer, context.getTaskTracer());
+        PublishingTask task = new PublishingTask(application);
+        taskService.execute(task);
+        assertTrue(task.finished.await(5, TimeUnit.SECONDS));
+        // the "finished" span is added after finished() returns
+        Thread.sleep(100L);
+
+        StringWriter writer = new StringWriter();
+        tracer.write(writer);
+        String trace = writer.toString();
+        assertTrue(trace, trace.startsWith("{\"traceEvents\":["));
+        String name = "publish \\\"quoted\\\"";
+        assertTrue(trace, trace.contains("{\"name\":\"" + name + "\",\"cat\":\"queued\",\"ph\":\"b\""));
+        assertTrue(trace, trace.contains("{\"name\":\"" + name + "\",\"cat\":\"queued\",\"ph\":\"e\""));
+        assertTrue(trace, trace.contains("{\"name\":\"" + name + "\",\"cat\":\"run\",\"ph\":\"X\""));
+        assertTrue(trace, trace.contains("\"name\":\"started " + name + "\",\"cat\":\"state\",\"ph\":\"i\""));
+        assertTrue(trace, trace.contains("\"name\":\"done " + name + "\""));
+        assertTrue(trace, trace.contains("\"name\":\"succeeded " + name + "\",\"cat\":\"edt\",\"ph\":\"X\""));
+        assertTrue(trace, trace.contains("\"name\":\"finished " + name + "\""));
+        assertTrue(trace, trace.contains("\"name\":\"process " + name + "\""));
+        assertTrue(trace, trace.contains("\"name\":\"thread_name\",\"ph\":\"M\""));
+
+        tracer.write("trace.json");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(context.getLocalStorage().openInputFile("trace.json"), "UTF-8"));
+        try {
+            assertEquals("{\"traceEvents\":[", reader.readLine());
+        } finally {
+            reader.close();
+        }
+        context.getLocalStorage().deleteFile("trace.json");
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        TaskTracer tracer = new TaskTracer(context, 3);
+        for (int i = 0; i < 5; i++) {
+            tracer.taskStateChanged(new PublishingTask(application), "started");
+        }
+        assertEquals(3, tracer.getEventCount());
+        assertEquals(2L, tracer.getDroppedEventCount());
+        tracer.clear();
+        assertEquals(0, tracer.getEventCount());
+        try {
+            new TaskTracer(context, 0);
+            fail("capacity must be positive");
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+}
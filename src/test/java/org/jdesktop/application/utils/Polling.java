@@ -0,0 +1,56 @@
+package org.jdesktop.application.utils;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Waits for state that other threads, often the EDT, update
+ * asynchronously, like a count that's changed when a Task is done.
+ */
+public final class Polling {
+
+    private static final long TIMEOUT = 5000L;   // milliseconds
+    private static final long INTERVAL = 10L;    // milliseconds
+
+    private Polling() {
+    }
+
+    /**
+     * Calls {@code actual} until it returns {@code expected}, for up to
+     * five seconds, and then asserts that it did.
+     *
+     * @param expected the value to wait for
+     * @param actual computes the current value
+     */
+    public static <T> void awaitValue(T expected, Callable<T> actual) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        T value = actual.call();
+        while (!equal(expected, value) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(INTERVAL);
+            value = actual.call();
+        }
+        assertEquals(expected, value);
+    }
+
+    /**
+     * Calls {@code condition} until it returns true, for up to five
+     * seconds, and then asserts that it did.
+     *
+     * @param message the message of the assertion
+     * @param condition computes the current state
+     */
+    public static void awaitTrue(String message, Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        boolean value = condition.call();
+        while (!value && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(INTERVAL);
+            value = condition.call();
+        }
+        assertTrue(message, value);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+}